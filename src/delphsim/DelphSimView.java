@@ -691,6 +691,18 @@ public class DelphSimView extends FrameView {
         // Por último, miramos qué método hay seleccionado en las preferencias y lo invocamos
         javax.swing.ActionMap actionMap = getContext().getActionMap(DelphSimView.class, this);
         int metodo = Integer.valueOf(PreferenciasSimulacion.preferencias.get("metodo", PreferenciasSimulacion.metodoPorDefecto)); // NOI18N
+        // Los métodos de paso fijo pueden repartir la simulación entre los
+        // procesadores o ajustar su paso a las tolerancias
+        if (PasoFijo.deUnPaso(metodo)) {
+            if (PreferenciasSimulacion.preferencias.get("parareal", PreferenciasSimulacion.pararealPorDefecto).equals("si")) { // NOI18N
+                this.tareaActual = new Parareal(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup, metodo);
+                return this.tareaActual;
+            }
+            if (PreferenciasSimulacion.preferencias.get("pasoAutomatico", PreferenciasSimulacion.pasoAutomaticoPorDefecto).equals("si")) { // NOI18N
+                this.tareaActual = new PasoAdaptativo(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup, metodo);
+                return this.tareaActual;
+            }
+        }
         switch (metodo) {
             case 0:
                 this.tareaActual = new EulerExplicito(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup);
@@ -707,6 +719,22 @@ public class DelphSimView extends FrameView {
             case 4:
                 this.tareaActual = new RungeKuttaFehlberg(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup);
                 break;
+            case 5:
+                this.tareaActual = new DormandPrince(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup);
+                break;
+            case 6:
+                this.tareaActual = new Rosenbrock(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup);
+                break;
+            case 7:
+                int orden = Integer.valueOf(PreferenciasSimulacion.preferencias.get("ordenABM", PreferenciasSimulacion.ordenABMPorDefecto)); // NOI18N
+                this.tareaActual = new AdamsBashforthMoulton(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup, orden);
+                break;
+            case 8:
+                this.tareaActual = new Automatico(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup);
+                break;
+            case 9:
+                this.tareaActual = new RosenbrockExponencial(getApplication(), this.epidemia, actionMap, this.PanelPestanas, this.resultsWindowsMenu, this.windowButtonGroup);
+                break;
             default:
                 this.tareaActual = null;
                 break;
@@ -1992,8 +2020,12 @@ private void PanelPestanasStateChanged(javax.swing.event.ChangeEvent evt) {//GEN
             this.modelMenuItem.setSelected(true);
             break;
         default:
-            actionMap.get("exportarGrafica").setEnabled(true); // NOI18N
-            actionMap.get("exportarInforme").setEnabled(true); // NOI18N
+            // Tras las de los resultados puede estar la del perfil de la
+            // simulación, que no tiene gráfica ni datos que exportar
+            boolean esResultado = this.epidemia == null || this.epidemia.getResultados() == null
+                    || seleccion - 1 < this.epidemia.getResultados().length;
+            actionMap.get("exportarGrafica").setEnabled(esResultado); // NOI18N
+            actionMap.get("exportarInforme").setEnabled(esResultado); // NOI18N
             ((javax.swing.JRadioButtonMenuItem)this.resultsWindowsMenu.getMenuComponent(seleccion-1)).setSelected(true);
             break;
     }
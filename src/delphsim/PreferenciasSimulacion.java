@@ -57,11 +57,56 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
      */
     public static String hPorDefecto = "0.1"; // NOI18N
     
+    /**
+     * Intervalo entre los puntos escritos de los resultados por defecto (0
+     * para escribirlos en cada paso de integración).
+     */
+    public static String intervaloSalidaPorDefecto = "0.0"; // NOI18N
+    
+    /**
+     * Orden del método de Adams-Bashforth-Moulton por defecto.
+     */
+    public static String ordenABMPorDefecto = "4"; // NOI18N
+    
     /**
      * Opción de autoguardado por defecto.
      */
     public static String autosavePorDefecto = "si"; // NOI18N
     
+    /**
+     * Opción de generación de código específico del modelo por defecto.
+     */
+    public static String generarCodigoPorDefecto = "si"; // NOI18N
+    
+    /**
+     * Opción de medición del tiempo de cada definición del modelo por defecto.
+     */
+    public static String perfilarPorDefecto = "no"; // NOI18N
+    
+    /**
+     * Opción de ajuste automático del paso de los métodos de paso fijo por
+     * defecto.
+     */
+    public static String pasoAutomaticoPorDefecto = "no"; // NOI18N
+    
+    /**
+     * Opción de reparto de la simulación entre los procesadores con el
+     * algoritmo Parareal por defecto.
+     */
+    public static String pararealPorDefecto = "no"; // NOI18N
+    
+    /**
+     * Tolerancia absoluta del error por defecto para los métodos de paso
+     * variable, si el modelo no tiene la suya.
+     */
+    public static String toleranciaAbsolutaPorDefecto = "1.0E-6"; // NOI18N
+    
+    /**
+     * Tolerancia relativa del error por defecto para los métodos de paso
+     * variable, si el modelo no tiene la suya.
+     */
+    public static String toleranciaRelativaPorDefecto = "1.0E-6"; // NOI18N
+    
     /**
      * Crea una nueva ventana de preferencias de la simulación, iniciando los
      * componentes y cargando las preferencias actuales (si las hubiera, los
@@ -78,9 +123,20 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
                             resourceMap.getString("metodos.nombre2"), // NOI18N
                             resourceMap.getString("metodos.nombre3"), // NOI18N
                             resourceMap.getString("metodos.nombre4"), // NOI18N
-                            resourceMap.getString("metodos.nombre5")}; // NOI18N
+                            resourceMap.getString("metodos.nombre5"), // NOI18N
+                            resourceMap.getString("metodos.nombre6"), // NOI18N
+                            resourceMap.getString("metodos.nombre7"), // NOI18N
+                            resourceMap.getString("metodos.nombre8"), // NOI18N
+                            resourceMap.getString("metodos.nombre9"), // NOI18N
+                            resourceMap.getString("metodos.nombre10")}; // NOI18N
         this.metodoComboBox.setModel(new DefaultComboBoxModel(metodos));
         this.hSpinner.setModel(new javax.swing.SpinnerNumberModel(0.1d, 0.01d, 10.0d, 0.1d));
+        this.intervaloSalidaSpinner.setModel(new javax.swing.SpinnerNumberModel(0.0d, 0.0d, 1000.0d, 1.0d));
+        this.ordenABMSpinner.setModel(new javax.swing.SpinnerNumberModel(4, 1, 4, 1));
+        this.toleranciaAbsolutaSpinner.setModel(new javax.swing.SpinnerNumberModel(1.0e-6d, 1.0e-12d, 1.0d, 1.0e-6d));
+        this.toleranciaAbsolutaSpinner.setEditor(new javax.swing.JSpinner.NumberEditor(this.toleranciaAbsolutaSpinner, "0.0##E0")); // NOI18N
+        this.toleranciaRelativaSpinner.setModel(new javax.swing.SpinnerNumberModel(1.0e-6d, 1.0e-12d, 1.0d, 1.0e-6d));
+        this.toleranciaRelativaSpinner.setEditor(new javax.swing.JSpinner.NumberEditor(this.toleranciaRelativaSpinner, "0.0##E0")); // NOI18N
 
         // Cargamos o creamos el archivo de preferencias
         try {
@@ -92,14 +148,30 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
             } else {
                 PreferenciasSimulacion.preferencias.put("metodo", PreferenciasSimulacion.metodoPorDefecto); // NOI18N
                 PreferenciasSimulacion.preferencias.put("h", PreferenciasSimulacion.hPorDefecto); // NOI18N
+                PreferenciasSimulacion.preferencias.put("intervaloSalida", PreferenciasSimulacion.intervaloSalidaPorDefecto); // NOI18N
+                PreferenciasSimulacion.preferencias.put("ordenABM", PreferenciasSimulacion.ordenABMPorDefecto); // NOI18N
                 PreferenciasSimulacion.preferencias.put("autosave", PreferenciasSimulacion.autosavePorDefecto); // NOI18N
+                PreferenciasSimulacion.preferencias.put("generarCodigo", PreferenciasSimulacion.generarCodigoPorDefecto); // NOI18N
+                PreferenciasSimulacion.preferencias.put("perfilar", PreferenciasSimulacion.perfilarPorDefecto); // NOI18N
+                PreferenciasSimulacion.preferencias.put("pasoAutomatico", PreferenciasSimulacion.pasoAutomaticoPorDefecto); // NOI18N
+                PreferenciasSimulacion.preferencias.put("parareal", PreferenciasSimulacion.pararealPorDefecto); // NOI18N
+                PreferenciasSimulacion.preferencias.put("toleranciaAbsoluta", PreferenciasSimulacion.toleranciaAbsolutaPorDefecto); // NOI18N
+                PreferenciasSimulacion.preferencias.put("toleranciaRelativa", PreferenciasSimulacion.toleranciaRelativaPorDefecto); // NOI18N
             }
             FileOutputStream os = new FileOutputStream(f);
             PreferenciasSimulacion.preferencias.exportSubtree(os);
         } catch (Exception e) {
             PreferenciasSimulacion.preferencias.put("metodo", PreferenciasSimulacion.metodoPorDefecto); // NOI18N
             PreferenciasSimulacion.preferencias.put("h", PreferenciasSimulacion.hPorDefecto); // NOI18N
+            PreferenciasSimulacion.preferencias.put("intervaloSalida", PreferenciasSimulacion.intervaloSalidaPorDefecto); // NOI18N
+            PreferenciasSimulacion.preferencias.put("ordenABM", PreferenciasSimulacion.ordenABMPorDefecto); // NOI18N
             PreferenciasSimulacion.preferencias.put("autosave", PreferenciasSimulacion.autosavePorDefecto); // NOI18N
+            PreferenciasSimulacion.preferencias.put("generarCodigo", PreferenciasSimulacion.generarCodigoPorDefecto); // NOI18N
+            PreferenciasSimulacion.preferencias.put("perfilar", PreferenciasSimulacion.perfilarPorDefecto); // NOI18N
+            PreferenciasSimulacion.preferencias.put("pasoAutomatico", PreferenciasSimulacion.pasoAutomaticoPorDefecto); // NOI18N
+            PreferenciasSimulacion.preferencias.put("parareal", PreferenciasSimulacion.pararealPorDefecto); // NOI18N
+            PreferenciasSimulacion.preferencias.put("toleranciaAbsoluta", PreferenciasSimulacion.toleranciaAbsolutaPorDefecto); // NOI18N
+            PreferenciasSimulacion.preferencias.put("toleranciaRelativa", PreferenciasSimulacion.toleranciaRelativaPorDefecto); // NOI18N
             System.err.println("Error: producido en PreferenciasSimulacion, en la creación, al intentar cargar/crear las preferencias. Mensaje: " + e.getMessage()); // NOI18N
         }
         
@@ -110,12 +182,48 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
         this.hSpinner.setValue(
                 Double.valueOf(PreferenciasSimulacion.preferencias
                 .get("h", PreferenciasSimulacion.hPorDefecto))); // NOI18N
+        this.intervaloSalidaSpinner.setValue(
+                Double.valueOf(PreferenciasSimulacion.preferencias
+                .get("intervaloSalida", PreferenciasSimulacion.intervaloSalidaPorDefecto))); // NOI18N
+        this.ordenABMSpinner.setValue(
+                Integer.valueOf(PreferenciasSimulacion.preferencias
+                .get("ordenABM", PreferenciasSimulacion.ordenABMPorDefecto))); // NOI18N
+        this.toleranciaAbsolutaSpinner.setValue(
+                Double.valueOf(PreferenciasSimulacion.preferencias
+                .get("toleranciaAbsoluta", PreferenciasSimulacion.toleranciaAbsolutaPorDefecto))); // NOI18N
+        this.toleranciaRelativaSpinner.setValue(
+                Double.valueOf(PreferenciasSimulacion.preferencias
+                .get("toleranciaRelativa", PreferenciasSimulacion.toleranciaRelativaPorDefecto))); // NOI18N
         if (PreferenciasSimulacion.preferencias.get("autosave",  // NOI18N
                 PreferenciasSimulacion.autosavePorDefecto).equals("si")) { // NOI18N
             this.autosaveCheckBox.setSelected(true);
         } else {
             this.autosaveCheckBox.setSelected(false);
         }
+        if (PreferenciasSimulacion.preferencias.get("generarCodigo",  // NOI18N
+                PreferenciasSimulacion.generarCodigoPorDefecto).equals("si")) { // NOI18N
+            this.generarCodigoCheckBox.setSelected(true);
+        } else {
+            this.generarCodigoCheckBox.setSelected(false);
+        }
+        if (PreferenciasSimulacion.preferencias.get("perfilar",  // NOI18N
+                PreferenciasSimulacion.perfilarPorDefecto).equals("si")) { // NOI18N
+            this.perfilarCheckBox.setSelected(true);
+        } else {
+            this.perfilarCheckBox.setSelected(false);
+        }
+        if (PreferenciasSimulacion.preferencias.get("pasoAutomatico",  // NOI18N
+                PreferenciasSimulacion.pasoAutomaticoPorDefecto).equals("si")) { // NOI18N
+            this.pasoAutomaticoCheckBox.setSelected(true);
+        } else {
+            this.pasoAutomaticoCheckBox.setSelected(false);
+        }
+        if (PreferenciasSimulacion.preferencias.get("parareal",  // NOI18N
+                PreferenciasSimulacion.pararealPorDefecto).equals("si")) { // NOI18N
+            this.pararealCheckBox.setSelected(true);
+        } else {
+            this.pararealCheckBox.setSelected(false);
+        }
         
         // Centrar y mostrar
         setLocationRelativeTo(null);
@@ -138,7 +246,18 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
         metodoComboBox = new javax.swing.JComboBox();
         hLabel = new javax.swing.JLabel();
         hSpinner = new javax.swing.JSpinner();
+        intervaloSalidaLabel = new javax.swing.JLabel();
+        intervaloSalidaSpinner = new javax.swing.JSpinner();
+        ordenABMLabel = new javax.swing.JLabel();
+        ordenABMSpinner = new javax.swing.JSpinner();
+        toleranciaLabel = new javax.swing.JLabel();
+        toleranciaAbsolutaSpinner = new javax.swing.JSpinner();
+        toleranciaRelativaSpinner = new javax.swing.JSpinner();
+        pasoAutomaticoCheckBox = new javax.swing.JCheckBox();
+        pararealCheckBox = new javax.swing.JCheckBox();
         autosaveCheckBox = new javax.swing.JCheckBox();
+        generarCodigoCheckBox = new javax.swing.JCheckBox();
+        perfilarCheckBox = new javax.swing.JCheckBox();
         botonesSeparator = new javax.swing.JSeparator();
         aceptarButton = new javax.swing.JButton();
         cancelarButton = new javax.swing.JButton();
@@ -176,10 +295,44 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
         hSpinner.setForeground(resourceMap.getColor("hSpinner.foreground")); // NOI18N
         hSpinner.setName("hSpinner"); // NOI18N
 
+        intervaloSalidaLabel.setText(resourceMap.getString("intervaloSalidaLabel.text")); // NOI18N
+        intervaloSalidaLabel.setName("intervaloSalidaLabel"); // NOI18N
+
+        intervaloSalidaSpinner.setFont(resourceMap.getFont("intervaloSalidaSpinner.font")); // NOI18N
+        intervaloSalidaSpinner.setName("intervaloSalidaSpinner"); // NOI18N
+
+        ordenABMLabel.setText(resourceMap.getString("ordenABMLabel.text")); // NOI18N
+        ordenABMLabel.setName("ordenABMLabel"); // NOI18N
+
+        ordenABMSpinner.setFont(resourceMap.getFont("ordenABMSpinner.font")); // NOI18N
+        ordenABMSpinner.setName("ordenABMSpinner"); // NOI18N
+
+        toleranciaLabel.setText(resourceMap.getString("toleranciaLabel.text")); // NOI18N
+        toleranciaLabel.setName("toleranciaLabel"); // NOI18N
+
+        toleranciaAbsolutaSpinner.setFont(resourceMap.getFont("toleranciaAbsolutaSpinner.font")); // NOI18N
+        toleranciaAbsolutaSpinner.setName("toleranciaAbsolutaSpinner"); // NOI18N
+
+        toleranciaRelativaSpinner.setFont(resourceMap.getFont("toleranciaRelativaSpinner.font")); // NOI18N
+        toleranciaRelativaSpinner.setName("toleranciaRelativaSpinner"); // NOI18N
+
+        pasoAutomaticoCheckBox.setText(resourceMap.getString("pasoAutomaticoCheckBox.text")); // NOI18N
+        pasoAutomaticoCheckBox.setName("pasoAutomaticoCheckBox"); // NOI18N
+
+        pararealCheckBox.setText(resourceMap.getString("pararealCheckBox.text")); // NOI18N
+        pararealCheckBox.setName("pararealCheckBox"); // NOI18N
+
         autosaveCheckBox.setSelected(true);
         autosaveCheckBox.setText(resourceMap.getString("autosaveCheckBox.text")); // NOI18N
         autosaveCheckBox.setName("autosaveCheckBox"); // NOI18N
 
+        generarCodigoCheckBox.setSelected(true);
+        generarCodigoCheckBox.setText(resourceMap.getString("generarCodigoCheckBox.text")); // NOI18N
+        generarCodigoCheckBox.setName("generarCodigoCheckBox"); // NOI18N
+
+        perfilarCheckBox.setText(resourceMap.getString("perfilarCheckBox.text")); // NOI18N
+        perfilarCheckBox.setName("perfilarCheckBox"); // NOI18N
+
         botonesSeparator.setName("botonesSeparator"); // NOI18N
 
         javax.swing.ActionMap actionMap = org.jdesktop.application.Application.getInstance(delphsim.DelphSimApp.class).getContext().getActionMap(PreferenciasSimulacion.class, this);
@@ -196,7 +349,11 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
             .addGroup(layout.createSequentialGroup()
                 .addContainerGap()
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(pasoAutomaticoCheckBox)
+                    .addComponent(pararealCheckBox)
                     .addComponent(autosaveCheckBox)
+                    .addComponent(generarCodigoCheckBox)
+                    .addComponent(perfilarCheckBox)
                     .addComponent(tituloSeparator, javax.swing.GroupLayout.DEFAULT_SIZE, 568, Short.MAX_VALUE)
                     .addComponent(tituloLabel)
                     .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, layout.createSequentialGroup()
@@ -210,7 +367,21 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(hLabel)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
-                        .addComponent(hSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 55, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                        .addComponent(hSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 55, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(intervaloSalidaLabel)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(intervaloSalidaSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 55, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(ordenABMLabel)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(ordenABMSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 55, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(toleranciaLabel)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(toleranciaAbsolutaSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 70, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(toleranciaRelativaSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 70, javax.swing.GroupLayout.PREFERRED_SIZE)))
                 .addContainerGap())
         );
 
@@ -233,8 +404,29 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(hLabel)
                     .addComponent(hSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(intervaloSalidaLabel)
+                    .addComponent(intervaloSalidaSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(ordenABMLabel)
+                    .addComponent(ordenABMSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(toleranciaLabel)
+                    .addComponent(toleranciaAbsolutaSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(toleranciaRelativaSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(pasoAutomaticoCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(pararealCheckBox)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(autosaveCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(generarCodigoCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(perfilarCheckBox)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                 .addComponent(botonesSeparator, javax.swing.GroupLayout.PREFERRED_SIZE, 10, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
@@ -269,11 +461,35 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
             // Actualizamos las preferencias
             PreferenciasSimulacion.preferencias.put("metodo", Integer.toString(this.metodoComboBox.getSelectedIndex())); // NOI18N
             PreferenciasSimulacion.preferencias.put("h", Double.toString((Double) this.hSpinner.getValue())); // NOI18N
+            PreferenciasSimulacion.preferencias.put("intervaloSalida", Double.toString((Double) this.intervaloSalidaSpinner.getValue())); // NOI18N
+            PreferenciasSimulacion.preferencias.put("ordenABM", Integer.toString((Integer) this.ordenABMSpinner.getValue())); // NOI18N
+            PreferenciasSimulacion.preferencias.put("toleranciaAbsoluta", Double.toString((Double) this.toleranciaAbsolutaSpinner.getValue())); // NOI18N
+            PreferenciasSimulacion.preferencias.put("toleranciaRelativa", Double.toString((Double) this.toleranciaRelativaSpinner.getValue())); // NOI18N
             if (this.autosaveCheckBox.isSelected()) {
                 PreferenciasSimulacion.preferencias.put("autosave", "si"); // NOI18N
             } else {
                 PreferenciasSimulacion.preferencias.put("autosave", "no"); // NOI18N
             }
+            if (this.generarCodigoCheckBox.isSelected()) {
+                PreferenciasSimulacion.preferencias.put("generarCodigo", "si"); // NOI18N
+            } else {
+                PreferenciasSimulacion.preferencias.put("generarCodigo", "no"); // NOI18N
+            }
+            if (this.perfilarCheckBox.isSelected()) {
+                PreferenciasSimulacion.preferencias.put("perfilar", "si"); // NOI18N
+            } else {
+                PreferenciasSimulacion.preferencias.put("perfilar", "no"); // NOI18N
+            }
+            if (this.pasoAutomaticoCheckBox.isSelected()) {
+                PreferenciasSimulacion.preferencias.put("pasoAutomatico", "si"); // NOI18N
+            } else {
+                PreferenciasSimulacion.preferencias.put("pasoAutomatico", "no"); // NOI18N
+            }
+            if (this.pararealCheckBox.isSelected()) {
+                PreferenciasSimulacion.preferencias.put("parareal", "si"); // NOI18N
+            } else {
+                PreferenciasSimulacion.preferencias.put("parareal", "no"); // NOI18N
+            }
             // Las exportamos al fichero
             String rutaArchivo = new File(System.getProperty("java.class.path")).getParent() + resourceMap.getString("archivoPreferencias.path"); // NOI18N
             File f = new File(rutaArchivo);
@@ -293,12 +509,23 @@ public class PreferenciasSimulacion extends javax.swing.JDialog {
     private javax.swing.JCheckBox autosaveCheckBox;
     private javax.swing.JSeparator botonesSeparator;
     private javax.swing.JButton cancelarButton;
+    private javax.swing.JCheckBox generarCodigoCheckBox;
     private javax.swing.JTextPane expTextPane;
     private javax.swing.JLabel hLabel;
     private javax.swing.JSpinner hSpinner;
+    private javax.swing.JLabel intervaloSalidaLabel;
+    private javax.swing.JSpinner intervaloSalidaSpinner;
     private javax.swing.JComboBox metodoComboBox;
     private javax.swing.JLabel metodoLabel;
+    private javax.swing.JLabel ordenABMLabel;
+    private javax.swing.JSpinner ordenABMSpinner;
+    private javax.swing.JCheckBox pasoAutomaticoCheckBox;
+    private javax.swing.JCheckBox pararealCheckBox;
+    private javax.swing.JCheckBox perfilarCheckBox;
     private javax.swing.JLabel tituloLabel;
+    private javax.swing.JSpinner toleranciaAbsolutaSpinner;
+    private javax.swing.JLabel toleranciaLabel;
+    private javax.swing.JSpinner toleranciaRelativaSpinner;
     private javax.swing.JSeparator tituloSeparator;
     // End of variables declaration//GEN-END:variables
 }
@@ -68,6 +68,13 @@ public class Epidemia implements Cloneable {
      */
     private String unidadTiempo;
     
+    /**
+     * Tolerancias absoluta y relativa del error para los métodos de paso
+     * variable, o 0 si se usan las de las preferencias de la simulación.
+     */
+    private double toleranciaAbsoluta = 0;
+    private double toleranciaRelativa = 0;
+    
     /**
      * Conjunto de parámetros definidos para este modelo.
      */
@@ -99,6 +106,11 @@ public class Epidemia implements Cloneable {
      */
     private Resultado[] resultados = new Resultado[0];
     
+    /**
+     * Conjunto de eventos a detectar durante una simulación continua.
+     */
+    private Evento[] eventos = new Evento[0];
+    
     /**
      * Palabras reservadas: contiene los nombres de los parámetros, de los
      * procesos y de las categorías, los cuales no pueden repetirse.
@@ -351,6 +363,44 @@ public class Epidemia implements Cloneable {
         return this.unidadTiempo;
     }
 
+    /**
+     * Método para cambiar la tolerancia absoluta del error de los métodos de
+     * paso variable para este modelo.
+     * @param toleranciaAbsolutaEpi La nueva tolerancia, o 0 para usar la de
+     *                              las preferencias.
+     */
+    public void setToleranciaAbsoluta(double toleranciaAbsolutaEpi) {
+        this.toleranciaAbsoluta = toleranciaAbsolutaEpi;
+    }
+
+    /**
+     * Método para obtener la tolerancia absoluta del error de los métodos de
+     * paso variable para este modelo.
+     * @return La tolerancia, o 0 si se usa la de las preferencias.
+     */
+    public double getToleranciaAbsoluta() {
+        return this.toleranciaAbsoluta;
+    }
+
+    /**
+     * Método para cambiar la tolerancia relativa del error de los métodos de
+     * paso variable para este modelo.
+     * @param toleranciaRelativaEpi La nueva tolerancia, o 0 para usar la de
+     *                              las preferencias.
+     */
+    public void setToleranciaRelativa(double toleranciaRelativaEpi) {
+        this.toleranciaRelativa = toleranciaRelativaEpi;
+    }
+
+    /**
+     * Método para obtener la tolerancia relativa del error de los métodos de
+     * paso variable para este modelo.
+     * @return La tolerancia, o 0 si se usa la de las preferencias.
+     */
+    public double getToleranciaRelativa() {
+        return this.toleranciaRelativa;
+    }
+
     /**
      * Método para cambiar la población de la epidemia.
      * @param poblacionEpi La nueva población.
@@ -670,6 +720,40 @@ public class Epidemia implements Cloneable {
         return null;
     }
     
+    /**
+     * Método para cambiar el conjunto de eventos del modelo.
+     * @param eventosEpi El nuevo conjunto de eventos.
+     */
+    public void setEventos(Evento[] eventosEpi) {
+        this.eventos = eventosEpi;
+    }
+    
+    /**
+     * Método para cambiar un evento del modelo.
+     * @param even El nuevo evento.
+     * @param indice El índice del evento a reemplazar.
+     */
+    public void setEvento(Evento even, int indice) {
+        this.eventos[indice] = even;
+    }
+    
+    /**
+     * Método para obtener el conjunto de eventos del modelo.
+     * @return El conjunto de eventos.
+     */
+    public Evento[] getEventos() {
+        return this.eventos;
+    }
+    
+    /**
+     * Método para obtener un evento del modelo.
+     * @param indice El índice del evento a obtener.
+     * @return El evento.
+     */
+    public Evento getEvento(int indice) {
+        return this.eventos[indice];
+    }
+    
     /**
      * Método para cambiar el conjunto de resultados del modelo.
      * @param res El nuevo conjunto de resultados.
@@ -873,6 +957,12 @@ public class Epidemia implements Cloneable {
             if (elementoEpidemia.attributeValue("unidadTiempo") != null) {
                 this.unidadTiempo = elementoEpidemia.attributeValue("unidadTiempo");
             }
+            if (elementoEpidemia.attributeValue("toleranciaAbsoluta") != null) {
+                this.toleranciaAbsoluta = Double.valueOf(elementoEpidemia.attributeValue("toleranciaAbsoluta"));
+            }
+            if (elementoEpidemia.attributeValue("toleranciaRelativa") != null) {
+                this.toleranciaRelativa = Double.valueOf(elementoEpidemia.attributeValue("toleranciaRelativa"));
+            }
 
             // Iterar para recuperar todos los elementos "parámetro" y crear los objetos
             Vector vectorParametros = new Vector();
@@ -977,6 +1067,16 @@ public class Epidemia implements Cloneable {
                 this.palabrasReservadas.add(this.compartimentos[indice].getNombre());
                 indice++;
             }
+
+            // Iterar para recuperar todos los elementos "evento" y crear los objetos
+            this.eventos = new Evento[elementoEpidemia.elements("evento").size()];
+            indice = 0;
+            for (Iterator i = elementoEpidemia.elementIterator("evento"); i.hasNext();) {
+                Element elementoEvento = (Element) i.next();
+                this.eventos[indice] = new Evento();
+                this.eventos[indice].cargarDesdeXML(elementoEvento);
+                indice++;
+            }
             
             // Generar los atajos correspondientes a los compartimentos cargados
             this.generarAtajos();
@@ -1003,6 +1103,12 @@ public class Epidemia implements Cloneable {
         elementoEpidemia.addAttribute("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
         elementoEpidemia.addAttribute("xsi:noNamespaceSchemaLocation", "DelphSim1.18.xsd");
         elementoEpidemia.addAttribute("unidadTiempo", this.unidadTiempo);
+        if (this.toleranciaAbsoluta > 0) {
+            elementoEpidemia.addAttribute("toleranciaAbsoluta", Double.toString(this.toleranciaAbsoluta));
+        }
+        if (this.toleranciaRelativa > 0) {
+            elementoEpidemia.addAttribute("toleranciaRelativa", Double.toString(this.toleranciaRelativa));
+        }
 
         // Elementos parámetros
         if (this.parametros != null) {
@@ -1030,6 +1136,14 @@ public class Epidemia implements Cloneable {
             elementoEpidemia.add(elementoCompartimento);
         }
 
+        // Elementos eventos
+        if (this.eventos != null) {
+            for (Evento even : this.eventos) {
+                Element elementoEvento = even.volcarAXML();
+                elementoEpidemia.add(elementoEvento);
+            }
+        }
+
         // Luego crear el formato, stream y escritor de la salida
         OutputFormat formato = OutputFormat.createPrettyPrint();
         formato.setEncoding("UTF-16");
@@ -1263,9 +1377,12 @@ public class Epidemia implements Cloneable {
         int numComps = this.getCompartimentos().length;
         int numAtaj = this.getAtajos().length;
         int numResu = this.getResultados().length;
+        int numEven = this.getEventos().length;
         Epidemia clon = new Epidemia();
         clon.setUnidadTiempo(this.getUnidadTiempo());
         clon.setTiempoSimulacion(this.getTiempoSimulacion());
+        clon.setToleranciaAbsoluta(this.getToleranciaAbsoluta());
+        clon.setToleranciaRelativa(this.getToleranciaRelativa());
         clon.setPoblacion(this.getPoblacion().clone());
         clon.setParametros(new Parametro[numPars]);
         for (int i = 0; i < numPars; i++) {
@@ -1283,6 +1400,10 @@ public class Epidemia implements Cloneable {
         for (int i = 0; i < numAtaj; i++) {
             clon.setAtajo(this.getAtajo(i).clone(), i);
         }
+        clon.setEventos(new Evento[numEven]);
+        for (int i = 0; i < numEven; i++) {
+            clon.setEvento(this.getEvento(i).clone(), i);
+        }
         clon.setResultados(new Resultado[numResu]);
         for (int i = 0; i < numResu; i++) {
             clon.setResultado(this.getResultado(i).clone(), i);
@@ -0,0 +1,218 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.model;
+
+import org.dom4j.Element;
+import org.dom4j.tree.DefaultElement;
+
+/**
+ * Los elementos de esta clase representan sucesos que se quieren detectar
+ * durante una simulación continua, definidos por una condición sobre el
+ * estado del modelo: el evento ocurre en el instante en que la condición pasa
+ * por cero. Por ejemplo, "I - 1" en sentido descendente ocurre cuando los
+ * infectados bajan de una persona, y "H - capacidad" en sentido ascendente
+ * cuando la ocupación supera la capacidad. Los instantes en que ocurre se
+ * marcan en las gráficas de los resultados y, si el evento es terminal, la
+ * simulación termina en el primero de ellos.
+ * @author Víctor E. Tamames Gómez
+ */
+public class Evento implements Cloneable {
+    
+    /**
+     * Sentidos en que puede cruzar la condición por cero para que ocurra el
+     * evento: de positiva a negativa, de negativa a positiva o en ambos.
+     */
+    public static final int DESCENDENTE = -1;
+    public static final int AMBOS = 0;
+    public static final int ASCENDENTE = 1;
+    
+    /**
+     * El identificador con el que se muestra el evento en los resultados.
+     */
+    private String nombre;
+    
+    /**
+     * Definición continua de la condición del evento, una función de los
+     * parámetros, compartimentos, atajos y procesos que cambia de signo
+     * cuando ocurre.
+     */
+    private String definicionContinua;
+    
+    /**
+     * El sentido en que tiene que cruzar la condición por cero.
+     */
+    private int sentido = Evento.AMBOS;
+    
+    /**
+     * Si la simulación termina cuando ocurre el evento.
+     */
+    private boolean terminal = false;
+    
+    /**
+     * Constructor de la clase.
+     */
+    public Evento() {
+    }
+    
+    /**
+     * Método para cambiar el nombre al evento.
+     * @param nombreEvento Nuevo nombre para el evento.
+     */
+    public void setNombre(String nombreEvento) {
+        this.nombre = nombreEvento;
+    }
+    
+    /**
+     * Método para obtener el nombre del evento.
+     * @return Cadena de texto con el nombre del evento.
+     */
+    public String getNombre() {
+        return this.nombre;
+    }
+    
+    /**
+     * Método para cambiar la definición continua de la condición del evento.
+     * @param definicionEvento La nueva definición de la condición.
+     */
+    public void setDefinicionContinua(String definicionEvento) {
+        this.definicionContinua = definicionEvento;
+    }
+    
+    /**
+     * Método para obtener la definición continua de la condición del evento.
+     * @return Cadena de texto con la definición continua.
+     */
+    public String getDefinicionContinua() {
+        return this.definicionContinua;
+    }
+    
+    /**
+     * Método para cambiar el sentido en que tiene que cruzar la condición.
+     * @param sentidoEvento <CODE>DESCENDENTE</CODE>, <CODE>AMBOS</CODE> o
+     *                      <CODE>ASCENDENTE</CODE>.
+     */
+    public void setSentido(int sentidoEvento) {
+        this.sentido = sentidoEvento;
+    }
+    
+    /**
+     * Método para obtener el sentido en que tiene que cruzar la condición.
+     * @return <CODE>DESCENDENTE</CODE>, <CODE>AMBOS</CODE> o
+     *         <CODE>ASCENDENTE</CODE>.
+     */
+    public int getSentido() {
+        return this.sentido;
+    }
+    
+    /**
+     * Método para cambiar si el evento termina la simulación.
+     * @param terminalEvento Si la simulación termina cuando ocurre.
+     */
+    public void setTerminal(boolean terminalEvento) {
+        this.terminal = terminalEvento;
+    }
+    
+    /**
+     * Método para saber si el evento termina la simulación.
+     * @return Si la simulación termina cuando ocurre.
+     */
+    public boolean isTerminal() {
+        return this.terminal;
+    }
+    
+    /**
+     * Comprueba si la condición ha cruzado por cero en el sentido del evento
+     * entre dos valores consecutivos. Si el primero es justo cero no cuenta:
+     * la condición ya estaba en el límite y el evento ocurrió antes (o al
+     * empezar la simulación).
+     * @param antes El valor de la condición al principio del intervalo.
+     * @param despues El valor de la condición al final del intervalo.
+     * @return Si el evento ha ocurrido dentro del intervalo.
+     */
+    public boolean ocurre(double antes, double despues) {
+        if (antes > 0 && despues <= 0) {
+            return this.sentido != Evento.ASCENDENTE;
+        } else if (antes < 0 && despues >= 0) {
+            return this.sentido != Evento.DESCENDENTE;
+        }
+        return false;
+    }
+    
+    /**
+     * Método para cargar los datos contenidos en un objeto de tipo
+     * <CODE>org.dom4j.Element</CODE> en este objeto.
+     * @param elementoEvento El objeto <CODE>org.dom4j.Element</CODE>.
+     */
+    public void cargarDesdeXML(Element elementoEvento) {
+        this.setNombre(elementoEvento.attributeValue("nombre"));
+        this.setDefinicionContinua(elementoEvento.attributeValue("condicion"));
+        String sentidoEvento = elementoEvento.attributeValue("sentido");
+        if ("Descendente".equals(sentidoEvento)) {
+            this.setSentido(Evento.DESCENDENTE);
+        } else if ("Ascendente".equals(sentidoEvento)) {
+            this.setSentido(Evento.ASCENDENTE);
+        } else {
+            this.setSentido(Evento.AMBOS);
+        }
+        // xs:boolean admite tanto "true" como "1"
+        String terminalEvento = elementoEvento.attributeValue("terminal");
+        this.setTerminal("true".equals(terminalEvento) || "1".equals(terminalEvento));
+    }
+    
+    /**
+     * Método para volcar los datos de este objeto en uno de tipo
+     * <CODE>org.dom4j.Element</CODE>.
+     * @return El objeto <CODE>org.dom4j.Element</CODE>.
+     */
+    public Element volcarAXML() {
+        Element elementoEvento = new DefaultElement("evento");
+        
+        elementoEvento.addAttribute("nombre", this.nombre);
+        elementoEvento.addAttribute("condicion", this.definicionContinua);
+        if (this.sentido == Evento.DESCENDENTE) {
+            elementoEvento.addAttribute("sentido", "Descendente");
+        } else if (this.sentido == Evento.ASCENDENTE) {
+            elementoEvento.addAttribute("sentido", "Ascendente");
+        }
+        if (this.terminal) {
+            elementoEvento.addAttribute("terminal", "true");
+        }
+        
+        return elementoEvento;
+    }
+    
+    /**
+     * Implementación de la interfaz Cloneable.
+     * @return Un clon idéntico a este objeto.
+     */
+    @Override
+    public Evento clone() {
+        Evento clon = new Evento();
+        clon.setNombre(this.getNombre());
+        clon.setDefinicionContinua(this.getDefinicionContinua());
+        clon.setSentido(this.getSentido());
+        clon.setTerminal(this.isTerminal());
+        return clon;
+    }
+}
@@ -109,15 +109,9 @@ public class Proceso implements Cloneable {
     public String getDefinicionContinua(double tiempo) {
         for (int i = 0; i < this.tramosContinua.length-1; i++) {
             if (tiempo >= this.getTramoContinua(i).getTiempoInicio() && tiempo < this.getTramoContinua(i+1).getTiempoInicio()) {
-                if (this.nombre.equals("aaa")) {
-                    System.out.println(tiempo + " : " + this.getTramoContinua(i).getDefinicionContinua());
-                }
                 return this.getTramoContinua(i).getDefinicionContinua();
             }
         }
-        if (this.nombre.equals("aaa")) {
-            System.out.println(tiempo + " : " + this.getTramoContinua(this.tramosContinua.length-1).getDefinicionContinua());
-        }
         return this.getTramoContinua(this.tramosContinua.length-1).getDefinicionContinua();
     }
 
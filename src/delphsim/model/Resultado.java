@@ -53,6 +53,9 @@ import org.jfree.chart.ChartPanel;
 import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.ValueMarker;
+import org.jfree.ui.RectangleAnchor;
+import org.jfree.ui.TextAnchor;
 import org.jfree.data.xy.DefaultXYDataset;
 
 import org.w3c.dom.DOMImplementation;
@@ -117,6 +120,13 @@ public class Resultado implements Cloneable {
      */
     private Vector puntosTiempo = new Vector();
     
+    /**
+     * Los nombres de los eventos ocurridos durante la simulación y los
+     * instantes en que ocurrieron, para marcarlos en la gráfica.
+     */
+    private Vector nombresEventos = new Vector();
+    private Vector instantesEventos = new Vector();
+    
     /**
      * Archivo donde se almacenan los valores de la simulación correspondientes 
      * al tiempo.
@@ -159,6 +169,43 @@ public class Resultado implements Cloneable {
         this.puntosTiempo.add(pTiempo);
     }
     
+    /**
+     * Añade un evento ocurrido durante la simulación, que se marca en la
+     * gráfica con una línea vertical en su instante.
+     * @param nombre El nombre del evento.
+     * @param instante El instante en que ocurrió.
+     */
+    public void anadirEvento(String nombre, double instante) {
+        this.nombresEventos.add(nombre);
+        this.instantesEventos.add(instante);
+    }
+    
+    /**
+     * Método para obtener el número de eventos ocurridos en la simulación.
+     * @return El número de eventos.
+     */
+    public int getNumEventos() {
+        return this.nombresEventos.size();
+    }
+    
+    /**
+     * Método para obtener el nombre de un evento ocurrido en la simulación.
+     * @param indice El índice del evento.
+     * @return El nombre del evento.
+     */
+    public String getNombreEvento(int indice) {
+        return this.nombresEventos.get(indice).toString();
+    }
+    
+    /**
+     * Método para obtener el instante de un evento ocurrido en la simulación.
+     * @param indice El índice del evento.
+     * @return El instante en que ocurrió.
+     */
+    public double getInstanteEvento(int indice) {
+        return Double.valueOf(this.instantesEventos.get(indice).toString());
+    }
+    
     /**
      * Añade un nuevo valor al vector de valores de una función.
      * @param pFuncion El nuevo valor a añadir.
@@ -353,6 +400,17 @@ public class Resultado implements Cloneable {
             chart.getXYPlot().getRenderer().setSeriesStroke(i, new BasicStroke(this.funciones[i].getGrosor()));
             chart.getXYPlot().getRenderer().setSeriesPaint(i, this.funciones[i].getColor());
         }
+        // Una línea vertical discontinua en el instante de cada evento
+        for (int i = 0; i < this.getNumEventos(); i++) {
+            ValueMarker marcador = new ValueMarker(this.getInstanteEvento(i));
+            marcador.setPaint(Color.DARK_GRAY);
+            marcador.setStroke(new BasicStroke(1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+                    10.0f, new float[] {6.0f, 4.0f}, 0.0f));
+            marcador.setLabel(this.getNombreEvento(i));
+            marcador.setLabelAnchor(RectangleAnchor.TOP_LEFT);
+            marcador.setLabelTextAnchor(TextAnchor.TOP_RIGHT);
+            chart.getXYPlot().addDomainMarker(marcador);
+        }
         ChartPanel panel = new ChartPanel(
                                 chart, // gráfica
                                 true,  // propiedades
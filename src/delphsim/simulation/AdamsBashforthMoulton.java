@@ -0,0 +1,240 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase implementa los métodos de simulación continua multipaso de
+ * Adams-Bashforth-Moulton, de predicción-corrección. En lugar de evaluar el
+ * modelo en varios puntos intermedios de cada paso, como los de Runge-Kutta,
+ * reutilizan las derivadas de los pasos anteriores: la fórmula de
+ * Adams-Bashforth predice el siguiente valor, se evalúa allí el modelo, y la
+ * de Adams-Moulton lo corrige. Así cada paso sólo evalúa dos veces el modelo
+ * (una en la predicción y otra en el valor corregido, que sirve para el paso
+ * siguiente), frente a las cuatro de Runge-Kutta 4º orden con el mismo orden.
+ * Con orden 1 es el método predictor-corrector de Euler. Los primeros pasos,
+ * sin derivadas anteriores suficientes, se dan con Runge-Kutta 4º orden, y
+ * lo mismo tras cada cambio de tramo de un proceso, ya que las derivadas de
+ * antes del cambio no sirven para después.
+ * <p>El orden, de 1 a 4, se elige en las preferencias de la simulación.
+ * Sólo se implementa la forma de paso fijo: las fórmulas suponen las
+ * derivadas anteriores a un paso de distancia, así que el paso no puede
+ * cambiar durante la simulación.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+public class AdamsBashforthMoulton extends PasoFijo {
+    
+    /**
+     * Coeficientes de Adams-Bashforth de cada orden, de la derivada del paso
+     * actual a la más antigua.
+     */
+    public static final double[][] AB = {{  1.0d                                                },
+                                         {  3.0d/2.0d,   -1.0d/2.0d                             },
+                                         {  23.0d/12.0d, -16.0d/12.0d, 5.0d/12.0d               },
+                                         {  55.0d/24.0d, -59.0d/24.0d, 37.0d/24.0d, -9.0d/24.0d }};
+    
+    /**
+     * Coeficientes de Adams-Moulton de cada orden, de la derivada en la
+     * predicción a la más antigua.
+     */
+    public static final double[][] AM = {{  1.0d                                               },
+                                         {  1.0d/2.0d,   1.0d/2.0d                             },
+                                         {  5.0d/12.0d,  8.0d/12.0d,  -1.0d/12.0d              },
+                                         {  9.0d/24.0d,  19.0d/24.0d, -5.0d/24.0d, 1.0d/24.0d  }};
+    
+    /**
+     * Orden de esta simulación, de 1 a 4.
+     */
+    private final int orden;
+    
+    /**
+     * Las derivadas de los últimos pasos, en un anillo: la del paso actual
+     * está en la posición <CODE>actual</CODE>, la del anterior en la previa,
+     * y así sucesivamente.
+     */
+    private double[][] historia;
+    
+    /**
+     * Pasos seguidos, todos del paso de integración, dados desde el principio
+     * o desde el último cambio de tramo: las derivadas anteriores sólo
+     * sirven si están a un paso de distancia unas de otras.
+     */
+    private long seguidos;
+    
+    /**
+     * Posición en <CODE>historia</CODE> de la derivada del paso actual.
+     */
+    private int actual;
+    
+    /**
+     * La predicción, su derivada y la suma ponderada de derivadas.
+     */
+    private double[] prediccion, derPrediccion, suma;
+    
+    /**
+     * Vectores de las etapas de Runge-Kutta 4º orden para los primeros pasos.
+     */
+    private double[] COMPS2, COMPS3, COMPS4, derCOMPS2, derCOMPS3, derCOMPS4;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, los cuatro
+     * siguientes son elementos del GUI que tenemos que actualizar cuando la
+     * tarea termine, y el último indica el orden del método.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     * @param orden El orden del método, de 1 a 4 (fuera de ese rango se toma
+     *              el más cercano).
+     */
+    public AdamsBashforthMoulton(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup,
+                               int orden) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+        this.orden = Math.max(1, Math.min(AB.length, orden));
+    }
+    
+    /**
+     * Reserva el anillo de derivadas y los vectores de las etapas.
+     * @param n El número de compartimentos del modelo.
+     */
+    @Override
+    protected void reservar(int n) {
+        this.historia = new double[this.orden][n];
+        this.actual = 0;
+        this.seguidos = 0;
+        this.prediccion = new double[n];
+        this.derPrediccion = new double[n];
+        this.suma = new double[n];
+        this.COMPS2 = new double[n];
+        this.COMPS3 = new double[n];
+        this.COMPS4 = new double[n];
+        this.derCOMPS2 = new double[n];
+        this.derCOMPS3 = new double[n];
+        this.derCOMPS4 = new double[n];
+    }
+    
+    /**
+     * Este método implementa propiamente dicho una iteración del método de
+     * Adams-Bashforth-Moulton.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void paso(double t, double h) throws ParseException {
+        double[] X = this.compartimentos_;
+        double[] derX = this.historia[this.actual];
+        // La derivada en el valor corregido del paso anterior: la memoria ya
+        // tiene sus atajos y procesos
+        this.sistema_.derivadas(this.memoria_, derX);
+        boolean uniforme = h == this.h_;
+        if (this.seguidos < this.orden - 1 || (!uniforme && this.orden > 1)) {
+            // Aún no hay suficientes derivadas anteriores, o el paso se ha
+            // partido en un cambio de tramo y no están a su distancia
+            this.pasoRK4(t, h, derX);
+        } else {
+            /** 
+             * CUERPO del método (orden p):
+             * Predicción: XP = X(t) + h*(AB[0]*derX(t) + ... + AB[p-1]*derX(t-(p-1)h));
+             *             derXP = f(XP, t+h);
+             * Corrección: X(t+h) = X(t) + h*(AM[0]*derXP + AM[1]*derX(t) + ... + AM[p-1]*derX(t-(p-2)h));
+             */
+            double[] ab = AB[this.orden - 1];
+            double[] am = AM[this.orden - 1];
+            this.ponderar(ab, null, 0);
+            Combinaciones.combinar(this.prediccion, X, h, this.suma);
+            this.sistema_.calcular(t + h, this.memoria_, this.prediccion, this.derPrediccion);
+            this.ponderar(am, this.derPrediccion, 1);
+            Combinaciones.combinar(X, X, h, this.suma);
+        }
+        // La siguiente derivada irá en la posición de la más antigua
+        this.actual = (this.actual + 1) % this.orden;
+        this.seguidos = uniforme ? this.seguidos + 1 : 0;
+    }
+    
+    /**
+     * Tras un cambio de tramo vuelve a empezar con Runge-Kutta 4º orden.
+     */
+    @Override
+    protected void reiniciar() {
+        this.seguidos = 0;
+    }
+    
+    /**
+     * Calcula en <CODE>suma</CODE> la suma ponderada de derivadas.
+     * @param c Los coeficientes.
+     * @param primera La derivada del primer coeficiente, o null si es la del
+     *                paso actual.
+     * @param desde Con qué coeficiente empiezan las derivadas del anillo, del
+     *              paso actual hacia atrás.
+     */
+    private void ponderar(double[] c, double[] primera, int desde) {
+        int n = this.suma.length;
+        double[] f = primera != null ? primera : this.historia[this.actual];
+        double a = c[0];
+        for (int m = 0; m < n; m++) {
+            this.suma[m] = a*f[m];
+        }
+        for (int j = 1; j < c.length; j++) {
+            f = this.historia[(this.actual - (j - desde) + this.orden) % this.orden];
+            a = c[j];
+            for (int m = 0; m < n; m++) {
+                this.suma[m] += a*f[m];
+            }
+        }
+    }
+    
+    /**
+     * Un paso de Runge-Kutta 4º orden, para los primeros pasos.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @param derCOMPS1 La derivada al principio del paso, ya calculada.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    private void pasoRK4(double t, double h, double[] derCOMPS1) throws ParseException {
+        double[] COMPS1 = this.compartimentos_;
+        Combinaciones.combinar(this.COMPS2, COMPS1, h/2, derCOMPS1);
+        this.sistema_.calcular(t + h/2, this.memoria_, this.COMPS2, this.derCOMPS2);
+        Combinaciones.combinar(this.COMPS3, COMPS1, h/2, this.derCOMPS2);
+        this.sistema_.calcular(t + h/2, this.memoria_, this.COMPS3, this.derCOMPS3);
+        Combinaciones.combinar(this.COMPS4, COMPS1, h, this.derCOMPS3);
+        this.sistema_.calcular(t + h, this.memoria_, this.COMPS4, this.derCOMPS4);
+        Combinaciones.combinar(COMPS1, COMPS1, h/6, 1, derCOMPS1, 2, this.derCOMPS2, 2, this.derCOMPS3, 1, this.derCOMPS4);
+    }
+}
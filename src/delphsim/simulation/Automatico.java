@@ -0,0 +1,244 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase implementa un método de simulación continua automático, para
+ * cuando no se sabe si el modelo es rígido o lo es sólo en algunos tramos
+ * (por ejemplo, mientras dura una campaña de vacunación muy rápida). Empieza
+ * con el método explícito de Dormand-Prince y, tras cada paso aceptado,
+ * estima la rigidez del modelo: si durante varios pasos seguidos el paso por
+ * el radio espectral del jacobiano supera el límite de estabilidad del
+ * método explícito, el paso lo está limitando la estabilidad y no la
+ * precisión, así que continúa con el método de Rosenbrock; y si con éste la
+ * rigidez desaparece durante otros tantos pasos, vuelve a Dormand-Prince.
+ * Los dos métodos comparten el modelo, la memoria y los compartimentos, de
+ * modo que el cambio no reinicia la simulación: sólo empieza el paso
+ * siguiente sin aprovechar nada del anterior.
+ * @author Víctor E. Tamames Gómez
+ */
+public class Automatico extends PasoVariable {
+    
+    /**
+     * Límite de estabilidad de Dormand-Prince: el paso por el radio
+     * espectral a partir del cual se considera rígido el modelo.
+     * Prefijado con valor 3.25
+     */
+    public static final double LIMITE_RIGIDEZ = 3.25d;
+    
+    /**
+     * Número de pasos aceptados seguidos en los que tiene que cumplirse el
+     * criterio para cambiar de método.
+     * Prefijado con valor 15
+     */
+    public static final int PASOS_CAMBIO = 15;
+    
+    /**
+     * Número de pasos no rígidos seguidos que hacen olvidar a Dormand-Prince
+     * los rígidos que llevaba.
+     * Prefijado con valor 6
+     */
+    public static final int PASOS_OLVIDO = 6;
+    
+    /**
+     * Los dos métodos entre los que se alterna.
+     */
+    private DormandPrince explicito;
+    private Rosenbrock implicito;
+    
+    /**
+     * El método con el que se están dando los pasos.
+     */
+    private PasoVariable activo;
+    
+    /**
+     * Si se acaba de cambiar de método, con lo que el siguiente paso no
+     * puede aprovechar nada del anterior.
+     */
+    private boolean cambiado;
+    
+    /**
+     * El paso del último intento.
+     */
+    private double hIntento;
+    
+    /**
+     * Pasos seguidos que cumplen, y que no cumplen, el criterio de cambio.
+     */
+    private int pasosRigidos, pasosNoRigidos;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, y los cuatro
+     * últimos son elementos del GUI que tenemos que actualizar cuando la tarea
+     * termine.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     */
+    public Automatico(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+    }
+    
+    /**
+     * Crea los dos métodos, les pasa el estado de la simulación y reserva
+     * sus vectores. Se empieza con Dormand-Prince.
+     * @param n El número de compartimentos del modelo.
+     */
+    @Override
+    protected void reservar(int n) {
+        this.explicito = new DormandPrince(this);
+        this.implicito = new Rosenbrock(this);
+        this.compartir(this.explicito);
+        this.compartir(this.implicito);
+        this.explicito.reservar(n);
+        this.implicito.reservar(n);
+        this.activo = this.explicito;
+        this.control = this.activo.control;
+    }
+    
+    /**
+     * Prepara el paso con el método activo; si se acaba de cambiar de
+     * método, como tras un cambio de tramo.
+     * @param t El instante en que empieza el paso.
+     * @param reinicio Si es el primer paso de la simulación o el primero tras
+     *                 un cambio de tramo.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void comenzarPaso(double t, boolean reinicio) throws ParseException {
+        if (this.cambiado) {
+            // La memoria puede tener los valores de un punto de los resultados
+            if (!reinicio) {
+                this.reanudar(t);
+            }
+            reinicio = true;
+            this.cambiado = false;
+        }
+        this.activo.comenzarPaso(t, reinicio);
+    }
+    
+    /**
+     * Intenta un paso con el método activo.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @return El error cometido, medido por el control del método activo.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected double intentar(double t, double h) throws ParseException {
+        this.hIntento = h;
+        return this.activo.intentar(t, h);
+    }
+    
+    /**
+     * Devuelve la solución del último intento del método activo.
+     * @return El valor de los compartimentos al final del paso.
+     */
+    @Override
+    protected double[] solucion() {
+        return this.activo.solucion();
+    }
+    
+    /**
+     * Prepara la interpolación del método activo.
+     * @param h El paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void prepararInterpolacion(double h) throws ParseException {
+        this.activo.prepararInterpolacion(h);
+    }
+    
+    /**
+     * Interpola la solución con el método activo.
+     * @param x Donde se deja el valor de los compartimentos.
+     * @param theta La fracción del paso transcurrida hasta el instante.
+     */
+    @Override
+    protected void interpolar(double[] x, double theta) {
+        this.activo.interpolar(x, theta);
+    }
+    
+    /**
+     * Estima la rigidez en el paso aceptado, lo termina con el método activo
+     * y decide si el siguiente se da con el otro.
+     */
+    @Override
+    protected void terminarPaso() {
+        if (this.activo == this.explicito) {
+            if (this.explicito.rigidez(this.hIntento) > LIMITE_RIGIDEZ) {
+                this.pasosNoRigidos = 0;
+                this.pasosRigidos++;
+            } else if (++this.pasosNoRigidos >= PASOS_OLVIDO) {
+                this.pasosRigidos = 0;
+            }
+            this.explicito.terminarPaso();
+            if (this.pasosRigidos >= PASOS_CAMBIO) {
+                this.cambiar(this.implicito);
+            }
+        } else {
+            if (this.implicito.rigidez(this.hIntento) < LIMITE_RIGIDEZ) {
+                this.pasosNoRigidos++;
+            } else {
+                this.pasosNoRigidos = 0;
+            }
+            this.implicito.terminarPaso();
+            if (this.pasosNoRigidos >= PASOS_CAMBIO) {
+                this.cambiar(this.explicito);
+            }
+        }
+    }
+    
+    /**
+     * Continúa con otro método a partir del siguiente paso, con su control
+     * del paso empezando de nuevo.
+     * @param metodo El método con el que continuar.
+     */
+    private void cambiar(PasoVariable metodo) {
+        this.activo = metodo;
+        this.control = metodo.control;
+        this.control.reiniciar();
+        this.pasosRigidos = 0;
+        this.pasosNoRigidos = 0;
+        this.cambiado = true;
+    }
+}
@@ -0,0 +1,194 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+/**
+ * Operaciones vectoriales con que los métodos de simulación combinan los
+ * compartimentos y sus derivadas en cada etapa: <CODE>y = x + h*(a0*k0 +
+ * a1*k1 + ...)</CODE>.
+ * <p>Reúne en un sitio las combinaciones que antes repetía cada método, sin
+ * cambiar su coste: los coeficientes se reciben como parámetros, de modo que
+ * dentro de los bucles sólo se leen y escriben los vectores, elemento a
+ * elemento y sin llamadas ni accesos a otros arrays. No hay una versión
+ * vectorial explícita (la API de vectores de Java no está disponible en las
+ * versiones para las que se compila la aplicación), y que la máquina virtual
+ * use o no instrucciones SIMD en estos bucles depende de ella. Cada elemento
+ * se calcula con las mismas operaciones y en el mismo orden que las fórmulas
+ * de cada método, así que el resultado no cambia.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+final class Combinaciones {
+
+    /**
+     * Constructor privado: la clase sólo tiene métodos estáticos.
+     */
+    private Combinaciones() {
+    }
+
+    /**
+     * Calcula <CODE>y = x + a*k</CODE>.
+     * @param y Donde se deja el resultado (puede ser el mismo que x).
+     * @param x El valor de partida.
+     * @param a El coeficiente, paso incluido.
+     * @param k La derivada.
+     */
+    static void combinar(double[] y, double[] x, double a, double[] k) {
+        for (int n = 0; n < y.length; n++) {
+            y[n] = x[n] + a*k[n];
+        }
+    }
+
+    /**
+     * Calcula <CODE>y = x + h*(a0*k0 + a1*k1)</CODE>.
+     * @param y Donde se deja el resultado (puede ser el mismo que x).
+     * @param x El valor de partida.
+     * @param h El paso.
+     * @param a0 El coeficiente de la primera derivada.
+     * @param k0 La primera derivada.
+     * @param a1 El coeficiente de la segunda derivada.
+     * @param k1 La segunda derivada.
+     */
+    static void combinar(double[] y, double[] x, double h,
+                         double a0, double[] k0, double a1, double[] k1) {
+        for (int n = 0; n < y.length; n++) {
+            y[n] = x[n] + h*(a0*k0[n] + a1*k1[n]);
+        }
+    }
+
+    /**
+     * Calcula <CODE>y = x + h*(a0*k0 + a1*k1 + a2*k2)</CODE>.
+     * @param y Donde se deja el resultado (puede ser el mismo que x).
+     * @param x El valor de partida.
+     * @param h El paso.
+     * @param a0 El coeficiente de la primera derivada.
+     * @param k0 La primera derivada.
+     * @param a1 El coeficiente de la segunda derivada.
+     * @param k1 La segunda derivada.
+     * @param a2 El coeficiente de la tercera derivada.
+     * @param k2 La tercera derivada.
+     */
+    static void combinar(double[] y, double[] x, double h,
+                         double a0, double[] k0, double a1, double[] k1, double a2, double[] k2) {
+        for (int n = 0; n < y.length; n++) {
+            y[n] = x[n] + h*(a0*k0[n] + a1*k1[n] + a2*k2[n]);
+        }
+    }
+
+    /**
+     * Calcula <CODE>y = x + h*(a0*k0 + a1*k1 + a2*k2 + a3*k3)</CODE>.
+     * @param y Donde se deja el resultado (puede ser el mismo que x).
+     * @param x El valor de partida.
+     * @param h El paso.
+     * @param a0 El coeficiente de la primera derivada.
+     * @param k0 La primera derivada.
+     * @param a1 El coeficiente de la segunda derivada.
+     * @param k1 La segunda derivada.
+     * @param a2 El coeficiente de la tercera derivada.
+     * @param k2 La tercera derivada.
+     * @param a3 El coeficiente de la cuarta derivada.
+     * @param k3 La cuarta derivada.
+     */
+    static void combinar(double[] y, double[] x, double h,
+                         double a0, double[] k0, double a1, double[] k1,
+                         double a2, double[] k2, double a3, double[] k3) {
+        for (int n = 0; n < y.length; n++) {
+            y[n] = x[n] + h*(a0*k0[n] + a1*k1[n] + a2*k2[n] + a3*k3[n]);
+        }
+    }
+
+    /**
+     * Calcula <CODE>y = x + h*(a0*k0 + a1*k1 + a2*k2 + a3*k3 + a4*k4)</CODE>.
+     * @param y Donde se deja el resultado (puede ser el mismo que x).
+     * @param x El valor de partida.
+     * @param h El paso.
+     * @param a0 El coeficiente de la primera derivada.
+     * @param k0 La primera derivada.
+     * @param a1 El coeficiente de la segunda derivada.
+     * @param k1 La segunda derivada.
+     * @param a2 El coeficiente de la tercera derivada.
+     * @param k2 La tercera derivada.
+     * @param a3 El coeficiente de la cuarta derivada.
+     * @param k3 La cuarta derivada.
+     * @param a4 El coeficiente de la quinta derivada.
+     * @param k4 La quinta derivada.
+     */
+    static void combinar(double[] y, double[] x, double h,
+                         double a0, double[] k0, double a1, double[] k1, double a2, double[] k2,
+                         double a3, double[] k3, double a4, double[] k4) {
+        for (int n = 0; n < y.length; n++) {
+            y[n] = x[n] + h*(a0*k0[n] + a1*k1[n] + a2*k2[n] + a3*k3[n] + a4*k4[n]);
+        }
+    }
+
+    /**
+     * Calcula <CODE>y = x + h*(a0*k0 + a1*k1 + a2*k2 + a3*k3 + a4*k4 + a5*k5)</CODE>.
+     * @param y Donde se deja el resultado (puede ser el mismo que x).
+     * @param x El valor de partida.
+     * @param h El paso.
+     * @param a0 El coeficiente de la primera derivada.
+     * @param k0 La primera derivada.
+     * @param a1 El coeficiente de la segunda derivada.
+     * @param k1 La segunda derivada.
+     * @param a2 El coeficiente de la tercera derivada.
+     * @param k2 La tercera derivada.
+     * @param a3 El coeficiente de la cuarta derivada.
+     * @param k3 La cuarta derivada.
+     * @param a4 El coeficiente de la quinta derivada.
+     * @param k4 La quinta derivada.
+     * @param a5 El coeficiente de la sexta derivada.
+     * @param k5 La sexta derivada.
+     */
+    static void combinar(double[] y, double[] x, double h,
+                         double a0, double[] k0, double a1, double[] k1, double a2, double[] k2,
+                         double a3, double[] k3, double a4, double[] k4, double a5, double[] k5) {
+        for (int n = 0; n < y.length; n++) {
+            y[n] = x[n] + h*(a0*k0[n] + a1*k1[n] + a2*k2[n] + a3*k3[n] + a4*k4[n] + a5*k5[n]);
+        }
+    }
+
+    /**
+     * Interpola dentro de un paso con el polinomio cúbico de Hermite, que
+     * pasa por sus dos extremos con sus derivadas: <CODE>y = x0 +
+     * theta*(x1 - x0) + theta*(theta - 1)*((1 - 2*theta)*(x1 - x0) +
+     * (theta - 1)*h*k0 + theta*h*k1)</CODE>.
+     * @param y Donde se deja el resultado (puede ser el mismo que x1).
+     * @param x0 El valor al principio del paso.
+     * @param k0 La derivada al principio del paso.
+     * @param x1 El valor al final del paso.
+     * @param k1 La derivada al final del paso.
+     * @param h El paso.
+     * @param theta La fracción del paso transcurrida.
+     */
+    static void hermite(double[] y, double[] x0, double[] k0, double[] x1, double[] k1,
+                        double h, double theta) {
+        double a = theta*(theta - 1);
+        double b = 1 - 2*theta;
+        double c = (theta - 1)*h;
+        double d = theta*h;
+        for (int n = 0; n < y.length; n++) {
+            double diferencia = x1[n] - x0[n];
+            y[n] = x0[n] + theta*diferencia + a*(b*diferencia + c*k0[n] + d*k1[n]);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Control del paso de integración de los métodos de paso variable. El error
+ * estimado en cada paso se mide respecto a una tolerancia mixta, absoluta y
+ * relativa, que se escala con el tamaño de cada compartimento: un
+ * compartimento de diez personas y otro de diez millones no pueden compartir
+ * la misma cota absoluta. El paso se acepta si el error así medido no supera
+ * la unidad, y el siguiente paso lo decide un controlador PI, que además del
+ * error del último paso tiene en cuenta el del anterior aceptado para que el
+ * paso no oscile. El paso se mantiene siempre entre una cota mínima y una
+ * máxima.
+ * @author Víctor E. Tamames Gómez
+ */
+public class ControlPaso {
+    
+    /**
+     * Factor de seguridad con el que se multiplica el paso óptimo, para que
+     * el siguiente no se rechace por poco.
+     */
+    public static final double SEGURIDAD = 0.9d;
+    
+    /**
+     * Cota mínima del factor por el que se multiplica el paso.
+     */
+    public static final double FACTOR_MIN = 0.2d;
+    
+    /**
+     * Cota máxima del factor por el que se multiplica el paso.
+     */
+    public static final double FACTOR_MAX = 5.0d;
+    
+    /**
+     * Tolerancia absoluta por defecto, si ni el modelo ni las preferencias
+     * dicen otra cosa.
+     */
+    public static final double TOLERANCIA_ABSOLUTA = 1.0e-6d;
+    
+    /**
+     * Tolerancia relativa por defecto, si ni el modelo ni las preferencias
+     * dicen otra cosa.
+     */
+    public static final double TOLERANCIA_RELATIVA = 1.0e-6d;
+    
+    /**
+     * Tolerancia absoluta del error de cada compartimento.
+     */
+    protected double toleranciaAbsoluta;
+    
+    /**
+     * Tolerancia relativa del error de cada compartimento, respecto a su
+     * valor.
+     */
+    protected double toleranciaRelativa;
+    
+    /**
+     * Cota mínima permitida para el paso de integración.
+     */
+    protected double hMin;
+    
+    /**
+     * Cota máxima permitida para el paso de integración.
+     */
+    protected double hMax;
+    
+    /**
+     * Exponentes del controlador PI para el error del último paso y para el
+     * del anterior aceptado, calculados a partir del orden con el que se
+     * estima el error.
+     */
+    protected double alfa, beta;
+    
+    /**
+     * Error del último paso aceptado.
+     */
+    protected double errorAnterior = 1.0d;
+    
+    /**
+     * Crea un control de paso con las tolerancias y las cotas dadas.
+     * @param toleranciaAbsoluta Tolerancia absoluta del error.
+     * @param toleranciaRelativa Tolerancia relativa del error.
+     * @param hMin Cota mínima del paso.
+     * @param hMax Cota máxima del paso.
+     * @param orden Orden del menor de los dos métodos con los que se estima
+     *              el error.
+     */
+    public ControlPaso(double toleranciaAbsoluta, double toleranciaRelativa,
+                       double hMin, double hMax, int orden) {
+        this.toleranciaAbsoluta = toleranciaAbsoluta;
+        this.toleranciaRelativa = toleranciaRelativa;
+        this.hMin = hMin;
+        this.hMax = hMax;
+        this.alfa = 0.7d / (orden + 1);
+        this.beta = 0.4d / (orden + 1);
+    }
+    
+    /**
+     * Olvida el error del último paso aceptado, para empezar de nuevo tras
+     * un cambio de tramo de un proceso.
+     */
+    public void reiniciar() {
+        this.errorAnterior = 1.0d;
+    }
+    
+    /**
+     * Ajusta un paso a las cotas permitidas.
+     * @param h El paso propuesto.
+     * @return El paso dentro de las cotas.
+     */
+    public double limitar(double h) {
+        if (h < this.hMin) {
+            return this.hMin;
+        } else if (h > this.hMax) {
+            return this.hMax;
+        }
+        return h;
+    }
+    
+    /**
+     * Calcula el error que se tolera en un compartimento a lo largo de un
+     * paso: tolAbs + tolRel * max(|a|, |b|).
+     * @param a El valor del compartimento al principio del paso.
+     * @param b El valor del compartimento al final del paso.
+     * @return El error tolerado.
+     */
+    public double escala(double a, double b) {
+        return this.toleranciaAbsoluta
+                + this.toleranciaRelativa * Math.max(Math.abs(a), Math.abs(b));
+    }
+    
+    /**
+     * Mide el error de un paso como la mayor diferencia entre las dos
+     * soluciones calculadas, dividida en cada compartimento por el error que
+     * se tolera en él.
+     * @param x0 Los compartimentos al principio del paso.
+     * @param x1 La solución con la que se avanza.
+     * @param z La otra solución, con la que se estima el error.
+     * @return El error medido; el paso es aceptable si no supera 1.
+     */
+    public double error(double[] x0, double[] x1, double[] z) {
+        double max = 0.0d;
+        for (int i = 0; i < x1.length; i++) {
+            max = Math.max(max, Math.abs(x1[i] - z[i]) / this.escala(x0[i], x1[i]));
+        }
+        return max;
+    }
+    
+    /**
+     * Decide si se acepta el paso dado. Con el paso mínimo no se puede hacer
+     * nada mejor, así que se acepta siempre (por ejemplo, al atravesar el
+     * cambio de tramo de un proceso), salvo que el error no sea un número:
+     * la solución ya no lo es y no se puede seguir.
+     * @param error El error medido con <CODE>error()</CODE>.
+     * @param h El paso dado.
+     * @return Si se acepta el paso.
+     * @throws org.nfunk.jep.ParseException Si el error no es un número finito
+     *                                      con el paso mínimo.
+     */
+    public boolean aceptar(double error, double h) throws ParseException {
+        if (Double.isNaN(error) || Double.isInfinite(error)) {
+            if (h <= this.hMin) {
+                throw new ParseException("La solución no es finita con el paso mínimo");
+            }
+            return false;
+        }
+        return error <= 1.0d || h <= this.hMin;
+    }
+    
+    /**
+     * Calcula el factor por el que multiplicar el paso con el controlador PI:
+     * q = S * error^(-alfa) * errorAnterior^beta
+     * Tras un rechazo no se deja crecer el paso, y tras un paso aceptado su
+     * error pasa a ser el anterior para el siguiente.
+     * @param error El error medido en el paso.
+     * @param aceptado Si el paso se ha aceptado.
+     * @return El factor <CODE>q</CODE>.
+     */
+    public double factor(double error, boolean aceptado) {
+        double q;
+        if (error == 0.0d) {
+            q = FACTOR_MAX;
+        } else if (error > 0.0d) {
+            q = SEGURIDAD * Math.pow(error, -this.alfa) * Math.pow(this.errorAnterior, this.beta);
+            q = Math.max(FACTOR_MIN, Math.min(FACTOR_MAX, q));
+        } else {
+            // Error no numérico: reducir todo lo posible
+            q = FACTOR_MIN;
+        }
+        if (aceptado) {
+            this.errorAnterior = (error > 1.0e-4d) ? error : 1.0e-4d;
+        } else {
+            q = Math.min(q, 1.0d);
+        }
+        return q;
+    }
+}
@@ -0,0 +1,302 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase implementa el método de simulación continua de Dormand-Prince.
+ * Como Runge-Kutta-Fehlberg, es un método de paso variable con dos
+ * aproximaciones, de 5º y de 4º orden, cuya diferencia estima el error, pero
+ * continúa con la de 5º orden y su última etapa es la primera del paso
+ * siguiente, así que cada paso aceptado sólo evalúa seis veces el modelo.
+ * Además, con las etapas de cada paso se puede interpolar la solución en
+ * cualquier instante dentro de él, de modo que los resultados se escriben
+ * en los puntos de la salida (los mismos que en los métodos de paso fijo)
+ * sin que el paso del método tenga que acercarse a ellos.
+ * @author Víctor E. Tamames Gómez
+ */
+public class DormandPrince extends PasoVariable {
+    
+    /**
+     * Coeficientes que ponderan el peso de los distintos puntos intermedios
+     * calculados en cada aproximación. La última fila son también los pesos
+     * de la solución de orden 5.
+     */
+    public static double[][] A = {{  1.0d/5.0d                                                                                          },
+                                  {  3.0d/40.0d,          9.0d/40.0d                                                                    },
+                                  {  44.0d/45.0d,        -56.0d/15.0d,       32.0d/9.0d                                                 },
+                                  {  19372.0d/6561.0d,   -25360.0d/2187.0d,  64448.0d/6561.0d, -212.0d/729.0d                           },
+                                  {  9017.0d/3168.0d,    -355.0d/33.0d,      46732.0d/5247.0d,  49.0d/176.0d,  -5103.0d/18656.0d        },
+                                  {  35.0d/384.0d,        0.0d,              500.0d/1113.0d,    125.0d/192.0d, -2187.0d/6784.0d, 11.0d/84.0d }};
+    
+    /**
+     * Coeficientes de los pesos de cada término para la solución de orden 4.
+     */
+    public static double[] B4 = { 5179.0d/57600.0d, 0.0d, 7571.0d/16695.0d, 393.0d/640.0d, -92097.0d/339200.0d, 187.0d/2100.0d, 1.0d/40.0d };
+    
+    /**
+     * Coeficientes del punto en el tiempo en el que se calcula cada aproximación.
+     */
+    public static double[] C = {0, 1.0d/5.0d, 3.0d/10.0d, 4.0d/5.0d, 8.0d/9.0d, 1.0d, 1.0d};
+    
+    /**
+     * Coeficientes de la interpolación dentro de cada paso (Hairer, Nørsett
+     * y Wanner).
+     */
+    public static double[] D = { -12715105075.0d/11282082432.0d, 0.0d, 87487479700.0d/32700410799.0d,
+                                 -10690763975.0d/1880347072.0d, 701980252875.0d/199316789632.0d,
+                                 -1453857185.0d/822651844.0d, 69997945.0d/29380423.0d };
+    
+    /**
+     * Cota mínima permitida para el paso de integración.
+     * Prefijada con valor 0.001
+     */
+    public static final double H_MIN = 0.001d;
+    
+    /**
+     * Cota máxima permitida para el paso de integración. Como los resultados
+     * se interpolan con orden 4, puede ser mayor que la de
+     * Runge-Kutta-Fehlberg.
+     * Prefijada con valor 1
+     */
+    public static final double H_MAX = 1.0d;
+    
+    /**
+     * Si la primera etapa de cada paso se toma de la última del anterior, lo
+     * que sólo se puede hacer si ningún parámetro cambia en cada punto.
+     */
+    private boolean reutilizarEtapa;
+    
+    /**
+     * Derivadas de cada etapa.
+     */
+    private double[] K1, K2, K3, K4, K5, K6, K7;
+    
+    /**
+     * Compartimentos de la etapa que se está calculando, y las soluciones de
+     * orden 5 y 4 del paso.
+     */
+    private double[] etapa, sol5, sol4;
+    
+    /**
+     * Coeficientes del polinomio que interpola la solución dentro del paso.
+     */
+    private double[] R1, R2, R3, R4, R5;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, y los cuatro
+     * últimos son elementos del GUI que tenemos que actualizar cuando la tarea
+     * termine.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     */
+    public DormandPrince(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+    }
+    
+    /**
+     * Constructor de un método que trabaja por cuenta de otra tarea.
+     * @param principal La tarea por cuenta de la que trabaja.
+     */
+    DormandPrince(SimulationTask principal) {
+        super(principal);
+    }
+    
+    /**
+     * Reserva los vectores de las etapas y de la interpolación y crea el
+     * control del paso.
+     * @param n El número de compartimentos del modelo.
+     */
+    @Override
+    protected void reservar(int n) {
+        // El error de orden 5 crece como h^5; por unidad de tiempo, como h^4
+        this.control = new ControlPaso(this.toleranciaAbsoluta_, this.toleranciaRelativa_, H_MIN, H_MAX, 4);
+        this.reutilizarEtapa = this.parametrosFijos();
+        this.K1 = new double[n];
+        this.K2 = new double[n];
+        this.K3 = new double[n];
+        this.K4 = new double[n];
+        this.K5 = new double[n];
+        this.K6 = new double[n];
+        this.K7 = new double[n];
+        this.etapa = new double[n];
+        this.sol5 = new double[n];
+        this.sol4 = new double[n];
+        this.R1 = new double[n];
+        this.R2 = new double[n];
+        this.R3 = new double[n];
+        this.R4 = new double[n];
+        this.R5 = new double[n];
+    }
+    
+    /**
+     * Calcula las derivadas al principio del paso, salvo que se puedan tomar
+     * de la última etapa del paso anterior.
+     * @param t El instante en que empieza el paso.
+     * @param reinicio Si es el primer paso de la simulación o el primero tras
+     *                 un cambio de tramo.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void comenzarPaso(double t, boolean reinicio) throws ParseException {
+        if (reinicio) {
+            this.sistema_.derivadas(this.memoria_, this.K1);
+        } else if (!this.reutilizarEtapa) {
+            this.sistema_.calcular(t, this.memoria_, this.compartimentos_, this.K1);
+        }
+    }
+    
+    /**
+     * Este método implementa propiamente dicho un intento de paso del método
+     * de Dormand-Prince.
+     * @param t_ El instante en que empieza el paso.
+     * @param h El paso.
+     * @return El error entre las soluciones de orden 5 y 4, medido por el
+     *         control del paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected double intentar(double t_, double h) throws ParseException {
+        double[] X0 = this.compartimentos_;
+        /** 
+         * CUERPO del método:
+         * Xk = X0 + h*(A[k-2][0]*derX1 + ... + A[k-2][k-2]*derX(k-1));
+         * derXk = f(Xk, t+C[k-1]*h);   para k = 2..7
+         * 
+         * x(t+h) = X7 (solución de orden 5)
+         * z(t+h) = X0 + h*(B4[0]*derX1 + ... + B4[6]*derX7);
+         * 
+         * El error es |x(t+h) - z(t+h)|
+         */
+        Combinaciones.combinar(this.etapa, X0, h*A[0][0], this.K1);
+        this.sistema_.calcular(t_ + C[1]*h, this.memoria_, this.etapa, this.K2);
+        Combinaciones.combinar(this.etapa, X0, h, A[1][0], this.K1, A[1][1], this.K2);
+        this.sistema_.calcular(t_ + C[2]*h, this.memoria_, this.etapa, this.K3);
+        Combinaciones.combinar(this.etapa, X0, h, A[2][0], this.K1, A[2][1], this.K2, A[2][2], this.K3);
+        this.sistema_.calcular(t_ + C[3]*h, this.memoria_, this.etapa, this.K4);
+        Combinaciones.combinar(this.etapa, X0, h, A[3][0], this.K1, A[3][1], this.K2,
+                A[3][2], this.K3, A[3][3], this.K4);
+        this.sistema_.calcular(t_ + C[4]*h, this.memoria_, this.etapa, this.K5);
+        Combinaciones.combinar(this.etapa, X0, h, A[4][0], this.K1, A[4][1], this.K2,
+                A[4][2], this.K3, A[4][3], this.K4, A[4][4], this.K5);
+        this.sistema_.calcular(t_ + C[5]*h, this.memoria_, this.etapa, this.K6);
+        Combinaciones.combinar(this.sol5, X0, h, A[5][0], this.K1, A[5][2], this.K3,
+                A[5][3], this.K4, A[5][4], this.K5, A[5][5], this.K6);
+        this.sistema_.calcular(t_ + C[6]*h, this.memoria_, this.sol5, this.K7);
+        Combinaciones.combinar(this.sol4, X0, h, B4[0], this.K1, B4[2], this.K3,
+                B4[3], this.K4, B4[4], this.K5, B4[5], this.K6, B4[6], this.K7);
+        return this.control.error(X0, this.sol5, this.sol4);
+    }
+    
+    /**
+     * Devuelve la solución de orden 5 del último intento.
+     * @return El valor de los compartimentos al final del paso.
+     */
+    @Override
+    protected double[] solucion() {
+        return this.sol5;
+    }
+    
+    /**
+     * Estima la rigidez del modelo en el último intento: la sexta y la
+     * séptima etapa se evalúan en el mismo instante, así que el cociente
+     * <CODE>|K7 - K6| / |X7 - X6|</CODE> aproxima el radio espectral del
+     * jacobiano (Hairer y Wanner). El método sólo es estable mientras
+     * <CODE>h</CODE> por él no pasa de unos 3.3. Hay que llamarlo antes de
+     * <CODE>terminarPaso()</CODE>.
+     * @param h El paso del último intento.
+     * @return El paso por el radio espectral estimado.
+     */
+    double rigidez(double h) {
+        double numerador = 0.0d, denominador = 0.0d;
+        for (int n = 0; n < this.sol5.length; n++) {
+            double dK = this.K7[n] - this.K6[n];
+            double dX = this.sol5[n] - this.etapa[n];
+            numerador += dK*dK;
+            denominador += dX*dX;
+        }
+        return denominador > 0 ? h * Math.sqrt(numerador / denominador) : 0.0d;
+    }
+    
+    /**
+     * La última etapa del paso aceptado es la primera del siguiente.
+     */
+    @Override
+    protected void terminarPaso() {
+        double[] aux = this.K1;
+        this.K1 = this.K7;
+        this.K7 = aux;
+    }
+    
+    /**
+     * Calcula los coeficientes del polinomio que interpola la solución en el
+     * paso recién aceptado, antes de que sus etapas cambien.
+     * @param h El paso.
+     */
+    @Override
+    protected void prepararInterpolacion(double h) {
+        double[] X0 = this.compartimentos_;
+        for (int n = 0; n < X0.length; n++) {
+            double diferencia = this.sol5[n] - X0[n];
+            double pendiente = h*this.K1[n] - diferencia;
+            this.R1[n] = X0[n];
+            this.R2[n] = diferencia;
+            this.R3[n] = pendiente;
+            this.R4[n] = diferencia - h*this.K7[n] - pendiente;
+            this.R5[n] = h*(D[0]*this.K1[n] + D[2]*this.K3[n] + D[3]*this.K4[n]
+                    + D[4]*this.K5[n] + D[5]*this.K6[n] + D[6]*this.K7[n]);
+        }
+    }
+    
+    /**
+     * Interpola la solución en un instante dentro del paso, de orden 4.
+     * @param x Donde se deja el valor de los compartimentos.
+     * @param theta La fracción del paso transcurrida hasta el instante.
+     */
+    @Override
+    protected void interpolar(double[] x, double theta) {
+        double resto = 1 - theta;
+        for (int n = 0; n < x.length; n++) {
+            x[n] = this.R1[n] + theta*(this.R2[n] + resto*(this.R3[n]
+                    + theta*(this.R4[n] + resto*this.R5[n])));
+        }
+    }
+}
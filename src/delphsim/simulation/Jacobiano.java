@@ -0,0 +1,282 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.simulation.compilador.Sistema;
+
+import java.util.Arrays;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Jacobiano del modelo para los métodos que lo necesitan, guardado sin sus
+ * ceros (por filas: las columnas y los valores de cada una) y aproximado por
+ * diferencias finitas. La estructura de ceros es la del sistema compilado:
+ * la derivada de cada compartimento sólo depende de los compartimentos que
+ * leen sus procesos y atajos, y en los modelos grandes éstos son pocos.
+ * <p>Las columnas se reparten en grupos (Curtis, Powell y Reid) en los que
+ * ninguna fila depende de dos columnas del mismo grupo, así que se pueden
+ * desplazar todas a la vez y cada evaluación del modelo da un grupo entero de
+ * columnas. En un modelo por edades o por zonas, con pocos contactos entre
+ * grupos, el número de evaluaciones no crece con el de compartimentos.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+final class Jacobiano {
+
+    /**
+     * Primera posición de cada fila en <CODE>columnas</CODE> y
+     * <CODE>valores</CODE>; la última es el número de elementos.
+     */
+    final int[] inicioFila;
+
+    /**
+     * La columna de cada elemento, en orden creciente dentro de cada fila.
+     */
+    final int[] columnas;
+
+    /**
+     * El valor de cada elemento.
+     */
+    final double[] valores;
+
+    /**
+     * Primera posición de cada columna en <CODE>filasColumna</CODE> y
+     * <CODE>elementosColumna</CODE>, que recorren los mismos elementos por
+     * columnas: su fila y su posición en <CODE>valores</CODE>.
+     */
+    private final int[] inicioColumna;
+    private final int[] filasColumna;
+    private final int[] elementosColumna;
+
+    /**
+     * Las columnas de cada grupo, que se calculan con una sola evaluación.
+     */
+    private final int[][] grupos;
+
+    /**
+     * El desplazamiento de cada columna en la última evaluación.
+     */
+    private final double[] deltas;
+
+    /**
+     * Constructor de la clase, que reparte las columnas en grupos.
+     * @param estructura Los compartimentos de los que depende cada derivada,
+     *                   en orden creciente.
+     */
+    Jacobiano(int[][] estructura) {
+        int n = estructura.length;
+        this.inicioFila = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            this.inicioFila[i + 1] = this.inicioFila[i] + estructura[i].length;
+        }
+        int elementos = this.inicioFila[n];
+        this.columnas = new int[elementos];
+        this.valores = new double[elementos];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(estructura[i], 0, this.columnas, this.inicioFila[i], estructura[i].length);
+        }
+        // Los mismos elementos, por columnas
+        this.inicioColumna = new int[n + 1];
+        for (int p = 0; p < elementos; p++) {
+            this.inicioColumna[this.columnas[p] + 1]++;
+        }
+        for (int j = 0; j < n; j++) {
+            this.inicioColumna[j + 1] += this.inicioColumna[j];
+        }
+        this.filasColumna = new int[elementos];
+        this.elementosColumna = new int[elementos];
+        int[] siguiente = new int[n];
+        System.arraycopy(this.inicioColumna, 0, siguiente, 0, n);
+        for (int i = 0; i < n; i++) {
+            for (int p = this.inicioFila[i]; p < this.inicioFila[i + 1]; p++) {
+                int q = siguiente[this.columnas[p]]++;
+                this.filasColumna[q] = i;
+                this.elementosColumna[q] = p;
+            }
+        }
+        this.grupos = this.agrupar(n);
+        this.deltas = new double[n];
+    }
+
+    /**
+     * Reparte las columnas en grupos, cada una en el primero en el que no
+     * haya otra que comparta fila con ella.
+     * @param n El número de columnas.
+     * @return Las columnas de cada grupo.
+     */
+    private int[][] agrupar(int n) {
+        int[] grupo = new int[n];
+        // Marca, para cada grupo, la última columna que lo ha descartado
+        int[] descartado = new int[n];
+        Arrays.fill(descartado, -1);
+        int numGrupos = 0;
+        int[] tamanos = new int[n];
+        for (int j = 0; j < n; j++) {
+            for (int q = this.inicioColumna[j]; q < this.inicioColumna[j + 1]; q++) {
+                int i = this.filasColumna[q];
+                for (int p = this.inicioFila[i]; p < this.inicioFila[i + 1]; p++) {
+                    int k = this.columnas[p];
+                    if (k < j) {
+                        descartado[grupo[k]] = j;
+                    }
+                }
+            }
+            int g = 0;
+            while (g < numGrupos && descartado[g] == j) {
+                g++;
+            }
+            grupo[j] = g;
+            tamanos[g]++;
+            numGrupos = Math.max(numGrupos, g + 1);
+        }
+        int[][] resultado = new int[numGrupos][];
+        for (int g = 0; g < numGrupos; g++) {
+            resultado[g] = new int[tamanos[g]];
+            tamanos[g] = 0;
+        }
+        for (int j = 0; j < n; j++) {
+            resultado[grupo[j]][tamanos[grupo[j]]++] = j;
+        }
+        return resultado;
+    }
+
+    /**
+     * Devuelve el número de evaluaciones del modelo que cuesta calcular el
+     * jacobiano.
+     * @return El número de grupos de columnas.
+     */
+    int getNumGrupos() {
+        return this.grupos.length;
+    }
+
+    /**
+     * Aproxima el jacobiano en <CODE>X</CODE> por diferencias finitas: la
+     * columna <CODE>j</CODE> es <CODE>(f(X + delta*ej) - f(X)) / delta</CODE>,
+     * y se desplazan a la vez todas las columnas de cada grupo.
+     * @param sistema El sistema compilado del modelo.
+     * @param t El instante en que se calcula.
+     * @param memoria La memoria del sistema.
+     * @param X Los compartimentos.
+     * @param F0 Las derivadas en <CODE>X</CODE>.
+     * @param etapa Vector auxiliar para los compartimentos desplazados.
+     * @param F Vector auxiliar para sus derivadas.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    void calcular(Sistema sistema, double t, double[] memoria, double[] X, double[] F0,
+                  double[] etapa, double[] F) throws ParseException {
+        double raizEpsilon = Math.sqrt(Math.ulp(1.0d));
+        System.arraycopy(X, 0, etapa, 0, X.length);
+        for (int g = 0; g < this.grupos.length; g++) {
+            int[] grupo = this.grupos[g];
+            for (int k = 0; k < grupo.length; k++) {
+                int j = grupo[k];
+                this.deltas[j] = raizEpsilon * Math.max(Math.abs(X[j]), 1.0d);
+                etapa[j] = X[j] + this.deltas[j];
+            }
+            sistema.calcular(t, memoria, etapa, F);
+            for (int k = 0; k < grupo.length; k++) {
+                int j = grupo[k];
+                etapa[j] = X[j];
+                for (int q = this.inicioColumna[j]; q < this.inicioColumna[j + 1]; q++) {
+                    int i = this.filasColumna[q];
+                    this.valores[this.elementosColumna[q]] = (F[i] - F0[i]) / this.deltas[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Comprueba si el jacobiano, calculado en otro punto, sigue valiendo en
+     * <CODE>X</CODE>: compara su producto por <CODE>F0</CODE> con la derivada
+     * de f en esa dirección, aproximada por diferencias finitas con una sola
+     * evaluación. Es la dirección en que se mueve la solución, y la que pesa
+     * en el paso.
+     * @param sistema El sistema compilado del modelo.
+     * @param t El instante en que se comprueba.
+     * @param memoria La memoria del sistema.
+     * @param X Los compartimentos.
+     * @param F0 Las derivadas en <CODE>X</CODE>.
+     * @param etapa Vector auxiliar para los compartimentos desplazados.
+     * @param F Vector auxiliar para sus derivadas.
+     * @param JF0 Vector auxiliar para el producto del jacobiano.
+     * @param tolerancia La diferencia relativa máxima entre ambos.
+     * @return Si la diferencia no pasa de la tolerancia.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    boolean vigente(Sistema sistema, double t, double[] memoria, double[] X, double[] F0,
+                    double[] etapa, double[] F, double[] JF0, double tolerancia) throws ParseException {
+        double normaX = 0.0d, normaF = 0.0d;
+        for (int i = 0; i < X.length; i++) {
+            normaX = Math.max(normaX, Math.abs(X[i]));
+            normaF = Math.max(normaF, Math.abs(F0[i]));
+        }
+        if (normaF == 0.0d) {
+            return true;
+        }
+        double delta = Math.sqrt(Math.ulp(1.0d)) * Math.max(normaX, 1.0d) / normaF;
+        Combinaciones.combinar(etapa, X, delta, F0);
+        sistema.calcular(t, memoria, etapa, F);
+        this.multiplicar(F0, JF0);
+        double diferencia = 0.0d, referencia = 0.0d;
+        for (int i = 0; i < X.length; i++) {
+            double derivada = (F[i] - F0[i]) / delta;
+            diferencia = Math.max(diferencia, Math.abs(derivada - JF0[i]));
+            referencia = Math.max(referencia, Math.abs(derivada));
+        }
+        return diferencia <= tolerancia * referencia;
+    }
+
+    /**
+     * Calcula <CODE>y = J*x</CODE>.
+     * @param x El vector que se multiplica.
+     * @param y Donde se deja el resultado (no puede ser el mismo que x).
+     */
+    void multiplicar(double[] x, double[] y) {
+        for (int i = 0; i < y.length; i++) {
+            double suma = 0.0d;
+            for (int p = this.inicioFila[i]; p < this.inicioFila[i + 1]; p++) {
+                suma += this.valores[p] * x[this.columnas[p]];
+            }
+            y[i] = suma;
+        }
+    }
+
+    /**
+     * Devuelve la norma infinito del jacobiano, que acota su radio espectral.
+     * @return La mayor suma de los valores absolutos de una fila.
+     */
+    double normaInfinito() {
+        double max = 0.0d;
+        for (int i = 0; i < this.inicioFila.length - 1; i++) {
+            double suma = 0.0d;
+            for (int p = this.inicioFila[i]; p < this.inicioFila[i + 1]; p++) {
+                suma += Math.abs(this.valores[p]);
+            }
+            max = Math.max(max, suma);
+        }
+        return max;
+    }
+}
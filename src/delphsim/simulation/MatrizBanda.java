@@ -0,0 +1,294 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Matriz <CODE>W = I - g*J</CODE> de los métodos lineal-implícitos, guardada
+ * en banda y factorizada como <CODE>P*W = L*U</CODE> por eliminación gaussiana
+ * con pivoteo parcial. Antes se renumeran los compartimentos (Cuthill-McKee
+ * inverso) para que los elementos del jacobiano queden cerca de la diagonal:
+ * con <CODE>kl</CODE> diagonales por debajo y <CODE>ku</CODE> por encima, la
+ * factorización cuesta <CODE>n*kl*(kl+ku)</CODE> operaciones y no
+ * <CODE>n^3</CODE>, y la matriz ocupa <CODE>n*(2*kl+ku+1)</CODE> números.
+ * <p>La banda se guarda por columnas como en LAPACK: el elemento
+ * <CODE>(i, j)</CODE> está en <CODE>banda[j][i - j + kl + ku]</CODE>, y las
+ * <CODE>kl</CODE> diagonales de más sobre <CODE>U</CODE> son las que llenan
+ * los intercambios de filas.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+final class MatrizBanda {
+
+    /**
+     * El jacobiano del que se forma la matriz.
+     */
+    private final Jacobiano J;
+
+    /**
+     * El compartimento en cada posición de la nueva numeración, y la posición
+     * de cada compartimento.
+     */
+    private final int[] orden;
+    private final int[] posicion;
+
+    /**
+     * Diagonales por debajo y por encima de la principal.
+     */
+    private final int kl, ku;
+
+    /**
+     * La factorización, por columnas, y la fila elegida como pivote en cada
+     * columna.
+     */
+    private final double[][] banda;
+    private final int[] pivotes;
+
+    /**
+     * Vector auxiliar para resolver en la nueva numeración.
+     */
+    private final double[] y;
+
+    /**
+     * Constructor de la clase, que renumera los compartimentos y mide la
+     * banda con la estructura del jacobiano.
+     * @param jacobiano El jacobiano del que se forma la matriz.
+     */
+    MatrizBanda(Jacobiano jacobiano) {
+        this.J = jacobiano;
+        int n = jacobiano.inicioFila.length - 1;
+        this.orden = ordenar(n, jacobiano.inicioFila, jacobiano.columnas);
+        this.posicion = new int[n];
+        for (int k = 0; k < n; k++) {
+            this.posicion[this.orden[k]] = k;
+        }
+        int inf = 0, sup = 0;
+        for (int i = 0; i < n; i++) {
+            for (int p = jacobiano.inicioFila[i]; p < jacobiano.inicioFila[i + 1]; p++) {
+                int d = this.posicion[i] - this.posicion[jacobiano.columnas[p]];
+                inf = Math.max(inf, d);
+                sup = Math.max(sup, -d);
+            }
+        }
+        this.kl = inf;
+        this.ku = sup;
+        this.banda = new double[n][2*inf + sup + 1];
+        this.pivotes = new int[n];
+        this.y = new double[n];
+    }
+
+    /**
+     * Renumera los nudos del grafo del jacobiano (dos compartimentos están
+     * unidos si la derivada de uno depende del otro) por el algoritmo de
+     * Cuthill-McKee inverso: un recorrido en anchura de cada componente
+     * desde un nudo de grado mínimo, en el que los vecinos se visitan de
+     * menor a mayor grado, y al revés.
+     * @param n El número de compartimentos.
+     * @param inicioFila Primera posición de cada fila en columnas.
+     * @param columnas La columna de cada elemento.
+     * @return El compartimento en cada posición.
+     */
+    private static int[] ordenar(int n, int[] inicioFila, int[] columnas) {
+        // Vecinos de cada nudo, sin repetir: (i, j) y (j, i)
+        int[] grado = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int p = inicioFila[i]; p < inicioFila[i + 1]; p++) {
+                if (columnas[p] != i) {
+                    grado[i]++;
+                    grado[columnas[p]]++;
+                }
+            }
+        }
+        int[][] vecinos = new int[n][];
+        for (int i = 0; i < n; i++) {
+            vecinos[i] = new int[grado[i]];
+            grado[i] = 0;
+        }
+        int[] marca = new int[n];
+        Arrays.fill(marca, -1);
+        for (int i = 0; i < n; i++) {
+            for (int p = inicioFila[i]; p < inicioFila[i + 1]; p++) {
+                int j = columnas[p];
+                if (j != i) {
+                    vecinos[i][grado[i]++] = j;
+                    vecinos[j][grado[j]++] = i;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int distintos = 0;
+            for (int k = 0; k < grado[i]; k++) {
+                int j = vecinos[i][k];
+                if (marca[j] != i) {
+                    marca[j] = i;
+                    vecinos[i][distintos++] = j;
+                }
+            }
+            grado[i] = distintos;
+        }
+        // Recorrido en anchura de cada componente
+        int[] orden = new int[n];
+        boolean[] visitado = new boolean[n];
+        int fin = 0;
+        while (fin < n) {
+            int raiz = -1;
+            for (int i = 0; i < n; i++) {
+                if (!visitado[i] && (raiz < 0 || grado[i] < grado[raiz])) {
+                    raiz = i;
+                }
+            }
+            int inicio = fin;
+            orden[fin++] = raiz;
+            visitado[raiz] = true;
+            for (int k = inicio; k < fin; k++) {
+                int nudo = orden[k];
+                int primero = fin;
+                for (int v = 0; v < grado[nudo]; v++) {
+                    int j = vecinos[nudo][v];
+                    if (!visitado[j]) {
+                        visitado[j] = true;
+                        orden[fin++] = j;
+                    }
+                }
+                // Los recién añadidos, de menor a mayor grado
+                for (int a = primero + 1; a < fin; a++) {
+                    int j = orden[a];
+                    int b = a - 1;
+                    while (b >= primero && grado[orden[b]] > grado[j]) {
+                        orden[b + 1] = orden[b];
+                        b--;
+                    }
+                    orden[b + 1] = j;
+                }
+            }
+        }
+        for (int a = 0, b = n - 1; a < b; a++, b--) {
+            int aux = orden[a];
+            orden[a] = orden[b];
+            orden[b] = aux;
+        }
+        return orden;
+    }
+
+    /**
+     * Forma <CODE>W = I - g*J</CODE> con los valores actuales del jacobiano y
+     * la factoriza.
+     * @param g El coeficiente del jacobiano, paso incluido.
+     */
+    void factorizar(double g) {
+        int n = this.banda.length;
+        int kv = this.kl + this.ku;
+        for (int j = 0; j < n; j++) {
+            Arrays.fill(this.banda[j], 0.0d);
+            this.banda[j][kv] = 1.0d;
+        }
+        for (int i = 0; i < n; i++) {
+            int fila = this.posicion[i];
+            for (int p = this.J.inicioFila[i]; p < this.J.inicioFila[i + 1]; p++) {
+                int col = this.posicion[this.J.columnas[p]];
+                this.banda[col][fila - col + kv] -= g * this.J.valores[p];
+            }
+        }
+        // Última columna a la que llegan las filas ya intercambiadas
+        int ultima = 0;
+        for (int k = 0; k < n; k++) {
+            double[] colK = this.banda[k];
+            int hasta = Math.min(this.kl, n - 1 - k);
+            // Elegir como pivote el mayor de la columna
+            int p = 0;
+            for (int i = 1; i <= hasta; i++) {
+                if (Math.abs(colK[kv + i]) > Math.abs(colK[kv + p])) {
+                    p = i;
+                }
+            }
+            this.pivotes[k] = k + p;
+            ultima = Math.min(Math.max(ultima, k + p + this.ku), n - 1);
+            if (p != 0) {
+                for (int j = k; j <= ultima; j++) {
+                    double[] colJ = this.banda[j];
+                    double aux = colJ[k - j + kv];
+                    colJ[k - j + kv] = colJ[k + p - j + kv];
+                    colJ[k + p - j + kv] = aux;
+                }
+            }
+            // Multiplicadores, en el sitio de los ceros bajo el pivote
+            double pivote = colK[kv];
+            for (int i = 1; i <= hasta; i++) {
+                colK[kv + i] /= pivote;
+            }
+            // Eliminar por debajo del pivote
+            for (int j = k + 1; j <= ultima; j++) {
+                double[] colJ = this.banda[j];
+                double akj = colJ[k - j + kv];
+                if (akj != 0.0d) {
+                    for (int i = 1; i <= hasta; i++) {
+                        colJ[k + i - j + kv] -= colK[kv + i] * akj;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Resuelve <CODE>W*x = b</CODE> con la factorización de
+     * <CODE>factorizar()</CODE>.
+     * @param b El término independiente, donde se deja la solución.
+     */
+    void resolver(double[] b) {
+        int n = this.y.length;
+        int kv = this.kl + this.ku;
+        for (int k = 0; k < n; k++) {
+            this.y[k] = b[this.orden[k]];
+        }
+        // Permutar y sustituir hacia delante con L
+        for (int k = 0; k < n; k++) {
+            int p = this.pivotes[k];
+            if (p != k) {
+                double aux = this.y[p];
+                this.y[p] = this.y[k];
+                this.y[k] = aux;
+            }
+            double yk = this.y[k];
+            if (yk != 0.0d) {
+                double[] colK = this.banda[k];
+                int hasta = Math.min(this.kl, n - 1 - k);
+                for (int i = 1; i <= hasta; i++) {
+                    this.y[k + i] -= colK[kv + i] * yk;
+                }
+            }
+        }
+        // Sustituir hacia atrás con U, por columnas
+        for (int k = n - 1; k >= 0; k--) {
+            double[] colK = this.banda[k];
+            this.y[k] /= colK[kv];
+            double yk = this.y[k];
+            for (int i = Math.max(0, k - kv); i < k; i++) {
+                this.y[i] -= colK[i - k + kv] * yk;
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            b[this.orden[k]] = this.y[k];
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase reparte entre los procesadores la simulación de un método de
+ * paso fijo (Euler, Heun, Runge-Kutta 4º orden o predictor-corrector de
+ * Euler) con el algoritmo Parareal, pensado para simulaciones largas. El
+ * tiempo de simulación se parte en tantas franjas como procesadores, y el
+ * mismo método con un paso mucho mayor (el método grueso) recorre todas
+ * ellas, barato pero impreciso. Después, en cada iteración, el método con el
+ * paso de las preferencias (el fino) integra a la vez cada franja desde su
+ * valor inicial, y el grueso corrige en orden los valores iniciales de las
+ * siguientes con lo que se ha equivocado en cada una:
+ * <CODE>U(j+1) = G(U(j)) + F(U_anterior(j)) - G(U_anterior(j))</CODE>.
+ * Cuando ningún valor inicial cambia más que las tolerancias del error, los
+ * resultados del método fino son los de la simulación; tras la iteración
+ * <CODE>k</CODE> las <CODE>k+1</CODE> primeras franjas ya son exactas, así
+ * que como mucho se hacen tantas iteraciones como franjas.
+ * <p>Si el modelo tiene parámetros aleatorios o eventos, si se están
+ * midiendo los tiempos de evaluación o si los resultados no caben en memoria
+ * (se guardan hasta el final), la simulación se hace de principio a fin como
+ * en el propio método.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+public class Parareal extends PasoFijo {
+    
+    /**
+     * Número de pasos de integración que da de una vez el método grueso.
+     * Prefijado con valor 10
+     */
+    public static final int PASOS_GRUESOS = 10;
+    
+    /**
+     * Número máximo de valores de los compartimentos que se guardan en
+     * memoria hasta escribir los resultados (128 MB).
+     */
+    public static final long MAX_VALORES = 1L << 24;
+    
+    /**
+     * El índice del método de paso fijo en las preferencias.
+     */
+    private int indice;
+    
+    /**
+     * El método de paso fijo, que comparte el estado de esta tarea, para
+     * cuando no se reparte la simulación.
+     */
+    private PasoFijo metodo;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, los cuatro
+     * siguientes son elementos del GUI que tenemos que actualizar cuando la
+     * tarea termine, y el último indica el método de paso fijo.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     * @param metodo El índice del método en las preferencias: 0 Euler, 1
+     *               Heun, 2 Runge-Kutta 4º orden y 3 predictor-corrector.
+     */
+    public Parareal(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup,
+                               int metodo) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+        this.indice = metodo;
+    }
+    
+    /**
+     * Crea el método de paso fijo que comparte el estado de esta tarea.
+     * @param n El número de compartimentos del modelo.
+     */
+    @Override
+    protected void reservar(int n) {
+        this.metodo = PasoFijo.crear(this.indice, this);
+        this.compartir(this.metodo);
+        this.metodo.reservar(n);
+    }
+    
+    /**
+     * Da un paso con el método de paso fijo, cuando no se reparte la
+     * simulación.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void paso(double t, double h) throws ParseException {
+        this.metodo.paso(t, h);
+    }
+    
+    /**
+     * Avisa al método de paso fijo del cambio de tramo.
+     */
+    @Override
+    protected void reiniciar() {
+        this.metodo.reiniciar();
+    }
+    
+    /**
+     * Realiza la simulación con el algoritmo Parareal, si se puede repartir,
+     * y después escribe todos los resultados en orden.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void integrar() throws ParseException {
+        final long numIteraciones = Math.round(this.tmax_ / this.h_);
+        long numSalidas = (numIteraciones + this.salidaCada_ - 1) / this.salidaCada_;
+        int n = this.compartimentos_.length;
+        final int numFranjas = (int) Math.min(Runtime.getRuntime().availableProcessors(), numSalidas);
+        if (numFranjas < 2 || !this.parametrosFijos() || this.hayEventos()
+                || this.perfil_ != null || numSalidas * n > MAX_VALORES) {
+            super.integrar();
+            return;
+        }
+        
+        // Cada franja empieza y termina en un punto de los resultados, y
+        // tiene su propio método fino, con su propia copia del sistema
+        final long[] limites = new long[numFranjas + 1];
+        for (int j = 0; j <= numFranjas; j++) {
+            limites[j] = Math.min(numIteraciones, j * numSalidas / numFranjas * this.salidaCada_);
+        }
+        final double[][][] puntos = new double[numFranjas][][];
+        final PasoFijo[] finos = new PasoFijo[numFranjas];
+        for (int j = 0; j < numFranjas; j++) {
+            int numPuntos = (int) ((limites[j+1] - limites[j] + this.salidaCada_ - 1) / this.salidaCada_);
+            puntos[j] = new double[numPuntos][n];
+            finos[j] = PasoFijo.crear(this.indice, this);
+            this.independizar(finos[j]);
+            finos[j].reservar(n);
+        }
+        PasoFijo grueso = PasoFijo.crear(this.indice, this);
+        this.independizar(grueso);
+        grueso.reservar(n);
+        
+        // 1º Valores iniciales de cada franja con el método grueso
+        final double[][] inicios = new double[numFranjas][];
+        double[][] gruesos = new double[numFranjas][];
+        inicios[0] = this.compartimentos_.clone();
+        for (int j = 0; j < numFranjas - 1; j++) {
+            this.propagar(grueso, inicios[j], limites[j], limites[j+1], PASOS_GRUESOS, null);
+            gruesos[j] = grueso.compartimentos_.clone();
+            inicios[j+1] = grueso.compartimentos_.clone();
+        }
+        
+        ExecutorService ejecutor = Executors.newFixedThreadPool(numFranjas);
+        try {
+            for (int k = 0; k < numFranjas; k++) {
+                if (this.isCancelled()) {
+                    return;
+                }
+                this.setMessage("Tiempo transcurrido: " + this.elapsedTime()
+                        + "         Parareal, iteración " + (k + 1)); // NOI18N
+                // 2º Las franjas que no son exactas todavía, a la vez con el
+                // método fino
+                Vector tareas = new Vector();
+                for (int j = k; j < numFranjas; j++) {
+                    final int franja = j;
+                    tareas.add(new Callable() {
+                        public Object call() throws ParseException {
+                            propagar(finos[franja], inicios[franja], limites[franja],
+                                    limites[franja+1], 1, puntos[franja]);
+                            return null;
+                        }
+                    });
+                }
+                List resultados = ejecutor.invokeAll(tareas);
+                for (int j = 0; j < resultados.size(); j++) {
+                    try {
+                        ((Future) resultados.get(j)).get();
+                    } catch (ExecutionException ex) {
+                        if (ex.getCause() instanceof ParseException) {
+                            throw (ParseException) ex.getCause();
+                        }
+                        throw new RuntimeException(ex.getCause());
+                    }
+                }
+                // 3º Corregir en orden los valores iniciales de las
+                // siguientes franjas; la de después de la k es ya exacta
+                if (k + 1 == numFranjas) {
+                    break;
+                }
+                double cambio = this.diferencia(inicios[k+1], finos[k].compartimentos_);
+                System.arraycopy(finos[k].compartimentos_, 0, inicios[k+1], 0, n);
+                for (int j = k + 1; j < numFranjas - 1; j++) {
+                    this.propagar(grueso, inicios[j], limites[j], limites[j+1], PASOS_GRUESOS, null);
+                    double[] nuevo = grueso.compartimentos_;
+                    double[] fino = finos[j].compartimentos_;
+                    double[] corregido = new double[n];
+                    for (int i = 0; i < n; i++) {
+                        corregido[i] = nuevo[i] + fino[i] - gruesos[j][i];
+                    }
+                    System.arraycopy(nuevo, 0, gruesos[j], 0, n);
+                    cambio = Math.max(cambio, this.diferencia(inicios[j+1], corregido));
+                    inicios[j+1] = corregido;
+                }
+                // Si ningún valor inicial ha cambiado, los resultados de
+                // todas las franjas son ya los definitivos
+                if (cambio <= 1.0d) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Se ha cancelado la simulación
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            ejecutor.shutdownNow();
+        }
+        
+        // 4º a 5º Escribir los resultados en orden
+        double margen = this.h_ * 1.0e-6d;
+        for (int j = 0; j < numFranjas; j++) {
+            for (int p = 0; p < puntos[j].length; p++) {
+                if (this.isCancelled()) {
+                    return;
+                }
+                long fin = Math.min(limites[j] + (p+1) * this.salidaCada_, limites[j+1]);
+                double t = fin * this.h_;
+                this.situar(t + margen);
+                System.arraycopy(puntos[j][p], 0, this.compartimentos_, 0, n);
+                this.aceptarPaso(t);
+                this.informarProgreso(fin, numIteraciones);
+            }
+        }
+    }
+    
+    /**
+     * Integra una franja con un método de paso fijo independiente, dando los
+     * pasos en grupos de <CODE>cada</CODE> pasos de integración.
+     * @param metodo El método, que deja en sus compartimentos el valor al
+     *               final de la franja.
+     * @param x El valor de los compartimentos al principio de la franja.
+     * @param desde La iteración en que empieza la franja.
+     * @param hasta La iteración en que termina.
+     * @param cada Los pasos de integración de cada paso del método.
+     * @param puntos Donde se dejan los compartimentos en cada punto de los
+     *               resultados, o null si no hacen falta.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    private void propagar(PasoFijo metodo, double[] x, long desde, long hasta, long cada,
+                          double[][] puntos) throws ParseException {
+        double margen = this.h_ * 1.0e-6d;
+        System.arraycopy(x, 0, metodo.compartimentos_, 0, x.length);
+        metodo.situar(desde * this.h_ + margen);
+        metodo.reanudar(desde * this.h_);
+        metodo.reiniciar();
+        int p = 0;
+        for (long i = desde; i < hasta; i += cada) {
+            // Parar si se ha cancelado la simulación
+            if (this.isCancelled()) {
+                break;
+            }
+            long fin = Math.min(i + cada, hasta);
+            double tFinal = fin * this.h_;
+            if (metodo.iterar(i * this.h_, tFinal, (fin - i) * this.h_, margen)) {
+                // El paso termina justo en un cambio
+                tFinal = metodo.siguienteCambio();
+                metodo.cruzarCambio();
+                metodo.reiniciar();
+            }
+            metodo.reanudar(tFinal);
+            if (puntos != null && (fin % this.salidaCada_ == 0 || fin == hasta)) {
+                System.arraycopy(metodo.compartimentos_, 0, puntos[p++], 0, x.length);
+            }
+        }
+    }
+    
+    /**
+     * Mide cuánto ha cambiado el valor inicial de una franja, como el error
+     * de un paso en los métodos de paso variable.
+     * @param antes El valor anterior.
+     * @param despues El nuevo valor.
+     * @return La mayor diferencia dividida por el error que se tolera en
+     *         cada compartimento; no ha cambiado si no supera 1.
+     */
+    private double diferencia(double[] antes, double[] despues) {
+        double max = 0.0d;
+        for (int i = 0; i < antes.length; i++) {
+            double escala = this.toleranciaAbsoluta_ + this.toleranciaRelativa_
+                    * Math.max(Math.abs(antes[i]), Math.abs(despues[i]));
+            max = Math.max(max, Math.abs(despues[i] - antes[i]) / escala);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,253 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase ajusta automáticamente el paso de los métodos de paso fijo
+ * (Euler, Heun, Runge-Kutta 4º orden y predictor-corrector de Euler) a las
+ * tolerancias del error, en lugar de usar siempre el paso de las
+ * preferencias. El error de cada paso se estima por duplicación: se da un
+ * paso <CODE>h</CODE> y, desde el mismo punto, dos pasos <CODE>h/2</CODE>;
+ * si el método es de orden <CODE>p</CODE>, el error de la segunda
+ * aproximación, con la que se continúa, es aproximadamente su diferencia
+ * entre <CODE>2^p - 1</CODE>. Con ese error decide el paso el mismo control
+ * que en los métodos de paso variable, y los resultados se interpolan en los
+ * puntos de la salida con el polinomio de Hermite de las derivadas en los
+ * extremos del paso.
+ * @author Víctor E. Tamames Gómez
+ */
+public class PasoAdaptativo extends PasoVariable {
+    
+    /**
+     * Cota mínima permitida para el paso de integración.
+     * Prefijada con valor 0.001
+     */
+    public static final double H_MIN = 0.001d;
+    
+    /**
+     * Cota máxima permitida para el paso de integración. Como la de
+     * Runge-Kutta-Fehlberg, que interpola igual.
+     * Prefijada con valor 0.5
+     */
+    public static final double H_MAX = 0.5d;
+    
+    /**
+     * Orden de cada método de paso fijo, por su índice en las preferencias.
+     * El predictor-corrector sólo corrige una vez con Euler implícito, así
+     * que es de orden 1.
+     */
+    private static final int[] ORDENES = {1, 2, 4, 1};
+    
+    /**
+     * El índice del método de paso fijo en las preferencias.
+     */
+    private int indice;
+    
+    /**
+     * El método de paso fijo con el que se dan los pasos, y su orden.
+     */
+    private PasoFijo metodo;
+    private int orden;
+    
+    /**
+     * Si la derivada al principio de cada paso se toma del final del
+     * anterior, lo que sólo se puede hacer si ningún parámetro cambia en
+     * cada punto.
+     */
+    private boolean reutilizarDerivada;
+    
+    /**
+     * Si <CODE>derivadaInicio</CODE> ya contiene la derivada al principio
+     * del paso actual, y si se ha preparado la interpolación en él.
+     */
+    private boolean derivadaInicial, preparado;
+    
+    /**
+     * Compartimentos con los que trabaja el método de paso fijo (al final,
+     * la solución de los dos medios pasos), y la solución del paso entero.
+     */
+    private double[] trabajo, entero;
+    
+    /**
+     * Compartimentos y derivadas al principio y al final del paso aceptado,
+     * con su instante inicial y su paso, para la interpolación. El final se
+     * copia junto con su derivada, para que no dependa de lo que se haga
+     * después con la solución del método.
+     */
+    private double[] inicioPaso, derivadaInicio, finPaso, derivadaFin;
+    private double tIntento, tPaso, hPaso;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, los cuatro
+     * siguientes son elementos del GUI que tenemos que actualizar cuando la
+     * tarea termine, y el último indica el método de paso fijo.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     * @param metodo El índice del método en las preferencias: 0 Euler, 1
+     *               Heun, 2 Runge-Kutta 4º orden y 3 predictor-corrector.
+     */
+    public PasoAdaptativo(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup,
+                               int metodo) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+        this.indice = metodo;
+    }
+    
+    /**
+     * Crea el método de paso fijo, le pasa el estado de la simulación con
+     * sus propios compartimentos y reserva sus vectores y los del paso.
+     * @param n El número de compartimentos del modelo.
+     */
+    @Override
+    protected void reservar(int n) {
+        this.metodo = PasoFijo.crear(this.indice, this);
+        this.orden = ORDENES[this.indice];
+        this.compartir(this.metodo);
+        this.trabajo = new double[n];
+        this.metodo.compartimentos_ = this.trabajo;
+        this.metodo.reservar(n);
+        this.control = new ControlPaso(this.toleranciaAbsoluta_, this.toleranciaRelativa_, H_MIN, H_MAX, this.orden);
+        this.reutilizarDerivada = this.parametrosFijos();
+        this.entero = new double[n];
+        this.inicioPaso = new double[n];
+        this.derivadaInicio = new double[n];
+        this.finPaso = new double[n];
+        this.derivadaFin = new double[n];
+    }
+    
+    /**
+     * Tras un cambio de tramo avisa al método y olvida la derivada del
+     * final del paso anterior.
+     * @param t El instante en que empieza el paso.
+     * @param reinicio Si es el primer paso de la simulación o el primero tras
+     *                 un cambio de tramo.
+     */
+    @Override
+    protected void comenzarPaso(double t, boolean reinicio) {
+        if (reinicio) {
+            this.metodo.reiniciar();
+            this.derivadaInicial = false;
+        }
+    }
+    
+    /**
+     * Intenta un paso con el método de paso fijo, duplicándolo. Antes de
+     * cada paso del método la memoria tiene que contener los valores del
+     * modelo en su principio.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @return El error estimado de los dos medios pasos, medido por el
+     *         control del paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected double intentar(double t, double h) throws ParseException {
+        double[] X0 = this.compartimentos_;
+        this.tIntento = t;
+        // a. Un paso h
+        System.arraycopy(X0, 0, this.trabajo, 0, X0.length);
+        this.reanudar(t);
+        this.metodo.paso(t, h);
+        System.arraycopy(this.trabajo, 0, this.entero, 0, X0.length);
+        // b. Dos pasos h/2
+        System.arraycopy(X0, 0, this.trabajo, 0, X0.length);
+        this.reanudar(t);
+        this.metodo.paso(t, h/2);
+        this.sistema_.auxiliares(t + h/2, this.memoria_, this.trabajo);
+        this.metodo.paso(t + h/2, h/2);
+        // c. Error: |x(t+h) - z(t+h)| / (2^p - 1)
+        return this.control.error(X0, this.trabajo, this.entero) / ((1 << this.orden) - 1);
+    }
+    
+    /**
+     * Devuelve la solución de los dos medios pasos del último intento.
+     * @return El valor de los compartimentos al final del paso.
+     */
+    @Override
+    protected double[] solucion() {
+        return this.trabajo;
+    }
+    
+    /**
+     * Guarda los extremos del paso recién aceptado y calcula las derivadas
+     * en ellos, salvo la del principio si es la del final del anterior.
+     * @param h El paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void prepararInterpolacion(double h) throws ParseException {
+        System.arraycopy(this.compartimentos_, 0, this.inicioPaso, 0, this.inicioPaso.length);
+        this.tPaso = this.tIntento;
+        this.hPaso = h;
+        if (!this.derivadaInicial) {
+            this.sistema_.calcular(this.tPaso, this.memoria_, this.inicioPaso, this.derivadaInicio);
+        }
+        System.arraycopy(this.trabajo, 0, this.finPaso, 0, this.finPaso.length);
+        this.sistema_.calcular(this.tPaso + h, this.memoria_, this.finPaso, this.derivadaFin);
+        this.preparado = true;
+    }
+    
+    /**
+     * Interpola la solución en un instante dentro del paso, de orden 3.
+     * @param x Donde se deja el valor de los compartimentos.
+     * @param theta La fracción del paso transcurrida hasta el instante.
+     */
+    @Override
+    protected void interpolar(double[] x, double theta) {
+        Combinaciones.hermite(x, this.inicioPaso, this.derivadaInicio,
+                this.finPaso, this.derivadaFin, this.hPaso, theta);
+    }
+    
+    /**
+     * La derivada al final del paso aceptado, si se ha calculado, es la del
+     * principio del siguiente.
+     */
+    @Override
+    protected void terminarPaso() {
+        this.derivadaInicial = this.preparado && this.reutilizarDerivada;
+        if (this.derivadaInicial) {
+            double[] aux = this.derivadaInicio;
+            this.derivadaInicio = this.derivadaFin;
+            this.derivadaFin = aux;
+        }
+        this.preparado = false;
+    }
+}
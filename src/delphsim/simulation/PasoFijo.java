@@ -0,0 +1,209 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase abstracta contiene el bucle común a los métodos de simulación
+ * continua de paso fijo: avanzar los compartimentos en tantas iteraciones
+ * de paso <CODE>h</CODE> como quepan en el tiempo de simulación. Al método
+ * le basta con implementar en <CODE>paso()</CODE> una de esas iteraciones.
+ * @author Víctor E. Tamames Gómez
+ */
+public abstract class PasoFijo extends SimulationTask {
+    
+    /**
+     * Los compartimentos al principio de cada iteración, para buscar en ella
+     * los eventos del modelo (null si no tiene).
+     */
+    private double[] inicio;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, y los cuatro
+     * últimos son elementos del GUI que tenemos que actualizar cuando la tarea
+     * termine.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     */
+    public PasoFijo(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+    }
+    
+    /**
+     * Constructor de un método que trabaja por cuenta de otra tarea.
+     * @param principal La tarea por cuenta de la que trabaja.
+     */
+    PasoFijo(SimulationTask principal) {
+        super(principal);
+    }
+    
+    /**
+     * Indica si un método de las preferencias es uno de los métodos de paso
+     * fijo de un solo paso, cuyos pasos no dependen de los anteriores y que
+     * por tanto otras tareas pueden dar con cualquier longitud y desde
+     * cualquier instante.
+     * @param metodo El índice del método en las preferencias.
+     * @return Si es Euler, Heun, Runge-Kutta 4º orden o predictor-corrector.
+     */
+    public static boolean deUnPaso(int metodo) {
+        return metodo >= 0 && metodo <= 3;
+    }
+    
+    /**
+     * Crea uno de los métodos de paso fijo de un solo paso por cuenta de
+     * otra tarea.
+     * @param metodo El índice del método en las preferencias: 0 Euler, 1
+     *               Heun, 2 Runge-Kutta 4º orden y 3 predictor-corrector.
+     * @param principal La tarea por cuenta de la que trabaja.
+     * @return El método.
+     */
+    static PasoFijo crear(int metodo, SimulationTask principal) {
+        switch (metodo) {
+            case 0:
+                return new EulerExplicito(principal);
+            case 1:
+                return new RK2Heun(principal);
+            case 2:
+                return new RungeKutta4(principal);
+            default:
+                return new EulerPredictorCorrector(principal);
+        }
+    }
+    
+    /**
+     * Realiza la simulación, iteración a iteración, hasta llegar al tiempo
+     * de simulación o hasta que se cancele la tarea, escribiendo los
+     * resultados cada <CODE>salidaCada_</CODE> iteraciones. Si algún proceso
+     * cambia de tramo dentro de una iteración, ésta se parte en dos pasos más
+     * cortos que terminan y empiezan justo en el cambio. Si un evento
+     * terminal ocurre dentro de una iteración, la simulación termina en él.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void integrar() throws ParseException {
+        long numIteraciones = Math.round(this.tmax_ / this.h_);
+        // Un cambio a menos de esto del final de la iteración coincide con él
+        double margen = this.h_ * 1.0e-6d;
+        if (this.hayEventos()) {
+            this.inicio = new double[this.compartimentos_.length];
+        }
+        for (long i = 0; i < numIteraciones; i++) {
+            // Parar la simulación si se ha cancelado
+            if (this.isCancelled()) {
+                break;
+            }
+            // 1º Actualizar variables de los compartimentos según el método,
+            // terminando un paso en cada cambio de tramo de la iteración
+            double t = i*this.h_;
+            double tFinal = (i+1)*this.h_;
+            if (this.inicio != null) {
+                System.arraycopy(this.compartimentos_, 0, this.inicio, 0, this.inicio.length);
+            }
+            boolean enCambio = this.iterar(t, tFinal, this.h_, margen);
+            if (enCambio) {
+                tFinal = this.siguienteCambio();
+            }
+            // Los eventos del modelo, interpolando en toda la iteración
+            tFinal = this.comprobarEventos(i*this.h_, this.inicio, tFinal, this.compartimentos_);
+            if (this.terminada()) {
+                System.arraycopy(this.estadoTerminal(), 0, this.compartimentos_, 0, this.compartimentos_.length);
+            }
+            if (enCambio && !this.terminada()) {
+                // La iteración termina justo en un cambio
+                this.cruzarCambio();
+                this.reiniciar();
+            }
+            // 2º a 5º Atajos, procesos, resultados y parámetros aleatorios
+            boolean anotar = (i+1) % this.salidaCada_ == 0 || i+1 == numIteraciones || this.terminada();
+            this.aceptarPaso(tFinal, anotar);
+            this.informarProgreso(i, numIteraciones);
+            if (this.terminada()) {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Avanza <CODE>compartimentos_</CODE> una iteración, terminando un paso
+     * en cada cambio de tramo que haya dentro de ella. Al empezar, la memoria
+     * contiene los valores del modelo en <CODE>t</CODE>.
+     * @param t El instante en que empieza la iteración.
+     * @param tFinal El instante en que termina.
+     * @param h La longitud de la iteración.
+     * @param margen Un cambio a menos de esto del final coincide con él.
+     * @return Si el final coincide con el siguiente cambio de tramo, que
+     *         queda sin cruzar.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    final boolean iterar(double t, double tFinal, double h, double margen) throws ParseException {
+        while (this.siguienteCambio() < tFinal - margen) {
+            double cambio = this.siguienteCambio();
+            this.paso(t, cambio - t);
+            this.cruzarCambio();
+            this.reanudar(cambio);
+            this.reiniciar();
+            t = cambio;
+            h = tFinal - cambio;
+        }
+        this.paso(t, h);
+        return this.siguienteCambio() <= tFinal + margen;
+    }
+    
+    /**
+     * Avanza <CODE>compartimentos_</CODE> desde el instante <CODE>t</CODE>
+     * hasta <CODE>t+h</CODE>. Al empezar, la memoria contiene los valores
+     * del modelo en <CODE>t</CODE>. El paso es el de integración salvo
+     * cuando la iteración se parte en un cambio de tramo.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected abstract void paso(double t, double h) throws ParseException;
+    
+    /**
+     * Avisa de que algún proceso acaba de cambiar de tramo, con lo que lo
+     * calculado en los pasos anteriores ya no sirve para los siguientes. Por
+     * defecto no hace nada.
+     */
+    protected void reiniciar() {
+    }
+}
@@ -0,0 +1,262 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase abstracta contiene el bucle común a los métodos de simulación
+ * continua de paso variable que saben interpolar la solución dentro de cada
+ * paso. El paso lo decide un control del paso según el error que estima el
+ * método, y los resultados se escriben, interpolando, en los puntos de la
+ * salida (los mismos que en los métodos de paso fijo: cada cierto número de
+ * pasos de integración), sin que el paso del método tenga que acercarse a
+ * ellos. Los pasos terminan justo en
+ * cada cambio de tramo de los procesos, y tras él el método empieza de nuevo
+ * con el paso inicial. Los eventos del modelo se localizan también sobre la
+ * solución interpolada.
+ * @author Víctor E. Tamames Gómez
+ */
+public abstract class PasoVariable extends SimulationTask {
+    
+    /**
+     * Control del paso de integración. Lo debe crear el método en
+     * <CODE>reservar()</CODE>.
+     */
+    protected ControlPaso control;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, y los cuatro
+     * últimos son elementos del GUI que tenemos que actualizar cuando la tarea
+     * termine.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     */
+    public PasoVariable(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+    }
+    
+    /**
+     * Constructor de un método que trabaja por cuenta de otra tarea.
+     * @param principal La tarea por cuenta de la que trabaja.
+     */
+    PasoVariable(SimulationTask principal) {
+        super(principal);
+    }
+    
+    /**
+     * Realiza la simulación, paso a paso, hasta llegar al tiempo de
+     * simulación o hasta que se cancele la tarea. Los parámetros aleatorios
+     * se actualizan al final de cada paso aceptado, como en los métodos de
+     * paso fijo, y no en los puntos de los resultados: así no dependen de
+     * cada cuántos pasos se escriben.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void integrar() throws ParseException {
+        double[] X0 = this.compartimentos_;
+        // Los resultados se escriben en i*h_, cada salidaCada_ pasos de
+        // integración y en el último, que es tFinal
+        long numIteraciones = Math.round(this.tmax_ / this.h_);
+        double tFinal = numIteraciones * this.h_;
+        long siguiente = Math.min(this.salidaCada_, numIteraciones);
+        double ultimaSalida = 0.0d;
+        double t_ = 0.0d;
+        double h = this.h_;
+        double q_ = 1.0d;
+        long numPasos = 0;
+        boolean reinicio = true;
+        
+        while (t_ < tFinal) {
+            // Parar la simulación si se ha cancelado
+            if (this.isCancelled()) {
+                break;
+            }
+            // 1º Actualizar variables de los compartimentos según el método,
+            // repitiendo el paso mientras el control no lo acepte
+            this.comenzarPaso(t_, reinicio);
+            double tLimite = Math.min(tFinal, this.siguienteCambio());
+            boolean ultimo, aceptado;
+            do {
+                // Actualizamos el paso de integración con el q calculado,
+                // sin pasarnos del final ni del siguiente cambio de tramo
+                h = this.control.limitar(q_*h);
+                ultimo = t_ + h >= tLimite;
+                if (ultimo) {
+                    h = tLimite - t_;
+                }
+                double error = this.intentar(t_, h);
+                // Con el paso mínimo no se puede hacer nada mejor: se acepta
+                aceptado = this.control.aceptar(error, h);
+                q_ = this.control.factor(error, aceptado);
+            } while (!aceptado);
+            double tNuevo = ultimo ? tLimite : t_ + h;
+            // Los eventos del modelo, sobre la solución interpolada; si uno
+            // terminal ocurre en el paso, éste termina en él
+            boolean preparado = false;
+            if (this.hayEventos()) {
+                this.prepararInterpolacion(h);
+                preparado = true;
+                tNuevo = this.comprobarEventos(t_, X0, tNuevo, this.solucion());
+            }
+            // La interpolación se prepara, si hace falta, antes de cruzar el
+            // cambio de tramo en que termina el paso, con los tramos de antes
+            if (siguiente * this.h_ < tNuevo && !preparado) {
+                this.prepararInterpolacion(h);
+            }
+            // Si el paso llega a un cambio de tramo, se cruza antes de
+            // escribir los resultados
+            reinicio = ultimo && tLimite < tFinal && !this.terminada();
+            if (reinicio) {
+                this.cruzarCambio();
+            }
+            
+            // 2º a 5º Escribir los puntos de los resultados que caen en este
+            // paso, interpolando todos menos el que coincide con su final (o
+            // con el evento terminal, si el paso termina en él)
+            double[] X1 = this.terminada() ? this.estadoTerminal() : this.solucion();
+            while (siguiente <= numIteraciones && siguiente * this.h_ <= tNuevo) {
+                double ts = siguiente * this.h_;
+                if (ts == tNuevo) {
+                    System.arraycopy(X1, 0, X0, 0, X0.length);
+                } else {
+                    this.interpolar(X0, (ts - t_) / h);
+                }
+                this.escribirPunto(ts);
+                ultimaSalida = ts;
+                siguiente = siguiente == numIteraciones ? numIteraciones + 1
+                        : Math.min(siguiente + this.salidaCada_, numIteraciones);
+            }
+            
+            // Ya hemos obtenido una aproximación aceptable, la guardamos
+            System.arraycopy(X1, 0, X0, 0, X0.length);
+            if (this.terminada()) {
+                // El último punto es el del evento, si no era ya uno de ellos
+                if (ultimaSalida != tNuevo) {
+                    this.escribirPunto(tNuevo);
+                }
+                break;
+            }
+            this.terminarPaso();
+            this.actualizarAleatorios();
+            
+            // Actualizar el tiempo; el paso siguiente es q_*h, que se aplica
+            // al intentarlo. Tras un cambio de tramo se empieza de nuevo, con
+            // los procesos ya en el nuevo tramo
+            t_ = tNuevo;
+            if (reinicio) {
+                this.reanudar(t_);
+                this.control.reiniciar();
+                h = this.h_;
+                q_ = 1.0d;
+            }
+            
+            // Actualizar barra de estado si toca
+            numPasos++;
+            this.informarInstante(numPasos, t_);
+        }
+    }
+    
+    /**
+     * Prepara un nuevo paso desde <CODE>compartimentos_</CODE>, con lo que no
+     * depende de su longitud (por ejemplo, las derivadas al principio).
+     * @param t El instante en que empieza el paso.
+     * @param reinicio Si es el primer paso de la simulación o el primero tras
+     *                 un cambio de tramo: la memoria contiene los valores del
+     *                 modelo en <CODE>t</CODE> y no sirve nada del paso
+     *                 anterior. Si no lo es, la memoria puede contener los
+     *                 valores de un punto de los resultados, no los de
+     *                 <CODE>t</CODE>.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected abstract void comenzarPaso(double t, boolean reinicio) throws ParseException;
+    
+    /**
+     * Intenta un paso desde <CODE>compartimentos_</CODE>, sin modificarlos,
+     * dejando la nueva aproximación en <CODE>solucion()</CODE>.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @return El error cometido, medido por el control del paso (el paso es
+     *         aceptable si no supera 1).
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected abstract double intentar(double t, double h) throws ParseException;
+    
+    /**
+     * Devuelve la aproximación calculada en el último intento.
+     * @return El valor de los compartimentos al final del paso.
+     */
+    protected abstract double[] solucion();
+    
+    /**
+     * Prepara la interpolación en el paso recién aceptado, antes de que
+     * <CODE>compartimentos_</CODE> cambie.
+     * @param h El paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected abstract void prepararInterpolacion(double h) throws ParseException;
+    
+    /**
+     * Interpola la solución en un instante dentro del paso aceptado.
+     * @param x Donde se deja el valor de los compartimentos.
+     * @param theta La fracción del paso transcurrida hasta el instante.
+     */
+    protected abstract void interpolar(double[] x, double theta);
+    
+    /**
+     * Calcula la solución dentro del paso en el que se están buscando
+     * eventos con la misma interpolación que los resultados.
+     * @param x Donde se deja el valor de los compartimentos.
+     * @param theta La fracción del paso transcurrida hasta el instante.
+     */
+    @Override
+    protected void interpolarPaso(double[] x, double theta) {
+        this.interpolar(x, theta);
+    }
+    
+    /**
+     * Termina el paso aceptado, una vez guardada la solución en
+     * <CODE>compartimentos_</CODE>. Por defecto no hace nada.
+     */
+    protected void terminarPaso() {
+    }
+}
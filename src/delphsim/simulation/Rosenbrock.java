@@ -0,0 +1,330 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase implementa un método de simulación continua de Rosenbrock,
+ * pensado para los modelos rígidos: los que mezclan procesos muy rápidos
+ * (altas en horas) con otros muy lentos (pérdida de inmunidad en años). En
+ * ellos los métodos explícitos sólo son estables con pasos del orden del
+ * proceso más rápido, aunque éste apenas influya en la solución. Este método
+ * es lineal-implícito: en cada etapa resuelve un sistema con la matriz
+ * <CODE>W = I - h*d*J</CODE>, donde <CODE>J</CODE> es el jacobiano del modelo
+ * (aproximado por diferencias finitas), y es estable con cualquier paso. Es
+ * el método de 2º orden con estimación de 3º de Shampine y Reichelt, que
+ * sigue siendo de 2º orden aunque el jacobiano sea aproximado, con el que se
+ * controla el paso. Como los de Dormand-Prince, los resultados se interpolan
+ * en los puntos de la salida.
+ * <p>Por eso el jacobiano no se calcula en cada paso: se mantiene mientras
+ * los pasos se acepten al primer intento y su producto por las derivadas se
+ * parezca a la derivada en esa dirección (que cuesta una evaluación), hasta
+ * <CODE>EDAD_MAXIMA</CODE> pasos, y se vuelve a calcular tras un rechazo o un
+ * cambio de tramo. Se guarda sin sus ceros y se calcula con una evaluación
+ * por cada grupo de columnas (ver {@link Jacobiano}), y <CODE>W</CODE> se
+ * factoriza en banda (ver {@link MatrizBanda}), así que el coste de cada paso
+ * crece con el número de compartimentos y no con su cubo.</p>
+ * <p>Los procesos sólo dependen del tiempo por sus tramos, constantes a
+ * trozos, así que no se calcula la derivada respecto al tiempo.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+public class Rosenbrock extends PasoVariable {
+    
+    /**
+     * Coeficiente de la diagonal de <CODE>W</CODE>: 1/(2 + raíz de 2).
+     */
+    public static final double D = 1.0d / (2.0d + Math.sqrt(2.0d));
+    
+    /**
+     * Coeficiente de la tercera etapa: 6 + raíz de 2.
+     */
+    public static final double E32 = 6.0d + Math.sqrt(2.0d);
+    
+    /**
+     * Cota mínima permitida para el paso de integración.
+     * Prefijada con valor 0.001
+     */
+    public static final double H_MIN = 0.001d;
+    
+    /**
+     * Cota máxima permitida para el paso de integración. El método es estable
+     * con pasos grandes, así que la limita sólo la precisión.
+     * Prefijada con valor 10
+     */
+    public static final double H_MAX = 10.0d;
+    
+    /**
+     * Número máximo de pasos en los que se usa el mismo jacobiano.
+     * Prefijado con valor 20
+     */
+    public static final int EDAD_MAXIMA = 20;
+    
+    /**
+     * Diferencia relativa máxima entre el producto del jacobiano por las
+     * derivadas y la derivada en esa dirección para seguir usándolo.
+     * Prefijada con valor 0.1
+     */
+    public static final double TOLERANCIA_JACOBIANO = 0.1d;
+    
+    /**
+     * Si las derivadas al principio de cada paso se toman del final del
+     * anterior, lo que sólo se puede hacer si ningún parámetro cambia en
+     * cada punto.
+     */
+    private boolean reutilizarEtapa;
+    
+    /**
+     * El jacobiano del modelo, calculado al principio de algún paso anterior
+     * o de éste.
+     */
+    private Jacobiano J;
+    
+    /**
+     * La matriz <CODE>W</CODE> del último intento, factorizada.
+     */
+    private MatrizBanda W;
+    
+    /**
+     * Pasos dados con el jacobiano actual, e intentos del paso en curso.
+     */
+    private int edad, intentos;
+    
+    /**
+     * Derivadas al principio, en medio y al final del paso.
+     */
+    private double[] F0, F1, F2;
+    
+    /**
+     * Pendientes de cada etapa, obtenidas con <CODE>W</CODE>.
+     */
+    private double[] K1, K2, K3;
+    
+    /**
+     * Compartimentos de la etapa que se está calculando, y la solución del
+     * paso.
+     */
+    private double[] etapa, sol;
+    
+    /**
+     * Compartimentos al principio del paso aceptado, y su paso, para la
+     * interpolación.
+     */
+    private double[] X0;
+    private double hPaso;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, y los cuatro
+     * últimos son elementos del GUI que tenemos que actualizar cuando la tarea
+     * termine.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     */
+    public Rosenbrock(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+    }
+    
+    /**
+     * Constructor de un método que trabaja por cuenta de otra tarea.
+     * @param principal La tarea por cuenta de la que trabaja.
+     */
+    Rosenbrock(SimulationTask principal) {
+        super(principal);
+    }
+    
+    /**
+     * Reserva las matrices y los vectores de las etapas y crea el control
+     * del paso.
+     * @param n El número de compartimentos del modelo.
+     */
+    @Override
+    protected void reservar(int n) {
+        // El error de orden 2 crece como h^3; por unidad de tiempo, como h^2
+        this.control = new ControlPaso(this.toleranciaAbsoluta_, this.toleranciaRelativa_, H_MIN, H_MAX, 2);
+        this.reutilizarEtapa = this.parametrosFijos();
+        this.J = new Jacobiano(this.sistema_.estructura());
+        this.W = new MatrizBanda(this.J);
+        this.F0 = new double[n];
+        this.F1 = new double[n];
+        this.F2 = new double[n];
+        this.K1 = new double[n];
+        this.K2 = new double[n];
+        this.K3 = new double[n];
+        this.etapa = new double[n];
+        this.sol = new double[n];
+        this.X0 = new double[n];
+    }
+    
+    /**
+     * Calcula las derivadas al principio del paso (salvo que se puedan tomar
+     * del final del anterior) y, si hace falta, el jacobiano.
+     * @param t El instante en que empieza el paso.
+     * @param reinicio Si es el primer paso de la simulación o el primero tras
+     *                 un cambio de tramo.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void comenzarPaso(double t, boolean reinicio) throws ParseException {
+        double[] X = this.compartimentos_;
+        if (reinicio) {
+            this.sistema_.derivadas(this.memoria_, this.F0);
+        } else if (!this.reutilizarEtapa) {
+            this.sistema_.calcular(t, this.memoria_, X, this.F0);
+        }
+        if (reinicio || this.intentos > 1 || this.edad >= EDAD_MAXIMA
+                || !this.J.vigente(this.sistema_, t, this.memoria_, X, this.F0,
+                                   this.etapa, this.F1, this.K1, TOLERANCIA_JACOBIANO)) {
+            this.J.calcular(this.sistema_, t, this.memoria_, X, this.F0, this.etapa, this.F1);
+            this.edad = 0;
+        }
+        this.edad++;
+        this.intentos = 0;
+    }
+    
+    /**
+     * Este método implementa propiamente dicho un intento de paso del método
+     * de Rosenbrock.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @return La máxima componente del error estimado, medida por el control
+     *         del paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected double intentar(double t, double h) throws ParseException {
+        double[] X = this.compartimentos_;
+        int n = X.length;
+        /** 
+         * CUERPO del método:
+         * W = I - h*d*J;
+         * K1 = W^-1 * F0;                      F0 = f(X, t)
+         * K2 = W^-1 * (F1 - K1) + K1;          F1 = f(X + (h/2)*K1, t+h/2)
+         * x(t+h) = X + h*K2;
+         * K3 = W^-1 * (F2 - e32*(K2 - F1) - 2*(K1 - F0));   F2 = f(x(t+h), t+h)
+         * 
+         * El error es |(h/6)*(K1 - 2*K2 + K3)|
+         */
+        this.intentos++;
+        this.W.factorizar(h * D);
+        // a. K1
+        System.arraycopy(this.F0, 0, this.K1, 0, n);
+        this.W.resolver(this.K1);
+        // b. F1 y K2
+        Combinaciones.combinar(this.etapa, X, h/2, this.K1);
+        this.sistema_.calcular(t + h/2, this.memoria_, this.etapa, this.F1);
+        for (int i = 0; i < n; i++) {
+            this.K2[i] = this.F1[i] - this.K1[i];
+        }
+        this.W.resolver(this.K2);
+        for (int i = 0; i < n; i++) {
+            this.K2[i] += this.K1[i];
+        }
+        // c. x(t+h), F2 y K3
+        Combinaciones.combinar(this.sol, X, h, this.K2);
+        this.sistema_.calcular(t + h, this.memoria_, this.sol, this.F2);
+        for (int i = 0; i < n; i++) {
+            this.K3[i] = this.F2[i] - E32*(this.K2[i] - this.F1[i]) - 2*(this.K1[i] - this.F0[i]);
+        }
+        this.W.resolver(this.K3);
+        // d. Error
+        double max = 0.0d;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, Math.abs((h/6)*(this.K1[i] - 2*this.K2[i] + this.K3[i]))
+                    / this.control.escala(X[i], this.sol[i]));
+        }
+        return max;
+    }
+    
+    /**
+     * Devuelve la solución del último intento.
+     * @return El valor de los compartimentos al final del paso.
+     */
+    @Override
+    protected double[] solucion() {
+        return this.sol;
+    }
+    
+    /**
+     * Estima la rigidez del modelo en el último paso con la norma infinito
+     * del jacobiano, que acota su radio espectral: si <CODE>h</CODE> por ella
+     * es pequeño, un método explícito sería estable con el mismo paso.
+     * @param h El paso del último intento.
+     * @return El paso por la norma del jacobiano.
+     */
+    double rigidez(double h) {
+        return h * this.J.normaInfinito();
+    }
+    
+    /**
+     * Las derivadas al final del paso aceptado son las del principio del
+     * siguiente.
+     */
+    @Override
+    protected void terminarPaso() {
+        double[] aux = this.F0;
+        this.F0 = this.F2;
+        this.F2 = aux;
+    }
+    
+    /**
+     * Guarda el principio del paso recién aceptado, para la interpolación.
+     * @param h El paso.
+     */
+    @Override
+    protected void prepararInterpolacion(double h) {
+        System.arraycopy(this.compartimentos_, 0, this.X0, 0, this.X0.length);
+        this.hPaso = h;
+    }
+    
+    /**
+     * Interpola la solución en un instante dentro del paso, de orden 2:
+     * x(t+theta*h) = X + h*(theta*(1-theta)/(1-2d)*K1 + theta*(theta-2d)/(1-2d)*K2)
+     * @param x Donde se deja el valor de los compartimentos.
+     * @param theta La fracción del paso transcurrida hasta el instante.
+     */
+    @Override
+    protected void interpolar(double[] x, double theta) {
+        double a1 = this.hPaso * theta*(1 - theta) / (1 - 2*D);
+        double a2 = this.hPaso * theta*(theta - 2*D) / (1 - 2*D);
+        for (int n = 0; n < x.length; n++) {
+            x[n] = this.X0[n] + a1*this.K1[n] + a2*this.K2[n];
+        }
+    }
+}
@@ -0,0 +1,625 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+
+import java.util.Arrays;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Esta clase implementa un método de simulación continua exponencial, para
+ * los modelos en que la rigidez viene de los flujos lineales entre
+ * compartimentos (<CODE>gamma*I</CODE>, <CODE>sigma*E</CODE>...). Al
+ * principio de cada paso separa las derivadas en su parte lineal, el
+ * jacobiano <CODE>J</CODE> del modelo (aproximado por diferencias finitas,
+ * como en el método de Rosenbrock), y un resto no lineal
+ * <CODE>g(x) = f(x) - f(X) - J*(x - X)</CODE>. La parte lineal avanza de
+ * forma exacta con la exponencial de <CODE>h*J</CODE>, así que el paso sólo
+ * lo limita la precisión con que se sigue el resto. Es el método exprb32 de
+ * Hochbruck, Ostermann y Schweitzer, de 3º orden, con el de Euler
+ * exponencial (de 2º) como estimación del error:
+ * <CODE>U = X + h*phi1(h*J)*f(X)</CODE>,
+ * <CODE>x(t+h) = U + 2*h*phi3(h*J)*g(U)</CODE>,
+ * donde <CODE>phi1(z) = (e^z - 1)/z</CODE> y
+ * <CODE>phi3(z) = (e^z - 1 - z - z^2/2)/z^3</CODE>.
+ * <p>El jacobiano se guarda sin sus ceros y se calcula con una evaluación
+ * por cada grupo de columnas (ver {@link Jacobiano}), y nunca se forma su
+ * exponencial: cada producto <CODE>phik(h*J)*v</CODE> se aproxima en el
+ * subespacio de Krylov de <CODE>J</CODE> y <CODE>v</CODE>, con una base
+ * ortonormal <CODE>V</CODE> que da el método de Arnoldi y en la que
+ * <CODE>J</CODE> es la matriz de Hessenberg <CODE>H</CODE>, de dimensión
+ * <CODE>m</CODE> pequeña: <CODE>phik(h*J)*v = |v|*V*phik(h*H)*e1</CODE>. Así
+ * cada paso sólo cuesta <CODE>m</CODE> productos por el jacobiano, que crecen
+ * con el número de sus elementos. La función de la matriz pequeña se obtiene
+ * de la exponencial de <CODE>h*H</CODE> ampliada con una cadena de unos
+ * (Saad), calculada con el aproximante de Padé de grado 6 y escalado y
+ * cuadrado. La dimensión crece hasta que el error estimado de la
+ * aproximación es una fracción de la tolerancia, y si no se llega con la
+ * dimensión máxima, ese error se suma al del paso para que el control lo
+ * reduzca.</p>
+ * <p>Como en el de Rosenbrock, no se calcula la derivada respecto al tiempo
+ * y los resultados se interpolan en los puntos de la salida, con el
+ * polinomio de Hermite de las derivadas en los extremos del paso.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+public class RosenbrockExponencial extends PasoVariable {
+    
+    /**
+     * Grado del aproximante de Padé de la exponencial.
+     * Prefijado con valor 6
+     */
+    public static final int GRADO_PADE = 6;
+    
+    /**
+     * Dimensión máxima del subespacio de Krylov.
+     * Prefijada con valor 30
+     */
+    public static final int DIMENSION_MAXIMA = 30;
+    
+    /**
+     * Fracción de la tolerancia que puede ocupar el error de la aproximación
+     * de Krylov. Es pequeña porque ese error no respeta las cantidades que el
+     * modelo conserva (la población total), y en ellas no se amortigua sino
+     * que se acumula paso a paso.
+     * Prefijada con valor 0.0001
+     */
+    public static final double FRACCION_KRYLOV = 1.0e-4d;
+    
+    /**
+     * Cota mínima permitida para el paso de integración.
+     * Prefijada con valor 0.001
+     */
+    public static final double H_MIN = 0.001d;
+    
+    /**
+     * Cota máxima permitida para el paso de integración. La parte lineal se
+     * resuelve de forma exacta, así que la limita sólo la precisión.
+     * Prefijada con valor 10
+     */
+    public static final double H_MAX = 10.0d;
+    
+    /**
+     * Si las derivadas al principio de cada paso se toman del final del
+     * anterior, lo que sólo se puede hacer si ningún parámetro cambia en
+     * cada punto.
+     */
+    private boolean reutilizarDerivada;
+    
+    /**
+     * Si las derivadas al principio del paso actual se han tomado del final
+     * del anterior, y si se ha preparado la interpolación en él.
+     */
+    private boolean derivadaInicial, preparado;
+    
+    /**
+     * El jacobiano del modelo al principio del paso, y su norma infinito.
+     */
+    private Jacobiano J;
+    private double normaJ;
+    
+    /**
+     * La base del subespacio de Krylov, por vectores, y la matriz de
+     * Hessenberg de <CODE>J</CODE> en ella.
+     */
+    private double[][] V, H;
+    
+    /**
+     * La matriz ampliada cuya exponencial se calcula, y las matrices
+     * auxiliares del cálculo. Se usa sólo su esquina de la dimensión de cada
+     * cálculo.
+     */
+    private double[][] M, N, D, P, T;
+    private int[] pivotes;
+    
+    /**
+     * Derivadas al principio del paso, en la etapa intermedia y al final.
+     */
+    private double[] F0, F1, F2;
+    
+    /**
+     * Compartimentos de la etapa intermedia, corrección de 3º orden (que es
+     * también el error) y solución del paso.
+     */
+    private double[] etapa, correccion, sol;
+    
+    /**
+     * Compartimentos al principio del paso, su instante y su paso, para la
+     * interpolación.
+     */
+    private double[] X0;
+    private double tPaso, hPaso;
+    
+    /**
+     * Constructor de la tarea que toma referencia de los parámetros en sus
+     * propios atributos para poder trabajar con ellos. El primer parámetro es
+     * necesario para tener referencia a la aplicación que ha invocado la tarea,
+     * el segundo contiene la epidemia que tenemos que simular, y los cuatro
+     * últimos son elementos del GUI que tenemos que actualizar cuando la tarea
+     * termine.
+     * @param app   La aplicación que invoca esta tarea.
+     * @param epi   La epidemia a simular.
+     * @param aMap  El mapa de acciones para poder desactivar las prohibidas.
+     * @param jtabbed   Panel de pestañas donde añadir los resultados.
+     * @param jmenu  Submenú donde añadir los elementos de menú de resultados.
+     * @param bgroup   Grupo de botones para añadirle los elementos de menú.
+     */
+    public RosenbrockExponencial(org.jdesktop.application.Application app,
+                               Epidemia epi, javax.swing.ActionMap aMap,
+                               javax.swing.JTabbedPane jtabbed,
+                               javax.swing.JMenu jmenu,
+                               javax.swing.ButtonGroup bgroup) {
+        // Llamamos al constructor de su ancestro
+        super(app, epi, aMap, jtabbed, jmenu, bgroup);
+    }
+    
+    /**
+     * Reserva las matrices y los vectores de las etapas y crea el control
+     * del paso.
+     * @param n El número de compartimentos del modelo.
+     */
+    @Override
+    protected void reservar(int n) {
+        // El error de orden 2 crece como h^3; por unidad de tiempo, como h^2
+        this.control = new ControlPaso(this.toleranciaAbsoluta_, this.toleranciaRelativa_, H_MIN, H_MAX, 2);
+        this.reutilizarDerivada = this.parametrosFijos();
+        this.derivadaInicial = false;
+        this.preparado = false;
+        this.J = new Jacobiano(this.sistema_.estructura());
+        int dim = Math.min(DIMENSION_MAXIMA, n);
+        this.V = new double[dim + 1][n];
+        this.H = new double[dim + 1][dim];
+        // La matriz de Hessenberg, el vector y la cadena de unos de phi4
+        int m = dim + 4;
+        this.M = new double[m][m];
+        this.N = new double[m][m];
+        this.D = new double[m][m];
+        this.P = new double[m][m];
+        this.T = new double[m][m];
+        this.pivotes = new int[m];
+        this.F0 = new double[n];
+        this.F1 = new double[n];
+        this.F2 = new double[n];
+        this.etapa = new double[n];
+        this.correccion = new double[n];
+        this.sol = new double[n];
+        this.X0 = new double[n];
+    }
+    
+    /**
+     * Calcula las derivadas al principio del paso (salvo que se hayan tomado
+     * del final del anterior) y el jacobiano, que el método necesita exacto
+     * en cada paso.
+     * @param t El instante en que empieza el paso.
+     * @param reinicio Si es el primer paso de la simulación o el primero tras
+     *                 un cambio de tramo.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void comenzarPaso(double t, boolean reinicio) throws ParseException {
+        if (reinicio) {
+            this.sistema_.derivadas(this.memoria_, this.F0);
+        } else if (!this.derivadaInicial) {
+            this.sistema_.calcular(t, this.memoria_, this.compartimentos_, this.F0);
+        }
+        this.J.calcular(this.sistema_, t, this.memoria_, this.compartimentos_, this.F0, this.etapa, this.F1);
+        this.normaJ = this.J.normaInfinito();
+    }
+    
+    /**
+     * Este método implementa propiamente dicho un intento de paso del método
+     * exponencial.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @return La máxima componente del error estimado, medida por el control
+     *         del paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected double intentar(double t, double h) throws ParseException {
+        double[] X = this.compartimentos_;
+        int n = X.length;
+        /** 
+         * CUERPO del método:
+         * U = X + h*phi1(h*J)*F0;               F0 = f(X, t)
+         * D = F1 - F0 - J*(U - X);              F1 = f(U, t+h)
+         * x(t+h) = U + 2*h*phi3(h*J)*D;
+         * 
+         * El error es |2*h*phi3(h*J)*D|, más el de las aproximaciones de
+         * Krylov.
+         */
+        this.tPaso = t;
+        // a. U
+        double errorKrylov = this.phi(1, h, h, this.F0, this.etapa);
+        Combinaciones.combinar(this.etapa, X, h, this.etapa);
+        // b. F1 y resto no lineal en U
+        this.sistema_.calcular(t + h, this.memoria_, this.etapa, this.F1);
+        for (int i = 0; i < n; i++) {
+            this.correccion[i] = this.etapa[i] - X[i];
+        }
+        this.J.multiplicar(this.correccion, this.F2);
+        for (int i = 0; i < n; i++) {
+            this.F2[i] = this.F1[i] - this.F0[i] - this.F2[i];
+        }
+        // c. x(t+h)
+        errorKrylov += this.phi(3, h, 2*h, this.F2, this.correccion);
+        Combinaciones.combinar(this.sol, this.etapa, 2*h, this.correccion);
+        // d. Error
+        double max = 0.0d;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, Math.abs(2*h*this.correccion[i])
+                    / this.control.escala(X[i], this.sol[i]));
+        }
+        return max + errorKrylov;
+    }
+    
+    /**
+     * Devuelve la solución del último intento.
+     * @return El valor de los compartimentos al final del paso.
+     */
+    @Override
+    protected double[] solucion() {
+        return this.sol;
+    }
+    
+    /**
+     * Guarda el principio del paso recién aceptado y calcula las derivadas al
+     * final, para la interpolación.
+     * @param h El paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    @Override
+    protected void prepararInterpolacion(double h) throws ParseException {
+        System.arraycopy(this.compartimentos_, 0, this.X0, 0, this.X0.length);
+        this.hPaso = h;
+        this.sistema_.calcular(this.tPaso + h, this.memoria_, this.sol, this.F2);
+        this.preparado = true;
+    }
+    
+    /**
+     * Interpola la solución en un instante dentro del paso con el polinomio
+     * de Hermite de 3er grado.
+     * @param x Donde se deja el valor de los compartimentos.
+     * @param theta La fracción del paso transcurrida hasta el instante.
+     */
+    @Override
+    protected void interpolar(double[] x, double theta) {
+        Combinaciones.hermite(x, this.X0, this.F0, this.sol, this.F2, this.hPaso, theta);
+    }
+    
+    /**
+     * Las derivadas al final del paso aceptado, si se han calculado para la
+     * interpolación, son las del principio del siguiente.
+     */
+    @Override
+    protected void terminarPaso() {
+        this.derivadaInicial = this.preparado && this.reutilizarDerivada;
+        if (this.derivadaInicial) {
+            double[] aux = this.F0;
+            this.F0 = this.F2;
+            this.F2 = aux;
+        }
+        this.preparado = false;
+    }
+    
+    /**
+     * Aproxima <CODE>phik(h*J)*v</CODE> en el subespacio de Krylov, que se
+     * amplía con el método de Arnoldi hasta que el error estimado (Saad),
+     * multiplicado por el coeficiente con que entra en la solución, es una
+     * fracción de la tolerancia, o hasta la dimensión máxima. Si el
+     * subespacio se agota, la aproximación es exacta.
+     * @param k El índice de la función, 1 o 3.
+     * @param h El paso.
+     * @param c El coeficiente del producto en la solución.
+     * @param v El vector.
+     * @param y Donde se deja el resultado.
+     * @return El error estimado de la aproximación, medido por el control
+     *         del paso.
+     */
+    private double phi(int k, double h, double c, double[] v, double[] y) {
+        double[] X = this.compartimentos_;
+        int n = v.length;
+        double beta = norma2(v);
+        if (beta == 0.0d) {
+            Arrays.fill(y, 0.0d);
+            return 0.0d;
+        }
+        for (int i = 0; i < n; i++) {
+            this.V[0][i] = v[i] / beta;
+        }
+        int maxima = this.H[0].length;
+        double error = 0.0d;
+        double[][] E;
+        int m = 0;
+        while (true) {
+            // Arnoldi: w = J*V[m], ortogonal a los anteriores
+            double[] w = this.V[m + 1];
+            this.J.multiplicar(this.V[m], w);
+            for (int l = 0; l <= m; l++) {
+                double hlm = 0.0d;
+                double[] Vl = this.V[l];
+                for (int i = 0; i < n; i++) {
+                    hlm += w[i] * Vl[i];
+                }
+                this.H[l][m] = hlm;
+                for (int i = 0; i < n; i++) {
+                    w[i] -= hlm * Vl[i];
+                }
+            }
+            double siguiente = norma2(w);
+            m++;
+            E = this.exponencial(k, h, m);
+            if (siguiente <= Math.ulp(1.0d) * n * this.normaJ) {
+                error = 0.0d;
+                break;
+            }
+            this.H[m][m - 1] = siguiente;
+            for (int i = 0; i < n; i++) {
+                w[i] /= siguiente;
+            }
+            // El error va en la dirección de V[m]
+            double factor = Math.abs(c * beta * h * siguiente * E[m - 1][m + k]);
+            error = 0.0d;
+            for (int i = 0; i < n; i++) {
+                error = Math.max(error, factor * Math.abs(w[i]) / this.control.escala(X[i], X[i]));
+            }
+            if (error <= FRACCION_KRYLOV || m == maxima) {
+                break;
+            }
+        }
+        // y = beta*V*phik(h*H)*e1
+        Arrays.fill(y, 0.0d);
+        for (int l = 0; l < m; l++) {
+            double coef = beta * E[l][m + k - 1];
+            double[] Vl = this.V[l];
+            for (int i = 0; i < n; i++) {
+                y[i] += coef * Vl[i];
+            }
+        }
+        return error;
+    }
+    
+    /**
+     * Calcula <CODE>phik(h*H)*e1</CODE> y <CODE>phik+1(h*H)*e1</CODE> como las
+     * primeras filas de las dos últimas columnas de la exponencial de la
+     * matriz ampliada <CODE>[[h*H, e1, 0...], [0, 0, 1...], ..., [0, 0,
+     * 0...]]</CODE>, de dimensión <CODE>m+k+1</CODE>.
+     * @param k El índice de la función.
+     * @param h El paso.
+     * @param m La dimensión actual del subespacio de Krylov.
+     * @return La matriz en que queda la exponencial.
+     */
+    private double[][] exponencial(int k, double h, int m) {
+        int d = m + k + 1;
+        for (int i = 0; i < d; i++) {
+            Arrays.fill(this.M[i], 0, d, 0.0d);
+        }
+        for (int i = 0; i < m; i++) {
+            for (int j = Math.max(0, i - 1); j < m; j++) {
+                this.M[i][j] = h * this.H[i][j];
+            }
+        }
+        this.M[0][m] = 1.0d;
+        for (int i = m; i < d - 1; i++) {
+            this.M[i][i+1] = 1.0d;
+        }
+        return this.exponencial(d);
+    }
+    
+    /**
+     * Calcula la exponencial de <CODE>M</CODE> (que queda modificada) con el
+     * aproximante de Padé diagonal de grado <CODE>GRADO_PADE</CODE>,
+     * dividiendo antes la matriz por una potencia de 2 hasta que su norma no
+     * pasa de 1/2 y elevando después al cuadrado otras tantas veces.
+     * @param m La dimensión de la matriz.
+     * @return La matriz auxiliar en que queda la exponencial.
+     */
+    private double[][] exponencial(int m) {
+        double norma = normaInfinito(this.M, m);
+        int s = norma > 0.5d ? Math.getExponent(norma) + 2 : 0;
+        double escala = Math.scalb(1.0d, -s);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                this.M[i][j] *= escala;
+            }
+        }
+        // N = suma de c_k*M^k; D = suma de (-1)^k*c_k*M^k
+        for (int i = 0; i < m; i++) {
+            Arrays.fill(this.N[i], 0, m, 0.0d);
+            Arrays.fill(this.D[i], 0, m, 0.0d);
+            this.N[i][i] = 1.0d;
+            this.D[i][i] = 1.0d;
+            System.arraycopy(this.M[i], 0, this.P[i], 0, m);
+        }
+        double[][] potencia = this.P;
+        double[][] aux = this.T;
+        double c = 1.0d;
+        for (int k = 1; k <= GRADO_PADE; k++) {
+            c = c * (GRADO_PADE - k + 1) / (k * (2.0d*GRADO_PADE - k + 1));
+            if (k > 1) {
+                multiplicar(potencia, this.M, aux, m);
+                double[][] cambio = potencia;
+                potencia = aux;
+                aux = cambio;
+            }
+            double signo = k % 2 == 0 ? c : -c;
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < m; j++) {
+                    this.N[i][j] += c * potencia[i][j];
+                    this.D[i][j] += signo * potencia[i][j];
+                }
+            }
+        }
+        // Exponencial de M/2^s: D^-1 * N, resolviendo columna a columna
+        factorizar(this.D, this.pivotes, m);
+        double[] columna = new double[m];
+        for (int j = 0; j < m; j++) {
+            for (int i = 0; i < m; i++) {
+                columna[i] = this.N[i][j];
+            }
+            resolver(this.D, this.pivotes, columna, m);
+            for (int i = 0; i < m; i++) {
+                this.N[i][j] = columna[i];
+            }
+        }
+        // Deshacer el escalado
+        double[][] E = this.N;
+        for (int r = 0; r < s; r++) {
+            multiplicar(E, E, aux, m);
+            double[][] cambio = E;
+            E = aux;
+            aux = cambio;
+        }
+        return E;
+    }
+    
+    /**
+     * Calcula la norma euclídea de un vector.
+     * @param v El vector.
+     * @return Su norma.
+     */
+    private static double norma2(double[] v) {
+        double suma = 0.0d;
+        for (int i = 0; i < v.length; i++) {
+            suma += v[i] * v[i];
+        }
+        return Math.sqrt(suma);
+    }
+    
+    /**
+     * Calcula la norma infinito de la esquina de una matriz, la mayor suma de
+     * los valores absolutos de una fila.
+     * @param A La matriz.
+     * @param m La dimensión de la esquina.
+     * @return Su norma.
+     */
+    private static double normaInfinito(double[][] A, int m) {
+        double max = 0.0d;
+        for (int i = 0; i < m; i++) {
+            double suma = 0.0d;
+            for (int j = 0; j < m; j++) {
+                suma += Math.abs(A[i][j]);
+            }
+            max = Math.max(max, suma);
+        }
+        return max;
+    }
+    
+    /**
+     * Calcula <CODE>C = A*B</CODE> con las esquinas de las matrices, saltando
+     * los ceros de <CODE>A</CODE>.
+     * @param A La matriz de la izquierda.
+     * @param B La de la derecha.
+     * @param C Donde se deja el producto, distinta de las otras dos.
+     * @param m La dimensión de las esquinas.
+     */
+    private static void multiplicar(double[][] A, double[][] B, double[][] C, int m) {
+        for (int i = 0; i < m; i++) {
+            double[] filaC = C[i];
+            Arrays.fill(filaC, 0, m, 0.0d);
+            for (int k = 0; k < m; k++) {
+                double a = A[i][k];
+                if (a != 0.0d) {
+                    double[] filaB = B[k];
+                    for (int j = 0; j < m; j++) {
+                        filaC[j] += a * filaB[j];
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Factoriza la esquina de una matriz en el sitio como
+     * <CODE>P*A = L*U</CODE>, por eliminación gaussiana con pivoteo parcial.
+     * @param A La matriz, donde quedan <CODE>L</CODE> y <CODE>U</CODE>.
+     * @param pivotes Donde se deja la fila elegida como pivote en cada
+     *                columna.
+     * @param n La dimensión de la esquina.
+     */
+    private static void factorizar(double[][] A, int[] pivotes, int n) {
+        for (int k = 0; k < n; k++) {
+            // Elegir como pivote el mayor de la columna
+            int p = k;
+            for (int i = k + 1; i < n; i++) {
+                if (Math.abs(A[i][k]) > Math.abs(A[p][k])) {
+                    p = i;
+                }
+            }
+            pivotes[k] = p;
+            if (p != k) {
+                double[] aux = A[p];
+                A[p] = A[k];
+                A[k] = aux;
+            }
+            // Eliminar por debajo del pivote
+            double[] filaK = A[k];
+            for (int i = k + 1; i < n; i++) {
+                double[] filaI = A[i];
+                double factor = filaI[k] / filaK[k];
+                filaI[k] = factor;
+                for (int j = k + 1; j < n; j++) {
+                    filaI[j] -= factor * filaK[j];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Resuelve <CODE>A*x = b</CODE> con la factorización de
+     * <CODE>factorizar()</CODE>.
+     * @param A La matriz factorizada.
+     * @param pivotes Las filas elegidas como pivote.
+     * @param b El término independiente, donde se deja la solución.
+     * @param n La dimensión de la esquina.
+     */
+    private static void resolver(double[][] A, int[] pivotes, double[] b, int n) {
+        // Permutar como las filas de A
+        for (int k = 0; k < n; k++) {
+            int p = pivotes[k];
+            if (p != k) {
+                double aux = b[p];
+                b[p] = b[k];
+                b[k] = aux;
+            }
+        }
+        // Sustituir hacia delante con L
+        for (int k = 0; k < n; k++) {
+            for (int i = k + 1; i < n; i++) {
+                b[i] -= A[i][k] * b[k];
+            }
+        }
+        // Sustituir hacia atrás con U
+        for (int k = n - 1; k >= 0; k--) {
+            for (int j = k + 1; j < n; j++) {
+                b[k] -= A[k][j] * b[j];
+            }
+            b[k] /= A[k][k];
+        }
+    }
+}
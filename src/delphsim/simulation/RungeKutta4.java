@@ -24,16 +24,7 @@
 package delphsim.simulation;
 
 import delphsim.model.Epidemia;
-import delphsim.model.Resultado;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-
-import org.nfunk.jep.JEP;
-import org.nfunk.jep.Node;
 import org.nfunk.jep.ParseException;
 
 /**
@@ -41,7 +32,12 @@ import org.nfunk.jep.ParseException;
  * 4º orden. Es un método más complicado pero comete menos errores.
  * @author Víctor E. Tamames Gómez
  */
-public class RungeKutta4 extends SimulationTask {
+public class RungeKutta4 extends PasoFijo {
+    
+    /**
+     * Vectores de las etapas intermedias y de las derivadas de cada etapa.
+     */
+    private double[] COMPS2, COMPS3, COMPS4, derCOMPS1, derCOMPS2, derCOMPS3, derCOMPS4;
     
     /**
      * Constructor de la tarea que toma referencia de los parámetros en sus
@@ -67,374 +63,64 @@ public class RungeKutta4 extends SimulationTask {
     }
     
     /**
-     * Este método implementa propiamente dicho el método Runge-Kutta 4º orden.
-     * Crea los archivos temporales de salida, comprueba que todos los elementos
-     * del modelo se hayan definido, realiza la simulación actualizando los
-     * tiempos y la barra de progreso y recoge y muestra los errores producidos.
-     * El código de la tarea. Este método corre en un hilo en background,
-     * así que no hay que referenciar al GUI de Swing.
-     * @return En realidad no devuelve nada, ya que los resultados se almacenan
-     *         en el modelo de DelphSim.
-     * @throws java.io.IOException Si hay algún problema escribiendo en disco
-     *                             los valores que se van calculando.
+     * Constructor de un método que trabaja por cuenta de otra tarea.
+     * @param principal La tarea por cuenta de la que trabaja.
+     */
+    RungeKutta4(SimulationTask principal) {
+        super(principal);
+    }
+    
+    /**
+     * Reserva los vectores de las etapas.
+     * @param n El número de compartimentos del modelo.
+     */
+    @Override
+    protected void reservar(int n) {
+        this.COMPS2 = new double[n];
+        this.COMPS3 = new double[n];
+        this.COMPS4 = new double[n];
+        this.derCOMPS1 = new double[n];
+        this.derCOMPS2 = new double[n];
+        this.derCOMPS3 = new double[n];
+        this.derCOMPS4 = new double[n];
+    }
+    
+    /**
+     * Este método implementa propiamente dicho una iteración del método
+     * Runge-Kutta 4º orden.
+     * @param t El instante en que empieza el paso.
+     * @param h El paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
      */
     @Override
-    protected Object doInBackground() throws IOException {
-        this.setMessage("Comprobando que todos los elementos hayan sido definidos...");
-        
-        /*******************************************************
-         * CREAR UN FICHERO TEMPORAL PARA CADA FUNCION DE CADA *
-         * RESULTADO Y OTRO PARA EL TIEMPO                     *
-         *******************************************************/
-        File rutaTemp = new File(new File(System.getProperty("java.class.path")).getParent() + File.separator + "temp");
-        if (!rutaTemp.exists()) {
-            if (!rutaTemp.mkdir()) {
-                this.setMessage("No se pueden guardar los archivos temporales.");
-            }
-        }
-        String archivoTiempo = rutaTemp.getAbsolutePath() + File.separator + "tiempo_.temp";
-        PrintWriter tiempo_ = new PrintWriter(new BufferedWriter(new FileWriter(archivoTiempo)));
-        PrintWriter[][] resFiles = new PrintWriter[this.epidemia.getResultados().length][];
-        for (int i = 0; i < this.epidemia.getResultados().length; i++) {
-            this.epidemia.getResultado(i).setFileTiempo(archivoTiempo);
-            resFiles[i] = new PrintWriter[this.epidemia.getResultado(i).getNumFunciones()];
-            for (int j = 0; j < this.epidemia.getResultado(i).getNumFunciones(); j++) {
-                String f = rutaTemp.getAbsolutePath() + File.separator + "r" + i + "f" + j + ".temp";
-                resFiles[i][j] = new PrintWriter(new BufferedWriter(new FileWriter(f)));
-                this.epidemia.getResultado(i).setFileFuncion(f, j);
-            }
-        }
-        
-        /*************************************
-         * CÓDIGO DE DEFINICIÓN DE VARIABLES *
-         *************************************/
-        // Nuevo Java Expression Parser
-        JEP jep = Epidemia.CrearDelphSimJEP();
-        // Y otro para el cálculo de las aproximaciones en Runge-Kutta
-        JEP jepRK4 = Epidemia.CrearDelphSimJEP();
-        double temp;
-        int indice = 0;
-        
-        /**********************************************************************
-         * Definimos tantas variables locales como funciones analizadas vamos *
-         * a tener que guardar para no tener que volver a analizarlas.        *
-         **********************************************************************/
-        // Para cada parámetro, cada compartimento, cada atajo y cada función
-        // de cada resultado. Para cada proceso no, porque pueden ir por tramos.
-        Node[] funcPars = new Node[this.epidemia.getParametros().length];
-        Node[] funcComps = new Node[this.epidemia.getCompartimentos().length];
-        Node[] funcAtajos = new Node[this.epidemia.getAtajos().length];
-        Node[][] funcRes = new Node[this.epidemia.getResultados().length][];
-        for (int i = 0; i < this.epidemia.getResultados().length; i++) {
-            funcRes[i] = new Node[this.epidemia.getResultado(i).getNumFunciones()];
-        }
-        
-        // 1º - Parámetros, ya que sólo dependen de parámetros anteriores
-        try {
-            for (int i = 0; i < this.epidemia.getParametros().length; i++) {
-                indice = i;
-                funcPars[i] = jep.parseExpression(this.epidemia.getParametro(i).getDefinicionContinua());
-                temp = (Double) jep.evaluate(funcPars[i]);
-                jep.addVariable(this.epidemia.getParametro(i).getNombre(), temp);
-                jepRK4.addVariable(this.epidemia.getParametro(i).getNombre(), temp);
-            }
-        } catch (ParseException pex) {
-            this.failed(new Exception(String.format("<html>Definición incorrecta del parámetro <b>%s</b></html>", 
-                    this.epidemia.getParametro(indice).getNombre()), pex.getCause()));
-            return null;
-        } catch (NullPointerException npex) {
-            this.failed(new Exception(String.format("<html>Falta por definir el parámetro <b>%s</b></html>", 
-                    this.epidemia.getParametro(indice).getNombre()), npex.getCause()));
-            return null;
-        }
-        // 2º - Condiciones Iniciales de los Compartimentos -> Números
-        try {
-            for (int i = 0; i < this.epidemia.getCompartimentos().length; i++) {
-                indice = i;
-                temp = (Double) jep.evaluate(jep.parseExpression(
-                        String.valueOf(this.epidemia.getCompartimento(i).getHabitantes())
-                        ));
-                jep.addVariable(this.epidemia.getCompartimento(i).getNombre(), temp);
-                jepRK4.addVariable(this.epidemia.getCompartimento(i).getNombre(), temp);
-            }
-        } catch (ParseException pex) {
-            this.failed(new Exception(String.format(
-                    "<html>Número de personas inicial incorrecto del compartimento <b>%s</b></html>", 
-                    this.epidemia.getCompartimento(indice).getNombre()), pex.getCause()));
-            return null;
-        } catch (NullPointerException npex) {
-            this.failed(new Exception(String.format(
-                    "<html>Falta por definir el número de personas inicial del compartimento <b>%s</b></html>", 
-                    this.epidemia.getCompartimento(indice).getNombre()), npex.getCause()));
-            return null;
-        }
-        // 3º - Atajos, que sólo dependen de los compartimentos (2)
-        try {
-            for (int i = 0; i < this.epidemia.getAtajos().length; i++) {
-                indice = i;
-                funcAtajos[i] = jep.parseExpression(this.epidemia.getAtajo(i).getDefinicionContinua());
-                temp = (Double) jep.evaluate(funcAtajos[i]);
-                jep.addVariable(this.epidemia.getAtajo(i).getNombre(), temp);
-                jepRK4.addVariable(this.epidemia.getAtajo(i).getNombre(), temp);
-            }
-        } catch (ParseException pex) {
-            this.failed(new Exception(String.format("<html>Definición incorrecta del atajo <b>%s</b></html>", 
-                    this.epidemia.getAtajo(indice).getNombre()), pex.getCause()));
-            return null;
-        } catch (NullPointerException npex) {
-            this.failed(new Exception(String.format("<html>Falta por definir el atajo <b>%s</b></html>", 
-                    this.epidemia.getAtajo(indice).getNombre()), npex.getCause()));
-            return null;
-        }
-        // 4º - Procesos, dependen de los parámetros (1), compartimentos (2), atajos (3)
-        // y procesos anteriores. Nota: se coge el primer tramo (primero bien <-> todos bien)
-        try {
-            for (int i = 0; i < this.epidemia.getProcesos().length; i++) {
-                indice = i;
-                temp = (Double) jep.evaluate(jep.parseExpression(
-                        this.epidemia.getProceso(i).getDefinicionContinua(0.0)
-                        ));
-                jep.addVariable(this.epidemia.getProceso(i).getNombre(), temp);
-                jepRK4.addVariable(this.epidemia.getProceso(i).getNombre(), temp);
-            }
-        } catch (ParseException pex) {
-            this.failed(new Exception(String.format("<html>Definición incorrecta del proceso <b>%s</b></html>", 
-                    this.epidemia.getProceso(indice).getNombre()), pex.getCause()));
-            return null;
-        } catch (Exception ex) {
-            // Un poco decisión salomónica coger TODAS las demás excepciones, pero así va bien
-            this.failed(new Exception(String.format("<html>Falta por definir el proceso <b>%s</b></html>", 
-                    this.epidemia.getProceso(indice).getNombre()), ex.getCause()));
-            return null;
-        }
-        // 5º - Compartimentos, su definición. Ahora no es necesaria, pero hay
-        // que comprobarla y de paso también queda analizada.
-        // Dependen de parámetros (1), compartimentos (2), atajos (3) y procesos (4).
-        try {
-            for (int i = 0; i < this.epidemia.getCompartimentos().length; i++) {
-                indice = i;
-                funcComps[i] = jep.parseExpression(this.epidemia.getCompartimento(i).getDefinicionContinua());
-                temp = (Double) jep.evaluate(funcComps[i]);
-                jep.addVariable(this.epidemia.getCompartimento(i).getNombre() + "_", temp);
-            }
-            // Como sólo es para comprobar, luego hay que eliminarlas
-            for (int i = 0; i < this.epidemia.getCompartimentos().length; i++) {
-                jep.removeVariable(this.epidemia.getCompartimento(i).getNombre() + "_");
-            }
-        } catch (ParseException pex) {
-            this.failed(new Exception(String.format(
-                    "<html>Definición incorrecta del compartimento <b>%s</b></html>", 
-                    this.epidemia.getCompartimento(indice).getNombre()), pex.getCause()));
-            return null;
-        } catch (NullPointerException npex) {
-            this.failed(new Exception(String.format(
-                    "<html>Falta por definir el compartimento <b>%s</b></html>", 
-                    this.epidemia.getCompartimento(indice).getNombre()), npex.getCause()));
-            return null;
-        }
-        // 6º - Escribir ya el primer elemento de los resultados
-        try {
-            for (int m = 0; m < resFiles.length; m++) {
-                indice = m;
-                for (int n = 0; n < resFiles[m].length; n++) {
-                    funcRes[m][n] = jep.parseExpression(this.epidemia.getResultado(m).getFuncion(n)[1].toString());
-                    temp = (Double) jep.evaluate(funcRes[m][n]);
-                    resFiles[m][n].println(temp);
-                    this.epidemia.getResultado(m).anadirPuntoFuncion(temp, n);
-                }
-                this.epidemia.getResultado(m).anadirPuntoTiempo(0.0d);
-            }
-        } catch (ParseException pex) {
-            // Nota: esto no debería pasar nunca
-            this.failed(new Exception(String.format(
-                    "<html>Ha fallado el cálculo de uno de los resultados</html>", 
-                    this.epidemia.getResultado(indice).getTitulo()), pex.getCause()));
-            return null;
-        } catch (NullPointerException npex) {
-            // Nota: esto no debería pasar nunca
-            this.failed(new Exception(String.format(
-                    "<html>Falta por definir uno de los resultados</html>", 
-                    this.epidemia.getResultado(indice).getTitulo()), npex.getCause()));
-            return null;
-        }
-        
-        /************************************************************************
-         * OTROS ELEMENTOS NECESARIOS como tmax, h, numIteraciones, renovarCada *
-         ************************************************************************/
-        // Nota, máximos soportados: segundos -> 8 meses, minutos -> 40 años, días -> 2400 años
-        double tmax_ = this.epidemia.getTiempoSimulacion();
-        long numIteraciones_ = Math.round(tmax_ / h_);
-        for (int i = 0; i < this.epidemia.getResultados().length; i++) {
-            this.epidemia.getResultado(i).setNumPuntosTotal(numIteraciones_+1);
-        }
-        long guardarPuntoGraficaCada_ = Math.round(numIteraciones_ / Resultado.NUM_PUNTOS_GRAFICAS);
-        long contadorGuardarPuntosGraficas_ = 1;
-        long renovarCada_ = Math.round(1 / h_);
-        tiempo_.println(0.0d);
-        
-        this.setMessage("Iniciando simulación...");
-        this.tiempoComienzo = System.currentTimeMillis();
-        
-        /************************************************
-         * CÓDIGO DEL MÉTODO DE RUNGE-KUTTA de 4º ORDEN *
-         ************************************************/
-        for (long i = 0; i < numIteraciones_; i++) {
-            // Parar la simulación si se ha cancelado
-            if (this.isCancelled()) {
-                break;
-            }
-            try {
-                // 1º Actualizar variables de los compartimentos por Runge-Kutta 4º orden
-                /** 
-                 * CUERPO del método de Runge-Kutta 4º orden:
-                 * X1 = X(t);
-                 * derX1 = f(X1, Y1, Z1, ...); -- variables las de antes
-                 * X2 = X1 + (h/2)*derX1;
-                 * derX2 = f(X2, Y2, Z2, ...); -- variables evaluadas en t+0.5h
-                 * X3 = X1 + (h/2)*derX2;
-                 * derX3 = f(X3, Y3, Z3, ...); -- variables evaluadas en t+0.5h
-                 * X4 = X1 + h*derX3;
-                 * derX4 = f(X4, Y4, Z4, ...); -- variables evaluadas en t+h
-                 * 
-                 * X(t+h) = X1 + (h/6)*(derX1 + 2*derX2 + 2*derX3 + derX4);
-                 */
-                double[] COMPS1 = new double[this.epidemia.getCompartimentos().length];
-                double[] COMPS2 = new double[this.epidemia.getCompartimentos().length];
-                double[] COMPS3 = new double[this.epidemia.getCompartimentos().length];
-                double[] COMPS4 = new double[this.epidemia.getCompartimentos().length];
-                double[] derCOMPS1 = new double[this.epidemia.getCompartimentos().length];
-                double[] derCOMPS2 = new double[this.epidemia.getCompartimentos().length];
-                double[] derCOMPS3 = new double[this.epidemia.getCompartimentos().length];
-                double[] derCOMPS4 = new double[this.epidemia.getCompartimentos().length];
-                // a. X1 = X(t); derX1 = f(X1, Y1, Z1, ...); X2 = X1 + (h/2)*derX1;
-                for (int n = 0; n < this.epidemia.getCompartimentos().length; n++) {
-                    COMPS1[n] = (Double) jep.getVarValue(this.epidemia.getCompartimento(n).getNombre());
-                    derCOMPS1[n] = (Double) jep.evaluate(funcComps[n]);
-                    COMPS2[n] = COMPS1[n] + (h_/2)*derCOMPS1[n];
-                    jepRK4.addVariable(this.epidemia.getCompartimento(n).getNombre(), COMPS2[n]);
-                }
-                // Además, actualizar atajos y procesos
-                for (int n = 0; n < this.epidemia.getAtajos().length; n++) {
-                    temp = (Double) jepRK4.evaluate(funcAtajos[n]);
-                    jepRK4.addVariable(this.epidemia.getAtajo(n).getNombre(), temp);
-                }
-                for (int n = 0; n < this.epidemia.getProcesos().length; n++) {
-                    temp = (Double) jepRK4.evaluate(jepRK4.parseExpression(
-                            this.epidemia.getProceso(n).getDefinicionContinua(i*h_ + h_/2)
-                            ));
-                    jepRK4.addVariable(this.epidemia.getProceso(n).getNombre(), temp);
-                }
-                // b. derX2 = f(X2, Y2, Z2, ...); X3 = X1 + (h/2)*derX2;
-                for (int n = 0; n < this.epidemia.getCompartimentos().length; n++) {
-                    derCOMPS2[n] = (Double) jepRK4.evaluate(funcComps[n]);
-                    COMPS3[n] = COMPS1[n] + (h_/2)*derCOMPS2[n];
-                    jepRK4.addVariable(this.epidemia.getCompartimento(n).getNombre(), COMPS3[n]);
-                }
-                // Además, actualizar atajos y procesos
-                for (int n = 0; n < this.epidemia.getAtajos().length; n++) {
-                    temp = (Double) jepRK4.evaluate(funcAtajos[n]);
-                    jepRK4.addVariable(this.epidemia.getAtajo(n).getNombre(), temp);
-                }
-                for (int n = 0; n < this.epidemia.getProcesos().length; n++) {
-                    temp = (Double) jepRK4.evaluate(jepRK4.parseExpression(
-                            this.epidemia.getProceso(n).getDefinicionContinua(i*h_ + h_/2)
-                            ));
-                    jepRK4.addVariable(this.epidemia.getProceso(n).getNombre(), temp);
-                }
-                // c. derX3 = f(X3, Y3, Z3, ...); X4 = X1 + h*derX3;
-                for (int n = 0; n < this.epidemia.getCompartimentos().length; n++) {
-                    derCOMPS3[n] = (Double) jepRK4.evaluate(funcComps[n]);
-                    COMPS4[n] = COMPS1[n] + h_*derCOMPS3[n];
-                    jepRK4.addVariable(this.epidemia.getCompartimento(n).getNombre(), COMPS4[n]);
-                }
-                // Además, actualizar atajos y procesos
-                for (int n = 0; n < this.epidemia.getAtajos().length; n++) {
-                    temp = (Double) jepRK4.evaluate(funcAtajos[n]);
-                    jepRK4.addVariable(this.epidemia.getAtajo(n).getNombre(), temp);
-                }
-                for (int n = 0; n < this.epidemia.getProcesos().length; n++) {
-                    temp = (Double) jepRK4.evaluate(jepRK4.parseExpression(
-                            this.epidemia.getProceso(n).getDefinicionContinua((i+1)*h_)
-                            ));
-                    jepRK4.addVariable(this.epidemia.getProceso(n).getNombre(), temp);
-                }
-                // d. derX4 = f(X4, Y4, Z4, ...);
-                //    X(t+h) = X1 + (h/6)*(derX1 + 2*derX2 + 2*derX3 + derX4);
-                for (int n = 0; n < this.epidemia.getCompartimentos().length; n++) {
-                    derCOMPS4[n] = (Double) jepRK4.evaluate(funcComps[n]);
-                    temp = COMPS1[n] + (h_/6)*(derCOMPS1[n] + 2*derCOMPS2[n] + 2*derCOMPS3[n] + derCOMPS4[n]);
-                    jep.addVariable(this.epidemia.getCompartimento(n).getNombre(), temp);
-                    jepRK4.addVariable(this.epidemia.getCompartimento(n).getNombre(), temp);
-                }
-                
-                // 2º Actualizar variables de los atajos
-                for (int n = 0; n < this.epidemia.getAtajos().length; n++) {
-                    temp = (Double) jep.evaluate(funcAtajos[n]);
-                    jep.addVariable(this.epidemia.getAtajo(n).getNombre(), temp);
-                    jepRK4.addVariable(this.epidemia.getAtajo(n).getNombre(), temp);
-                }
-                // 3º Actualizar variables de los procesos
-                for (int n = 0; n < this.epidemia.getProcesos().length; n++) {
-                    temp = (Double) jep.evaluate(jep.parseExpression(
-                            this.epidemia.getProceso(n).getDefinicionContinua((i+1)*h_)
-                            ));
-                    jep.addVariable(this.epidemia.getProceso(n).getNombre(), temp);
-                    jepRK4.addVariable(this.epidemia.getProceso(n).getNombre(), temp);
-                }
-                // 4º Calcular los nuevos valores de los resultados y escribir
-                for (int m = 0; m < resFiles.length; m++) {
-                    for (int n = 0; n < resFiles[m].length; n++) {
-                        temp = (Double) jep.evaluate(funcRes[m][n]);
-                        resFiles[m][n].println(temp);
-                        if (contadorGuardarPuntosGraficas_ == guardarPuntoGraficaCada_ || guardarPuntoGraficaCada_ == 0) {
-                            this.epidemia.getResultado(m).anadirPuntoFuncion(temp, n);
-                        }
-                    }
-                    if (contadorGuardarPuntosGraficas_ == guardarPuntoGraficaCada_ || guardarPuntoGraficaCada_ == 0) {
-                        this.epidemia.getResultado(m).anadirPuntoTiempo((i+1)*h_);
-                    }
-                }
-                // 5º Actualizar los parámetros, ya que pueden ser aleatorios:
-                // funciones random, distribuciones probabilísticas, etc.
-                for (int n = 0; n < this.epidemia.getParametros().length; n++) {
-                    temp = (Double) jep.evaluate(funcPars[n]);
-                    jep.addVariable(this.epidemia.getParametro(n).getNombre(), temp);
-                    jepRK4.addVariable(this.epidemia.getParametro(n).getNombre(), temp);
-                }
-            } catch (ParseException pex) {
-                System.err.println("Error dentro del bucle en tiempo = " + (i+1)*h_);
-                pex.printStackTrace();
-                return null;
-            }
-            
-            // Actualizar el archivo del tiempo
-            tiempo_.println((i+1)*h_);
-            
-            // Actualizar barra de estado si toca
-            // (no se hace siempre para no tardar más en actualizar que en simular)
-            if (i % renovarCada_ == 0) {
-                this.setProgress(i, 0, numIteraciones_);
-                this.setMessage("Tiempo transcurrido: " + this.elapsedTime() +
-                        "         Tiempo restante estimado: " + this.estimatedTime(i, numIteraciones_, 1));
-            }
-            if (contadorGuardarPuntosGraficas_ == guardarPuntoGraficaCada_ || guardarPuntoGraficaCada_ == 0) {
-                contadorGuardarPuntosGraficas_ = 0;
-            }
-            contadorGuardarPuntosGraficas_++;
-        }
-        
-        // Cerramos todos los ficheros
-        for (int m = 0; m < resFiles.length; m++) {
-            for (int n = 0; n < resFiles[m].length; n++) {
-                resFiles[m][n].flush();
-                resFiles[m][n].close();
-            }
-        }
-        tiempo_.flush();
-        tiempo_.close();
-        
-        // Los metadatos de los resultados los tiene la epidemia,
-        // los datos están en los archivos
-        return "";  
+    protected void paso(double t, double h) throws ParseException {
+        double[] COMPS1 = this.compartimentos_;
+        /** 
+         * CUERPO del método de Runge-Kutta 4º orden:
+         * X1 = X(t);
+         * derX1 = f(X1, Y1, Z1, ...); -- variables las de antes
+         * X2 = X1 + (h/2)*derX1;
+         * derX2 = f(X2, Y2, Z2, ...); -- variables evaluadas en t+0.5h
+         * X3 = X1 + (h/2)*derX2;
+         * derX3 = f(X3, Y3, Z3, ...); -- variables evaluadas en t+0.5h
+         * X4 = X1 + h*derX3;
+         * derX4 = f(X4, Y4, Z4, ...); -- variables evaluadas en t+h
+         * 
+         * X(t+h) = X1 + (h/6)*(derX1 + 2*derX2 + 2*derX3 + derX4);
+         */
+        // a. X1 = X(t); derX1 = f(X1, Y1, Z1, ...); X2 = X1 + (h/2)*derX1;
+        this.sistema_.derivadas(this.memoria_, this.derCOMPS1);
+        Combinaciones.combinar(this.COMPS2, COMPS1, h/2, this.derCOMPS1);
+        // b. derX2 = f(X2, Y2, Z2, ...); X3 = X1 + (h/2)*derX2;
+        this.sistema_.calcular(t + h/2, this.memoria_, this.COMPS2, this.derCOMPS2);
+        Combinaciones.combinar(this.COMPS3, COMPS1, h/2, this.derCOMPS2);
+        // c. derX3 = f(X3, Y3, Z3, ...); X4 = X1 + h*derX3;
+        this.sistema_.calcular(t + h/2, this.memoria_, this.COMPS3, this.derCOMPS3);
+        Combinaciones.combinar(this.COMPS4, COMPS1, h, this.derCOMPS3);
+        // d. derX4 = f(X4, Y4, Z4, ...);
+        //    X(t+h) = X1 + (h/6)*(derX1 + 2*derX2 + 2*derX3 + derX4);
+        this.sistema_.calcular(t + h, this.memoria_, this.COMPS4, this.derCOMPS4);
+        Combinaciones.combinar(COMPS1, COMPS1, h/6, 1, this.derCOMPS1, 2, this.derCOMPS2, 2, this.derCOMPS3, 1, this.derCOMPS4);
     }
 }
@@ -0,0 +1,186 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+import delphsim.model.Resultado;
+import delphsim.simulation.compilador.Programa;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Destino de los valores que calcula un método de simulación: un archivo
+ * temporal para cada función de cada resultado y otro para el tiempo, y los
+ * puntos que se guardan en los resultados para dibujar sus gráficas (sólo
+ * uno de cada cierto número, para no guardar en memoria toda la simulación).
+ * @author Víctor E. Tamames Gómez
+ */
+final class Salida {
+    
+    /**
+     * La epidemia cuyos resultados se están calculando.
+     */
+    private Epidemia epidemia;
+    
+    /**
+     * Archivo con el instante de tiempo de cada punto calculado.
+     */
+    private PrintWriter tiempo;
+    
+    /**
+     * Archivo de cada función de cada resultado.
+     */
+    private PrintWriter[][] archivos;
+    
+    /**
+     * Programa compilado de cada función de cada resultado.
+     */
+    private Programa[][] funciones;
+    
+    /**
+     * Cada cuántos puntos calculados se guarda uno para las gráficas (0 para
+     * guardarlos todos).
+     */
+    private long guardarCada;
+    
+    /**
+     * Puntos calculados desde el último que se guardó para las gráficas.
+     */
+    private long contador = 1;
+    
+    /**
+     * Puntos calculados hasta ahora, incluido el inicial.
+     */
+    private long numPuntos = 0;
+    
+    /**
+     * Crea los archivos temporales de la epidemia en la carpeta dada y se los
+     * asigna a sus resultados.
+     * @param epidemia La epidemia a simular.
+     * @param carpeta La carpeta de los archivos temporales.
+     * @param puntosPrevistos El número de puntos que se espera calcular, para
+     *                        repartir entre ellos los de las gráficas.
+     * @throws java.io.IOException Si no se pueden crear los archivos.
+     */
+    Salida(Epidemia epidemia, File carpeta, long puntosPrevistos) throws IOException {
+        this.epidemia = epidemia;
+        this.guardarCada = Math.round(puntosPrevistos / Resultado.NUM_PUNTOS_GRAFICAS);
+        String archivoTiempo = carpeta.getAbsolutePath() + File.separator + "tiempo_.temp";
+        this.tiempo = new PrintWriter(new BufferedWriter(new FileWriter(archivoTiempo)));
+        this.archivos = new PrintWriter[epidemia.getResultados().length][];
+        for (int i = 0; i < epidemia.getResultados().length; i++) {
+            epidemia.getResultado(i).setFileTiempo(archivoTiempo);
+            this.archivos[i] = new PrintWriter[epidemia.getResultado(i).getNumFunciones()];
+            for (int j = 0; j < epidemia.getResultado(i).getNumFunciones(); j++) {
+                String f = carpeta.getAbsolutePath() + File.separator + "r" + i + "f" + j + ".temp";
+                this.archivos[i][j] = new PrintWriter(new BufferedWriter(new FileWriter(f)));
+                epidemia.getResultado(i).setFileFuncion(f, j);
+            }
+        }
+    }
+    
+    /**
+     * Escribe el punto inicial (t = 0) de todas las funciones, que se guarda
+     * siempre para las gráficas.
+     * @param funciones El programa de cada función de cada resultado, que
+     *                  también se usará en el resto de puntos.
+     * @param memoria La memoria con los valores iniciales del modelo.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna.
+     */
+    void iniciar(Programa[][] funciones, double[] memoria) throws ParseException {
+        this.funciones = funciones;
+        for (int m = 0; m < this.archivos.length; m++) {
+            for (int n = 0; n < this.archivos[m].length; n++) {
+                double valor = this.funciones[m][n].evaluar(memoria);
+                this.archivos[m][n].println(valor);
+                this.epidemia.getResultado(m).anadirPuntoFuncion(valor, n);
+            }
+            this.epidemia.getResultado(m).anadirPuntoTiempo(0.0d);
+        }
+        this.tiempo.println(0.0d);
+        this.numPuntos = 1;
+    }
+    
+    /**
+     * Escribe un nuevo punto de todas las funciones, y lo guarda para las
+     * gráficas si toca.
+     * @param t El instante del punto.
+     * @param memoria La memoria con los valores del modelo en ese instante.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna.
+     */
+    void anotar(double t, double[] memoria) throws ParseException {
+        boolean grafica = this.contador == this.guardarCada || this.guardarCada == 0;
+        for (int m = 0; m < this.archivos.length; m++) {
+            for (int n = 0; n < this.archivos[m].length; n++) {
+                double valor = this.funciones[m][n].evaluar(memoria);
+                this.archivos[m][n].println(valor);
+                if (grafica) {
+                    this.epidemia.getResultado(m).anadirPuntoFuncion(valor, n);
+                }
+            }
+            if (grafica) {
+                this.epidemia.getResultado(m).anadirPuntoTiempo(t);
+            }
+        }
+        this.tiempo.println(t);
+        if (grafica) {
+            this.contador = 0;
+        }
+        this.contador++;
+        this.numPuntos++;
+    }
+    
+    /**
+     * Marca en todos los resultados un evento ocurrido durante la simulación.
+     * @param nombre El nombre del evento.
+     * @param t El instante en que ha ocurrido.
+     */
+    void marcar(String nombre, double t) {
+        for (int m = 0; m < this.archivos.length; m++) {
+            this.epidemia.getResultado(m).anadirEvento(nombre, t);
+        }
+    }
+    
+    /**
+     * Establece en los resultados cuántos puntos se han calculado y cierra
+     * todos los archivos.
+     */
+    void cerrar() {
+        for (int m = 0; m < this.archivos.length; m++) {
+            this.epidemia.getResultado(m).setNumPuntosTotal(this.numPuntos);
+            for (int n = 0; n < this.archivos[m].length; n++) {
+                this.archivos[m][n].flush();
+                this.archivos[m][n].close();
+            }
+        }
+        this.tiempo.flush();
+        this.tiempo.close();
+    }
+}
@@ -27,19 +27,41 @@ import delphsim.DelphSimApp;
 import delphsim.DelphSimView;
 import delphsim.PreferenciasSimulacion;
 import delphsim.model.Epidemia;
+import delphsim.model.Evento;
+import delphsim.simulation.compilador.Compilador;
+import delphsim.simulation.compilador.Perfil;
+import delphsim.simulation.compilador.Programa;
+import delphsim.simulation.compilador.Sistema;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import org.nfunk.jep.ParseException;
 
 
 /**
  * Esta clase abstracta contiene la estructura de un método de simulación
- * continua genérico, a falta de implementar en <CODE>doInBackground()</CODE>
- * el método numérico que se desee. Puesto que extiende las propiedades de una
+ * continua genérico: la compilación del modelo, la escritura de los
+ * resultados y el informe del progreso. Al método numérico que se desee le
+ * basta con reservar los vectores de sus etapas en <CODE>reservar()</CODE> y
+ * avanzar los compartimentos en <CODE>integrar()</CODE>. Puesto que extiende las propiedades de una
  * tarea (<CODE>Task</CODE>), está pensada para trabajar en paralelo con otras
  * tareas siguiendo los mismos estados que hay definidos para éstas (ver el
  * diagrama de máquinas de estados correspondiente en los documentos de diseño).
@@ -47,6 +69,39 @@ import javax.swing.JOptionPane;
  */
 public abstract class SimulationTask extends org.jdesktop.application.Task<Object, Void> {
 
+    /**
+     * Número de modelos cuyo compilador se guarda entre simulaciones.
+     */
+    private static final int MODELOS_GUARDADOS = 3;
+    
+    /**
+     * Precisión relativa con la que se localiza el instante de un evento, y
+     * número máximo de evaluaciones de su condición para localizarlo.
+     */
+    private static final double PRECISION_EVENTOS = 1.0e-10d;
+    private static final int MAX_EVALUACIONES_EVENTOS = 60;
+
+    /**
+     * Compiladores de los últimos modelos simulados en esta sesión, ya con
+     * todas sus definiciones compiladas, por el resumen del contenido del
+     * modelo. Al volver a simular un modelo sin cambios (aunque cambien el
+     * paso, el tiempo de simulación o el método) se reutiliza su compilador
+     * en lugar de analizar y compilar de nuevo todas sus definiciones. Se
+     * guardan por orden de uso, y se descarta el usado hace más tiempo.
+     */
+    private static final LinkedHashMap<String, Compilador> compiladores
+            = new LinkedHashMap<String, Compilador>(MODELOS_GUARDADOS + 1, 0.75f, true) {
+        /**
+         * Versión de la clase serializable.
+         */
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Compilador> eldest) {
+            return this.size() > MODELOS_GUARDADOS;
+        }
+    };
+
     /**
      * La epidemia que se va a simular.
      */
@@ -58,6 +113,122 @@ public abstract class SimulationTask extends org.jdesktop.application.Task<Objec
      */
     protected double h_;
     
+    /**
+     * Cada cuántos pasos de integración se escribe un punto de los
+     * resultados, según el intervalo de salida de las preferencias (que se
+     * redondea a un múltiplo del paso).
+     */
+    protected long salidaCada_;
+    
+    /**
+     * Tolerancias absoluta y relativa del error para los métodos de paso
+     * variable: las del modelo, o si no tiene, las de las preferencias.
+     */
+    protected double toleranciaAbsoluta_, toleranciaRelativa_;
+    
+    /**
+     * Si se debe generar el código específico del sistema de ecuaciones del
+     * modelo, o basta con evaluar sus definiciones compiladas.
+     */
+    protected boolean generarCodigo_;
+    
+    /**
+     * Donde se mide el tiempo de evaluación de cada definición del modelo, o
+     * null si no se ha pedido medirlo.
+     */
+    protected Perfil perfil_;
+    
+    /**
+     * El sistema de ecuaciones del modelo, que da las derivadas de los
+     * compartimentos y actualiza los atajos y procesos en la memoria.
+     */
+    protected Sistema sistema_;
+    
+    /**
+     * La memoria sobre la que se evalúan las definiciones del modelo.
+     */
+    protected double[] memoria_;
+    
+    /**
+     * El valor actual de cada compartimento, en el orden de la epidemia. El
+     * método lo avanza en cada paso antes de llamar a <CODE>aceptarPaso()</CODE>.
+     */
+    protected double[] compartimentos_;
+    
+    /**
+     * El tiempo total a simular.
+     */
+    protected double tmax_;
+    
+    /**
+     * Los archivos y las gráficas donde se escriben los resultados.
+     */
+    private Salida salida_;
+    
+    /**
+     * El programa compilado de cada parámetro.
+     */
+    private Programa[] funcPars_;
+    
+    /**
+     * La posición de cada parámetro en la memoria.
+     */
+    private int[] posPars_;
+    
+    /**
+     * Si cada parámetro es determinista, y por tanto no se vuelve a evaluar.
+     */
+    private boolean[] fijos_;
+    
+    /**
+     * Cada cuántos pasos se actualiza la barra de estado.
+     */
+    private long renovarCada_;
+    
+    /**
+     * El sistema de ecuaciones visto de tramo en tramo, con los instantes en
+     * que cambia algún proceso.
+     */
+    private SistemaPorTramos tramos_;
+    
+    /**
+     * Los eventos del modelo y el programa compilado de su condición, o null
+     * si el modelo no tiene eventos.
+     */
+    private Evento[] eventos_;
+    private Programa[] condiciones_;
+    
+    /**
+     * El valor de la condición de cada evento al principio y al final del
+     * paso en el que se están buscando, y el instante en que ha ocurrido
+     * cada uno dentro de él (como fracción del paso).
+     */
+    private double[] antesEventos_, despuesEventos_, fraccionesEventos_;
+    
+    /**
+     * Los compartimentos en los extremos del paso en el que se están
+     * buscando eventos, el vector donde se calcula la solución dentro de
+     * él y la solución en el evento terminal.
+     */
+    private double[] inicioPaso_, finPaso_, estadoEvento_, estadoTerminal_;
+    
+    /**
+     * El evento terminal que ha terminado la simulación, o null si no ha
+     * ocurrido ninguno.
+     */
+    private Evento terminal_;
+    
+    /**
+     * El último instante al que ha llegado la simulación.
+     */
+    private double instante_;
+    
+    /**
+     * Resumen del contenido del modelo que se está simulando, con el que se
+     * guarda su compilador, o null si no se ha podido calcular.
+     */
+    private String resumen_;
+    
     /**
      * El mapa de acciones de la interfaz general, para reactivar las opciones
      * desactivadas, prohibidas durante la ejecución de la tarea, una vez que
@@ -123,6 +294,27 @@ public abstract class SimulationTask extends org.jdesktop.application.Task<Objec
         this.grupoVentana = bgroup;
         this.h_ = Double.valueOf(PreferenciasSimulacion.preferencias
                 .get("h", PreferenciasSimulacion.hPorDefecto));
+        double intervaloSalida = Double.valueOf(PreferenciasSimulacion.preferencias
+                .get("intervaloSalida", PreferenciasSimulacion.intervaloSalidaPorDefecto)); // NOI18N
+        this.salidaCada_ = Math.max(1, Math.round(intervaloSalida / this.h_));
+        this.toleranciaAbsoluta_ = epi.getToleranciaAbsoluta();
+        if (this.toleranciaAbsoluta_ <= 0) {
+            this.toleranciaAbsoluta_ = Double.valueOf(PreferenciasSimulacion.preferencias
+                    .get("toleranciaAbsoluta", PreferenciasSimulacion.toleranciaAbsolutaPorDefecto)); // NOI18N
+        }
+        this.toleranciaRelativa_ = epi.getToleranciaRelativa();
+        if (this.toleranciaRelativa_ <= 0) {
+            this.toleranciaRelativa_ = Double.valueOf(PreferenciasSimulacion.preferencias
+                    .get("toleranciaRelativa", PreferenciasSimulacion.toleranciaRelativaPorDefecto)); // NOI18N
+        }
+        this.generarCodigo_ = PreferenciasSimulacion.preferencias
+                .get("generarCodigo", PreferenciasSimulacion.generarCodigoPorDefecto) // NOI18N
+                .equals("si"); // NOI18N
+        if (PreferenciasSimulacion.preferencias
+                .get("perfilar", PreferenciasSimulacion.perfilarPorDefecto) // NOI18N
+                .equals("si")) { // NOI18N
+            this.perfil_ = new Perfil();
+        }
         // Y desactivamos todas las opciones excepto "Detener"
         this.actionMap.get("nuevoModelo").setEnabled(false); // NOI18N
         this.actionMap.get("abrirModelo").setEnabled(false); // NOI18N
@@ -144,15 +336,819 @@ public abstract class SimulationTask extends org.jdesktop.application.Task<Objec
     }
     
     /**
-     * Este método debe sobreescribirlo la clase que hereda implementando su
-     * método numérico para la simulación continua.
-     * @return En realidad no devolverá nada, ya que los resultados se guardan
+     * Constructor de un método que trabaja por cuenta de otra tarea (por
+     * ejemplo, cada uno de los que alterna el método automático): no toca el
+     * GUI, y el estado de la simulación lo recibe de la tarea principal con
+     * <CODE>compartir()</CODE>, en lugar de crearlo en
+     * <CODE>doInBackground()</CODE>.
+     * @param principal La tarea por cuenta de la que trabaja.
+     */
+    SimulationTask(SimulationTask principal) {
+        super(principal.getApplication());
+        this.epidemia = principal.epidemia;
+    }
+    
+    /**
+     * El código de la tarea, común a todos los métodos. Crea los archivos
+     * temporales de salida, comprueba que todos los elementos del modelo se
+     * hayan definido y los compila, escribe el primer punto de los resultados
+     * y deja que el método realice la simulación con <CODE>integrar()</CODE>.
+     * Este método corre en un hilo en background, así que no hay que
+     * referenciar al GUI de Swing.
+     * @return En realidad no devuelve nada, ya que los resultados se guardan
      *         en los objetos correspondientes del paquete <CODE>model</CODE>.
      * @throws java.io.IOException Si hay algún problema al escribir los valores
      *                             calculados en disco duro.
      */
     @Override
-    protected abstract Object doInBackground() throws IOException;
+    protected Object doInBackground() throws IOException {
+        this.setMessage("Comprobando que todos los elementos hayan sido definidos...");
+        
+        /*******************************************************
+         * CREAR UN FICHERO TEMPORAL PARA CADA FUNCION DE CADA *
+         * RESULTADO Y OTRO PARA EL TIEMPO                     *
+         *******************************************************/
+        File rutaTemp = new File(new File(System.getProperty("java.class.path")).getParent() + File.separator + "temp");
+        if (!rutaTemp.exists()) {
+            if (!rutaTemp.mkdir()) {
+                this.setMessage("No se pueden guardar los archivos temporales.");
+            }
+        }
+        // Nota, máximos soportados: segundos -> 8 meses, minutos -> 40 años, días -> 2400 años
+        this.tmax_ = this.epidemia.getTiempoSimulacion();
+        this.salida_ = new Salida(this.epidemia, rutaTemp, Math.round(this.tmax_ / this.h_) / this.salidaCada_);
+        
+        // Compilar todo el modelo, avisando del primer elemento incorrecto
+        if (!this.compilarModelo()) {
+            return null;
+        }
+        // Los métodos terminan un paso en cada cambio de tramo de los procesos
+        this.tramos_ = new SistemaPorTramos(this.sistema_, this.epidemia, this.tmax_);
+        this.sistema_ = this.tramos_;
+        this.reservar(this.compartimentos_.length);
+        this.renovarCada_ = Math.max(1, Math.round(1 / this.h_));
+        
+        if (this.eventos_ != null) {
+            this.estadoEvento_ = new double[this.compartimentos_.length];
+            this.estadoTerminal_ = new double[this.compartimentos_.length];
+        }
+        
+        this.setMessage("Iniciando simulación...");
+        this.tiempoComienzo = System.currentTimeMillis();
+        try {
+            this.integrar();
+        } catch (ParseException pex) {
+            System.err.println("Error dentro del bucle en tiempo = " + this.instante_);
+            pex.printStackTrace();
+            return null;
+        }
+        
+        // Cerramos todos los ficheros
+        this.salida_.cerrar();
+        
+        // Los metadatos de los resultados los tiene la epidemia,
+        // los datos están en los archivos
+        return "";
+    }
+    
+    /**
+     * El método debe reservar aquí los vectores de todas sus etapas, para no
+     * tener que crear ninguno durante la simulación.
+     * @param n El número de compartimentos del modelo.
+     */
+    protected abstract void reservar(int n);
+    
+    /**
+     * Este método debe sobreescribirlo la clase que hereda implementando su
+     * método numérico para la simulación continua: avanzar desde t = 0 hasta
+     * <CODE>tmax_</CODE> los valores de <CODE>compartimentos_</CODE> con las
+     * derivadas que da <CODE>sistema_</CODE>, llamando a
+     * <CODE>aceptarPaso()</CODE> tras cada paso, y parar si la tarea se
+     * cancela. Los resultados se escriben cada <CODE>salidaCada_</CODE>
+     * pasos de integración y al final, sea cual sea el paso del método.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected abstract void integrar() throws ParseException;
+    
+    /**
+     * Termina un paso del método, una vez calculados los nuevos valores de
+     * los compartimentos: actualiza los atajos y los procesos, escribe los
+     * resultados y actualiza los parámetros aleatorios.
+     * @param t El instante al que se ha llegado.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected final void aceptarPaso(double t) throws ParseException {
+        this.aceptarPaso(t, true);
+    }
+    
+    /**
+     * Termina un paso del método como el anterior, pero escribiendo los
+     * resultados sólo si toca.
+     * @param t El instante al que se ha llegado.
+     * @param anotar Si <CODE>t</CODE> es un punto de los resultados.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected final void aceptarPaso(double t, boolean anotar) throws ParseException {
+        this.instante_ = t;
+        // 2º y 3º Actualizar variables de los atajos y de los procesos
+        this.sistema_.auxiliares(t, this.memoria_, this.compartimentos_);
+        // 4º Calcular los nuevos valores de los resultados y escribir
+        if (anotar) {
+            this.salida_.anotar(t, this.memoria_);
+        }
+        // 5º Actualizar los parámetros aleatorios: funciones random,
+        // distribuciones probabilísticas, etc.
+        this.actualizarAleatorios();
+    }
+    
+    /**
+     * Escribe un punto de los resultados, actualizando antes los atajos y los
+     * procesos, pero sin actualizar los parámetros aleatorios. Es para los
+     * métodos que interpolan, que pueden escribir varios puntos en un paso o
+     * ninguno: los parámetros se actualizan al final de cada paso, con
+     * <CODE>actualizarAleatorios()</CODE>.
+     * @param t El instante del punto, en que están los compartimentos.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected final void escribirPunto(double t) throws ParseException {
+        this.instante_ = t;
+        this.sistema_.auxiliares(t, this.memoria_, this.compartimentos_);
+        this.salida_.anotar(t, this.memoria_);
+    }
+    
+    /**
+     * Actualiza los parámetros aleatorios del modelo, una vez por paso.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected final void actualizarAleatorios() throws ParseException {
+        for (int n = 0; n < this.funcPars_.length; n++) {
+            if (!this.fijos_[n]) {
+                this.memoria_[this.posPars_[n]] = this.funcPars_[n].evaluar(this.memoria_);
+            }
+        }
+    }
+    
+    /**
+     * Devuelve el siguiente instante en que algún proceso cambia de tramo.
+     * El método debe terminar un paso justo en él, llamar entonces a
+     * <CODE>cruzarCambio()</CODE> y empezar el siguiente paso de nuevo, sin
+     * aprovechar nada del anterior: hasta que no se cruza, el modelo se
+     * evalúa en ese instante con los tramos anteriores al cambio.
+     * @return El instante del cambio, o infinito si no quedan más.
+     */
+    protected final double siguienteCambio() {
+        return this.tramos_.limite();
+    }
+    
+    /**
+     * Da por cruzado el siguiente cambio de tramo, una vez que la solución
+     * ha llegado a él.
+     */
+    protected final void cruzarCambio() {
+        this.tramos_.cruzar();
+    }
+    
+    /**
+     * Da por cruzados todos los cambios de tramo hasta un instante, incluido,
+     * para empezar a integrar desde él una parte de la simulación.
+     * @param t El instante.
+     */
+    protected final void situar(double t) {
+        this.tramos_.situar(t);
+    }
+    
+    /**
+     * Actualiza los atajos y los procesos en un instante, sin escribir
+     * resultados, para continuar desde él (tras cruzar un cambio de tramo
+     * que no coincide con un punto de los resultados).
+     * @param t El instante en que están los compartimentos.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected final void reanudar(double t) throws ParseException {
+        this.sistema_.auxiliares(t, this.memoria_, this.compartimentos_);
+    }
+    
+    /**
+     * Indica si el modelo tiene eventos, es decir, si el método tiene que
+     * llamar a <CODE>comprobarEventos()</CODE> tras cada paso.
+     * @return Si hay eventos.
+     */
+    protected final boolean hayEventos() {
+        return this.eventos_ != null;
+    }
+    
+    /**
+     * Busca los eventos del modelo en el paso que acaba de dar el método,
+     * antes de aceptarlo: evalúa la condición de cada evento al final del
+     * paso y, si ha cruzado por cero en su sentido, localiza el instante en
+     * que lo hizo y lo marca en los resultados. Si alguno es terminal, la
+     * simulación termina en el primero de ellos: los eventos posteriores del
+     * paso ya no se marcan, la solución en ese instante queda en
+     * <CODE>estadoTerminal()</CODE> y el método debe aceptarla como último
+     * punto y parar. Los extremos del paso no se modifican, así que el
+     * método puede seguir interpolando en él los puntos anteriores.
+     * @param t0 El instante en que empieza el paso.
+     * @param x0 Los compartimentos al principio del paso.
+     * @param t1 El instante en que termina el paso.
+     * @param x1 Los compartimentos al final del paso.
+     * @return El instante hasta el que vale el paso: <CODE>t1</CODE>, o el
+     *         del evento terminal si la simulación debe terminar.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    protected final double comprobarEventos(double t0, double[] x0, double t1, double[] x1) throws ParseException {
+        if (this.eventos_ == null) {
+            return t1;
+        }
+        this.inicioPaso_ = x0;
+        this.finPaso_ = x1;
+        // Primero todas las condiciones al final del paso, porque localizar
+        // un evento cambia la memoria
+        this.sistema_.auxiliares(t1, this.memoria_, x1);
+        boolean alguno = false;
+        for (int i = 0; i < this.eventos_.length; i++) {
+            this.despuesEventos_[i] = this.condiciones_[i].evaluar(this.memoria_);
+            alguno |= this.eventos_[i].ocurre(this.antesEventos_[i], this.despuesEventos_[i]);
+        }
+        if (alguno) {
+            // Se localizan todos y la simulación termina en el primer terminal
+            double fin = 1.0d;
+            for (int i = 0; i < this.eventos_.length; i++) {
+                this.fraccionesEventos_[i] = Double.NaN;
+                if (this.eventos_[i].ocurre(this.antesEventos_[i], this.despuesEventos_[i])) {
+                    this.fraccionesEventos_[i] = this.localizar(i, t0, t1);
+                    if (this.eventos_[i].isTerminal() && 
+                            (this.terminal_ == null || this.fraccionesEventos_[i] < fin)) {
+                        this.terminal_ = this.eventos_[i];
+                        fin = this.fraccionesEventos_[i];
+                    }
+                }
+            }
+            for (int i = 0; i < this.eventos_.length; i++) {
+                if (this.fraccionesEventos_[i] <= fin) {
+                    this.salida_.marcar(this.eventos_[i].getNombre(), t0 + this.fraccionesEventos_[i]*(t1 - t0));
+                }
+            }
+            if (this.terminal_ != null) {
+                if (fin < 1.0d) {
+                    this.interpolarPaso(this.estadoTerminal_, fin);
+                    return t0 + fin*(t1 - t0);
+                }
+                System.arraycopy(x1, 0, this.estadoTerminal_, 0, x1.length);
+                return t1;
+            }
+        }
+        double[] valores = this.antesEventos_;
+        this.antesEventos_ = this.despuesEventos_;
+        this.despuesEventos_ = valores;
+        return t1;
+    }
+    
+    /**
+     * Indica si la simulación ha terminado por un evento terminal, en el
+     * último paso que ha comprobado <CODE>comprobarEventos()</CODE>.
+     * @return Si el método debe parar.
+     */
+    protected final boolean terminada() {
+        return this.terminal_ != null;
+    }
+    
+    /**
+     * Devuelve la solución en el instante del evento terminal, si la
+     * simulación ha terminado por uno.
+     * @return El valor de los compartimentos en el evento.
+     */
+    protected final double[] estadoTerminal() {
+        return this.estadoTerminal_;
+    }
+    
+    /**
+     * Calcula la solución dentro del paso en el que se están buscando
+     * eventos. Por defecto interpola linealmente entre sus extremos, lo que
+     * basta con los pasos cortos de los métodos de paso fijo; los métodos que
+     * saben interpolar su solución la sobreescriben para usarla.
+     * @param x Donde se deja el valor de los compartimentos.
+     * @param theta La fracción del paso transcurrida hasta el instante.
+     */
+    protected void interpolarPaso(double[] x, double theta) {
+        for (int n = 0; n < x.length; n++) {
+            x[n] = this.inicioPaso_[n] + theta*(this.finPaso_[n] - this.inicioPaso_[n]);
+        }
+    }
+    
+    /**
+     * Localiza el instante en que la condición de un evento cruza por cero
+     * dentro del paso, con el método de Illinois (regula falsi que divide a
+     * la mitad el valor del extremo que se repite, para no quedarse
+     * atascado en él).
+     * @param i El índice del evento.
+     * @param t0 El instante en que empieza el paso.
+     * @param t1 El instante en que termina el paso.
+     * @return La fracción del paso en la que ya ha ocurrido el evento.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    private double localizar(int i, double t0, double t1) throws ParseException {
+        double a = 0.0d, b = 1.0d;
+        double ga = this.antesEventos_[i], gb = this.despuesEventos_[i];
+        double precision = PRECISION_EVENTOS * Math.max(1.0d, Math.abs(t1)) / (t1 - t0);
+        int lado = 0;
+        for (int k = 0; k < MAX_EVALUACIONES_EVENTOS && b - a > precision; k++) {
+            double c = (a*gb - b*ga) / (gb - ga);
+            if (!(c > a && c < b)) {
+                c = (a + b) / 2;
+            }
+            this.interpolarPaso(this.estadoEvento_, c);
+            this.sistema_.auxiliares(t0 + c*(t1 - t0), this.memoria_, this.estadoEvento_);
+            double gc = this.condiciones_[i].evaluar(this.memoria_);
+            if (ga > 0 ? gc > 0 : gc < 0) {
+                // Aún no ha ocurrido
+                a = c;
+                ga = gc;
+                if (lado == -1) {
+                    gb /= 2;
+                }
+                lado = -1;
+            } else {
+                b = c;
+                gb = gc;
+                if (lado == 1) {
+                    ga /= 2;
+                }
+                lado = 1;
+            }
+        }
+        return b;
+    }
+    
+    /**
+     * Indica si todos los parámetros del modelo son deterministas, es decir,
+     * si <CODE>aceptarPaso()</CODE> y <CODE>actualizarAleatorios()</CODE> no
+     * cambian ninguno.
+     * @return Si no hay parámetros aleatorios.
+     */
+    protected final boolean parametrosFijos() {
+        for (int n = 0; n < this.fijos_.length; n++) {
+            if (!this.fijos_[n]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Comparte con un método creado con <CODE>SimulationTask(principal)</CODE>
+     * el estado de la simulación de esta tarea: el modelo compilado, su
+     * memoria, los compartimentos, el paso, las tolerancias y los parámetros
+     * fijos. Después se le puede llamar a <CODE>reservar()</CODE>.
+     * @param metodo El método que trabaja por cuenta de esta tarea.
+     */
+    protected final void compartir(SimulationTask metodo) {
+        metodo.sistema_ = this.sistema_;
+        metodo.memoria_ = this.memoria_;
+        metodo.compartimentos_ = this.compartimentos_;
+        metodo.tmax_ = this.tmax_;
+        metodo.h_ = this.h_;
+        metodo.salidaCada_ = this.salidaCada_;
+        metodo.toleranciaAbsoluta_ = this.toleranciaAbsoluta_;
+        metodo.toleranciaRelativa_ = this.toleranciaRelativa_;
+        metodo.fijos_ = this.fijos_;
+    }
+    
+    /**
+     * Como <CODE>compartir()</CODE>, pero el método recibe su propia copia
+     * del sistema (con sus tramos), de la memoria y de los compartimentos,
+     * para que pueda integrar en otro hilo a la vez que esta tarea.
+     * @param metodo El método que trabaja por cuenta de esta tarea.
+     */
+    protected final void independizar(SimulationTask metodo) {
+        this.compartir(metodo);
+        metodo.tramos_ = (SistemaPorTramos) this.tramos_.copiar();
+        metodo.sistema_ = metodo.tramos_;
+        metodo.memoria_ = this.memoria_.clone();
+        metodo.compartimentos_ = this.compartimentos_.clone();
+    }
+    
+    /**
+     * Actualiza la barra de estado de un método de paso fijo, si toca (no se
+     * hace siempre para no tardar más en actualizar que en simular).
+     * @param i La iteración actual, empezando en 0.
+     * @param numIteraciones El número total de iteraciones.
+     */
+    protected final void informarProgreso(long i, long numIteraciones) {
+        if (i % this.renovarCada_ == 0) {
+            this.setProgress(i, 0, numIteraciones);
+            this.setMessage("Tiempo transcurrido: " + this.elapsedTime() +
+                    "         Tiempo restante estimado: " + this.estimatedTime(i, numIteraciones, 1));
+        }
+    }
+    
+    /**
+     * Actualiza la barra de estado de un método de paso variable, si toca,
+     * según el instante al que se ha llegado.
+     * @param numPaso El número de pasos aceptados antes de éste.
+     * @param t El instante al que se ha llegado.
+     */
+    protected final void informarInstante(long numPaso, double t) {
+        if (numPaso % this.renovarCada_ == 0) {
+            // El último paso puede pasarse del tiempo de simulación
+            float porcentaje_ = Float.valueOf(Double.toString(Math.min(1.0d, t/this.tmax_)));
+            this.setProgress(porcentaje_);
+            this.setMessage("Tiempo transcurrido: " + this.elapsedTime() +
+                    "         Tiempo restante estimado: " + this.estimatedTime(t, this.tmax_));
+        }
+    }
+    
+    /**
+     * Comprueba y compila todas las definiciones del modelo, en el orden en
+     * que dependen unas de otras, calcula los valores iniciales y escribe el
+     * primer punto de los resultados. Si algún elemento es incorrecto o falta
+     * por definir, avisa con <CODE>failed()</CODE>.
+     * @return Si todo el modelo es correcto.
+     */
+    private boolean compilarModelo() {
+        /*************************************
+         * CÓDIGO DE DEFINICIÓN DE VARIABLES *
+         *************************************/
+        // Compilador de las definiciones (el de la simulación anterior, si el
+        // modelo no ha cambiado) y memoria sobre la que se evalúan
+        Compilador compilador = this.obtenerCompilador();
+        double[] memoria = new double[0];
+        Programa programa;
+        int posicion;
+        int indice = 0;
+        
+        /**********************************************************************
+         * Definimos tantas variables locales como funciones analizadas vamos *
+         * a tener que guardar para no tener que volver a analizarlas.        *
+         **********************************************************************/
+        // Para cada parámetro, cada compartimento, cada atajo y cada función
+        // de cada resultado. Para cada proceso no, porque pueden ir por tramos.
+        Programa[] funcPars = new Programa[this.epidemia.getParametros().length];
+        Programa[] funcComps = new Programa[this.epidemia.getCompartimentos().length];
+        Programa[] funcAtajos = new Programa[this.epidemia.getAtajos().length];
+        Programa[][] funcRes = new Programa[this.epidemia.getResultados().length][];
+        // Y la posición de la memoria de cada parámetro y cada compartimento,
+        // para no tener que buscarla por su nombre durante la simulación
+        int[] posPars = new int[this.epidemia.getParametros().length];
+        int[] posComps = new int[this.epidemia.getCompartimentos().length];
+        // Los parámetros deterministas se fijan al compilarlos y ya no se
+        // vuelven a evaluar; sólo los aleatorios se actualizan en cada paso
+        boolean[] fijos = new boolean[this.epidemia.getParametros().length];
+        for (int i = 0; i < this.epidemia.getResultados().length; i++) {
+            funcRes[i] = new Programa[this.epidemia.getResultado(i).getNumFunciones()];
+        }
+        
+        // 1º - Parámetros, ya que sólo dependen de parámetros anteriores
+        try {
+            for (int i = 0; i < this.epidemia.getParametros().length; i++) {
+                indice = i;
+                funcPars[i] = this.medir(compilador.compilar(this.epidemia.getParametro(i).getDefinicionContinua()),
+                        "Parámetro", this.epidemia.getParametro(i).getNombre());
+                posPars[i] = compilador.declarar(this.epidemia.getParametro(i).getNombre());
+                memoria = compilador.ajustarMemoria(memoria);
+                memoria[posPars[i]] = funcPars[i].evaluar(memoria);
+                fijos[i] = compilador.fijar(posPars[i], funcPars[i], memoria[posPars[i]]);
+            }
+        } catch (ParseException pex) {
+            this.failed(new Exception(String.format("<html>Definición incorrecta del parámetro <b>%s</b></html>", 
+                    this.epidemia.getParametro(indice).getNombre()), pex));
+            return false;
+        } catch (NullPointerException npex) {
+            this.failed(new Exception(String.format("<html>Falta por definir el parámetro <b>%s</b></html>", 
+                    this.epidemia.getParametro(indice).getNombre()), npex));
+            return false;
+        }
+        // 2º - Condiciones Iniciales de los Compartimentos -> Números
+        try {
+            for (int i = 0; i < this.epidemia.getCompartimentos().length; i++) {
+                indice = i;
+                programa = compilador.compilar(
+                        String.valueOf(this.epidemia.getCompartimento(i).getHabitantes())
+                        );
+                posComps[i] = compilador.declarar(this.epidemia.getCompartimento(i).getNombre());
+                memoria = compilador.ajustarMemoria(memoria);
+                memoria[posComps[i]] = programa.evaluar(memoria);
+            }
+        } catch (ParseException pex) {
+            this.failed(new Exception(String.format(
+                    "<html>Número de personas inicial incorrecto del compartimento <b>%s</b></html>", 
+                    this.epidemia.getCompartimento(indice).getNombre()), pex));
+            return false;
+        } catch (NullPointerException npex) {
+            this.failed(new Exception(String.format(
+                    "<html>Falta por definir el número de personas inicial del compartimento <b>%s</b></html>", 
+                    this.epidemia.getCompartimento(indice).getNombre()), npex));
+            return false;
+        }
+        // 3º - Atajos, que sólo dependen de los compartimentos (2)
+        try {
+            for (int i = 0; i < this.epidemia.getAtajos().length; i++) {
+                indice = i;
+                funcAtajos[i] = compilador.compilar(this.epidemia.getAtajo(i).getDefinicionContinua());
+                posicion = compilador.declarar(this.epidemia.getAtajo(i).getNombre());
+                memoria = compilador.ajustarMemoria(memoria);
+                memoria[posicion] = funcAtajos[i].evaluar(memoria);
+            }
+        } catch (ParseException pex) {
+            this.failed(new Exception(String.format("<html>Definición incorrecta del atajo <b>%s</b></html>", 
+                    this.epidemia.getAtajo(indice).getNombre()), pex));
+            return false;
+        } catch (NullPointerException npex) {
+            this.failed(new Exception(String.format("<html>Falta por definir el atajo <b>%s</b></html>", 
+                    this.epidemia.getAtajo(indice).getNombre()), npex));
+            return false;
+        }
+        // 4º - Procesos, dependen de los parámetros (1), compartimentos (2), atajos (3)
+        // y procesos anteriores. Nota: se coge el primer tramo (primero bien <-> todos bien)
+        try {
+            for (int i = 0; i < this.epidemia.getProcesos().length; i++) {
+                indice = i;
+                programa = compilador.compilar(
+                        this.epidemia.getProceso(i).getDefinicionContinua(0.0)
+                        );
+                posicion = compilador.declarar(this.epidemia.getProceso(i).getNombre());
+                memoria = compilador.ajustarMemoria(memoria);
+                memoria[posicion] = programa.evaluar(memoria);
+            }
+            // Una vez declarados todos los procesos, se compilan también los
+            // demás tramos, para que durante la simulación no haya que analizar
+            for (int i = 0; i < this.epidemia.getProcesos().length; i++) {
+                indice = i;
+                for (int j = 0; j < this.epidemia.getProceso(i).getTramosContinua().length; j++) {
+                    compilador.compilar(this.epidemia.getProceso(i).getTramoContinua(j).getDefinicionContinua());
+                }
+            }
+            memoria = compilador.ajustarMemoria(memoria);
+        } catch (ParseException pex) {
+            this.failed(new Exception(String.format("<html>Definición incorrecta del proceso <b>%s</b></html>", 
+                    this.epidemia.getProceso(indice).getNombre()), pex));
+            return false;
+        } catch (Exception ex) {
+            // Un poco decisión salomónica coger TODAS las demás excepciones, pero así va bien
+            this.failed(new Exception(String.format("<html>Falta por definir el proceso <b>%s</b></html>", 
+                    this.epidemia.getProceso(indice).getNombre()), ex.getCause()));
+            return false;
+        }
+        // 5º - Compartimentos, su definición. Ahora no es necesaria, pero hay
+        // que comprobarla y de paso también queda analizada.
+        // Dependen de parámetros (1), compartimentos (2), atajos (3) y procesos (4).
+        try {
+            for (int i = 0; i < this.epidemia.getCompartimentos().length; i++) {
+                indice = i;
+                funcComps[i] = compilador.compilar(this.epidemia.getCompartimento(i).getDefinicionContinua());
+                memoria = compilador.ajustarMemoria(memoria);
+                funcComps[i].evaluar(memoria);
+            }
+        } catch (ParseException pex) {
+            this.failed(new Exception(String.format(
+                    "<html>Definición incorrecta del compartimento <b>%s</b></html>", 
+                    this.epidemia.getCompartimento(indice).getNombre()), pex));
+            return false;
+        } catch (NullPointerException npex) {
+            this.failed(new Exception(String.format(
+                    "<html>Falta por definir el compartimento <b>%s</b></html>", 
+                    this.epidemia.getCompartimento(indice).getNombre()), npex));
+            return false;
+        }
+        // 6º - Escribir ya el primer elemento de los resultados
+        try {
+            for (int m = 0; m < funcRes.length; m++) {
+                indice = m;
+                for (int n = 0; n < funcRes[m].length; n++) {
+                    funcRes[m][n] = this.medir(compilador.compilar(this.epidemia.getResultado(m).getFuncion(n)[1].toString()),
+                            "Resultado", this.epidemia.getResultado(m).getTitulo() + ": " + this.epidemia.getResultado(m).getFuncion(n)[0]);
+                }
+            }
+            memoria = compilador.ajustarMemoria(memoria);
+            this.salida_.iniciar(funcRes, memoria);
+        } catch (ParseException pex) {
+            // Nota: esto no debería pasar nunca
+            this.failed(new Exception(String.format(
+                    "<html>Ha fallado el cálculo de uno de los resultados</html>", 
+                    this.epidemia.getResultado(indice).getTitulo()), pex));
+            return false;
+        } catch (NullPointerException npex) {
+            // Nota: esto no debería pasar nunca
+            this.failed(new Exception(String.format(
+                    "<html>Falta por definir uno de los resultados</html>", 
+                    this.epidemia.getResultado(indice).getTitulo()), npex));
+            return false;
+        }
+        
+        
+        // 7º - Condiciones de los eventos, que dependen de lo mismo que los
+        // resultados; su valor inicial es el de partida para detectarlos
+        if (this.epidemia.getEventos().length > 0) {
+            Evento[] eventos = this.epidemia.getEventos();
+            Programa[] condiciones = new Programa[eventos.length];
+            double[] valores = new double[eventos.length];
+            try {
+                for (int i = 0; i < eventos.length; i++) {
+                    indice = i;
+                    condiciones[i] = this.medir(compilador.compilar(eventos[i].getDefinicionContinua()),
+                            "Evento", eventos[i].getNombre());
+                    memoria = compilador.ajustarMemoria(memoria);
+                    valores[i] = condiciones[i].evaluar(memoria);
+                }
+            } catch (ParseException pex) {
+                this.failed(new Exception(String.format("<html>Condición incorrecta del evento <b>%s</b></html>", 
+                        eventos[indice].getNombre()), pex));
+                return false;
+            } catch (NullPointerException npex) {
+                this.failed(new Exception(String.format("<html>Falta por definir la condición del evento <b>%s</b></html>", 
+                        eventos[indice].getNombre()), npex));
+                return false;
+            }
+            this.eventos_ = eventos;
+            this.condiciones_ = condiciones;
+            this.antesEventos_ = valores;
+            this.despuesEventos_ = new double[eventos.length];
+            this.fraccionesEventos_ = new double[eventos.length];
+        }
+        // Sistema de ecuaciones del modelo y valores iniciales de los compartimentos
+        this.sistema_ = compilador.crearSistema(this.epidemia, this.generarCodigo_, this.perfil_);
+        this.guardarCompilador(compilador);
+        this.compartimentos_ = new double[posComps.length];
+        for (int n = 0; n < posComps.length; n++) {
+            this.compartimentos_[n] = memoria[posComps[n]];
+        }
+        this.memoria_ = memoria;
+        this.funcPars_ = funcPars;
+        this.posPars_ = posPars;
+        this.fijos_ = fijos;
+        return true;
+    }
+    
+    /**
+     * Devuelve el programa que deben evaluar los métodos para una definición
+     * del modelo: el mismo, o uno que mide sus evaluaciones si se ha pedido
+     * medirlas.
+     * @param programa El programa compilado de la definición.
+     * @param tipo El tipo de definición, para el informe.
+     * @param nombre El nombre de la definición, para el informe.
+     * @return El programa a evaluar.
+     */
+    protected Programa medir(Programa programa, String tipo, String nombre) {
+        return this.perfil_ == null ? programa : this.perfil_.medir(programa, tipo, nombre);
+    }
+    
+    /**
+     * Devuelve el compilador con el que el método debe compilar el modelo. Si
+     * el mismo modelo se ha simulado antes en esta sesión, es el compilador de
+     * entonces, que ya tiene compiladas todas las definiciones; si no, es uno
+     * nuevo, con las definiciones ya analizadas (véase <CODE>preparar()</CODE>).
+     * Mientras el método lo usa, el compilador sale de los guardados, así que
+     * otra simulación simultánea del mismo modelo usará uno nuevo.
+     * @return El compilador.
+     */
+    protected Compilador obtenerCompilador() {
+        this.resumen_ = resumir(this.epidemia);
+        Compilador compilador = null;
+        if (this.resumen_ != null) {
+            synchronized (compiladores) {
+                compilador = compiladores.remove(this.resumen_);
+            }
+        }
+        if (compilador != null) {
+            compilador.reutilizar();
+        } else {
+            compilador = new Compilador();
+            this.preparar(compilador);
+        }
+        return compilador;
+    }
+    
+    /**
+     * Guarda el compilador del modelo, una vez compiladas todas sus
+     * definiciones y creado su sistema de ecuaciones, para las siguientes
+     * simulaciones del mismo modelo en esta sesión.
+     * @param compilador El compilador obtenido con <CODE>obtenerCompilador()</CODE>.
+     */
+    protected void guardarCompilador(Compilador compilador) {
+        if (this.resumen_ != null) {
+            synchronized (compiladores) {
+                compiladores.put(this.resumen_, compilador);
+            }
+        }
+    }
+    
+    /**
+     * Calcula un resumen (SHA-1) de todo lo que interviene en la compilación
+     * de un modelo: nombres y definiciones de parámetros, compartimentos (con
+     * su número inicial de personas), atajos, procesos (con el inicio de cada
+     * tramo), las funciones de los resultados y las condiciones de los
+     * eventos.
+     * @param epidemia El modelo.
+     * @return El resumen, en hexadecimal, o null si no se puede calcular.
+     */
+    private static String resumir(Epidemia epidemia) {
+        try {
+            MessageDigest resumen = MessageDigest.getInstance("SHA-1");
+            for (int i = 0; i < epidemia.getParametros().length; i++) {
+                anadir(resumen, "P" + epidemia.getParametro(i).getNombre());
+                anadir(resumen, epidemia.getParametro(i).getDefinicionContinua());
+            }
+            for (int i = 0; i < epidemia.getCompartimentos().length; i++) {
+                anadir(resumen, "C" + epidemia.getCompartimento(i).getNombre());
+                anadir(resumen, String.valueOf(epidemia.getCompartimento(i).getHabitantes()));
+                anadir(resumen, epidemia.getCompartimento(i).getDefinicionContinua());
+            }
+            for (int i = 0; i < epidemia.getAtajos().length; i++) {
+                anadir(resumen, "A" + epidemia.getAtajo(i).getNombre());
+                anadir(resumen, epidemia.getAtajo(i).getDefinicionContinua());
+            }
+            for (int i = 0; i < epidemia.getProcesos().length; i++) {
+                anadir(resumen, "T" + epidemia.getProceso(i).getNombre());
+                if (epidemia.getProceso(i).getTramosContinua() != null) {
+                    for (int j = 0; j < epidemia.getProceso(i).getTramosContinua().length; j++) {
+                        anadir(resumen, String.valueOf(epidemia.getProceso(i).getTramoContinua(j).getTiempoInicio()));
+                        anadir(resumen, epidemia.getProceso(i).getTramoContinua(j).getDefinicionContinua());
+                    }
+                }
+            }
+            for (int i = 0; i < epidemia.getResultados().length; i++) {
+                anadir(resumen, "R");
+                for (int j = 0; j < epidemia.getResultado(i).getNumFunciones(); j++) {
+                    anadir(resumen, String.valueOf(epidemia.getResultado(i).getFuncion(j)[1]));
+                }
+            }
+            for (int i = 0; i < epidemia.getEventos().length; i++) {
+                anadir(resumen, "E");
+                anadir(resumen, epidemia.getEvento(i).getDefinicionContinua());
+            }
+            return new BigInteger(1, resumen.digest()).toString(16);
+        } catch (NoSuchAlgorithmException ex) {
+            return null;
+        } catch (UnsupportedEncodingException ex) {
+            return null;
+        }
+    }
+    
+    /**
+     * Añade un texto al resumen, seguido de un separador para que no se
+     * confunda con la concatenación de otros textos.
+     * @param resumen El resumen que se está calculando.
+     * @param texto El texto, o null.
+     * @throws java.io.UnsupportedEncodingException Nunca, pues UTF-8 existe
+     *                                              siempre.
+     */
+    private static void anadir(MessageDigest resumen, String texto) throws UnsupportedEncodingException {
+        if (texto != null) {
+            resumen.update(texto.getBytes("UTF-8"));
+        }
+        resumen.update((byte) (texto == null ? 1 : 0));
+    }
+    
+    /**
+     * Analiza por adelantado, repartiéndolas entre varios hilos, todas las
+     * definiciones del modelo que el método va a compilar: parámetros,
+     * atajos, tramos de los procesos, compartimentos, funciones de los
+     * resultados y condiciones de los eventos. Después el método las compila y evalúa en su orden, como
+     * siempre, pero sin tener que analizarlas.
+     * @param compilador El compilador con el que se van a compilar.
+     */
+    protected void preparar(Compilador compilador) {
+        Vector definiciones = new Vector();
+        for (int i = 0; i < this.epidemia.getParametros().length; i++) {
+            definiciones.add(this.epidemia.getParametro(i).getDefinicionContinua());
+        }
+        for (int i = 0; i < this.epidemia.getAtajos().length; i++) {
+            definiciones.add(this.epidemia.getAtajo(i).getDefinicionContinua());
+        }
+        for (int i = 0; i < this.epidemia.getProcesos().length; i++) {
+            if (this.epidemia.getProceso(i).getTramosContinua() != null) {
+                for (int j = 0; j < this.epidemia.getProceso(i).getTramosContinua().length; j++) {
+                    definiciones.add(this.epidemia.getProceso(i).getTramoContinua(j).getDefinicionContinua());
+                }
+            }
+        }
+        for (int i = 0; i < this.epidemia.getCompartimentos().length; i++) {
+            definiciones.add(this.epidemia.getCompartimento(i).getDefinicionContinua());
+        }
+        for (int i = 0; i < this.epidemia.getResultados().length; i++) {
+            for (int j = 0; j < this.epidemia.getResultado(i).getNumFunciones(); j++) {
+                Object funcion = this.epidemia.getResultado(i).getFuncion(j)[1];
+                if (funcion != null) {
+                    definiciones.add(funcion.toString());
+                }
+            }
+        }
+        for (int i = 0; i < this.epidemia.getEventos().length; i++) {
+            if (this.epidemia.getEvento(i).getDefinicionContinua() != null) {
+                definiciones.add(this.epidemia.getEvento(i).getDefinicionContinua());
+            }
+        }
+        String[] array = new String[definiciones.size()];
+        definiciones.toArray(array);
+        compilador.preparar(array);
+    }
     
     /**
      * Actualiza el GUI en base a los resultados obtenidos en doInBackground().
@@ -167,8 +1163,13 @@ public abstract class SimulationTask extends org.jdesktop.application.Task<Objec
         if (result == null) {
             return;
         }
-        // Colocamos el mensaje de éxito
-        this.setMessage("¡La simulación se ha completado con éxito! Duración: " + this.elapsedTime());
+        // Colocamos el mensaje de éxito, con el evento que la terminó si lo hubo
+        if (this.terminal_ == null) {
+            this.setMessage("¡La simulación se ha completado con éxito! Duración: " + this.elapsedTime());
+        } else {
+            this.setMessage(String.format("La simulación ha terminado en t = %g por el evento \"%s\". Duración: %s", 
+                    this.instante_, this.terminal_.getNombre(), this.elapsedTime()));
+        }
         // Para cada resultado de la epidemia creamos y añadimos una pestaña
         // y un elemento en el submenú "Resultados" del menú "Ventana"
         for (int i = 0; i < this.epidemia.getResultados().length; i++) {
@@ -181,12 +1182,65 @@ public abstract class SimulationTask extends org.jdesktop.application.Task<Objec
             this.menuResultados.add(item);
             this.grupoVentana.add(item);
         }
+        // Y lo mismo para el informe de tiempos de las definiciones, si se pidió
+        if (this.perfil_ != null) {
+            this.pestanas.addTab("Perfil de la simulación", this.construirPanelPerfil());
+            javax.swing.JRadioButtonMenuItem item = new javax.swing.JRadioButtonMenuItem();
+            item.setAction(this.actionMap.get("mostrarResultado"));
+            item.setText("Perfil de la simulación");
+            item.setSelected(false);
+            this.menuResultados.add(item);
+            this.grupoVentana.add(item);
+        }
         this.menuResultados.setEnabled(true);
         // Popup de éxito
         JOptionPane.showMessageDialog(DelphSimApp.getApplication().getMainFrame(), "¡La simulación se ha completado con éxito!\nPulse en la pestaña correspondiente para ver los resultados.", 
                 "Información: simulación completada", JOptionPane.INFORMATION_MESSAGE);
     }
     
+    /**
+     * Construye el panel con el informe de tiempos de las definiciones del
+     * modelo, de la más a la menos costosa, y un botón para exportarlo a CSV.
+     * @return El panel.
+     */
+    private JPanel construirPanelPerfil() {
+        final Perfil perfil = this.perfil_;
+        JTable tabla = new JTable(perfil.getFilas(), Perfil.COLUMNAS) {
+            @Override
+            public boolean isCellEditable(int fila, int columna) {
+                return false;
+            }
+        };
+        JButton exportar = new JButton("Exportar a CSV...");
+        exportar.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                JFileChooser dialogoGuardar = new JFileChooser();
+                dialogoGuardar.setDialogTitle("Exportar el perfil de la simulación");
+                dialogoGuardar.setFileFilter(new FileNameExtensionFilter("Archivos CSV (*.csv)", "csv")); // NOI18N
+                if (dialogoGuardar.showSaveDialog(DelphSimApp.getApplication().getMainFrame()) 
+                        == JFileChooser.APPROVE_OPTION) {
+                    String ruta = dialogoGuardar.getSelectedFile().getPath();
+                    if (!ruta.endsWith(".csv")) { // NOI18N
+                        ruta += ".csv"; // NOI18N
+                    }
+                    try {
+                        perfil.exportarCSV(new File(ruta));
+                    } catch (IOException ex) {
+                        JOptionPane.showMessageDialog(DelphSimApp.getApplication().getMainFrame(), 
+                                "No se pudo guardar el archivo " + ruta, 
+                                "Error: exportar el perfil", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }
+        });
+        JPanel botones = new JPanel(new java.awt.FlowLayout(java.awt.FlowLayout.RIGHT));
+        botones.add(exportar);
+        JPanel panel = new JPanel(new java.awt.BorderLayout());
+        panel.add(new JScrollPane(tabla), java.awt.BorderLayout.CENTER);
+        panel.add(botones, java.awt.BorderLayout.SOUTH);
+        return panel;
+    }
+    
     /**
      * Método a lanzar si la simulación falla.
      * @param cause Causa del fallo.
@@ -317,4 +1371,20 @@ public abstract class SimulationTask extends org.jdesktop.application.Task<Objec
         tiempo = String.format("%02d:", tiempoRestante) + tiempo;
         return tiempo;
     }
+    
+    /**
+     * Método para estimar el tiempo restante para que termine la simulación.
+     * En los métodos de paso variable, el tiempo debe estimarse según el
+     * instante al que se ha llegado.
+     */
+    protected String estimatedTime(double instanteActual, double instanteFinal) {
+        long tiempoTranscurrido = (System.currentTimeMillis() - this.tiempoComienzo) / 1000;
+        double tiempoRestante = ((instanteFinal - instanteActual)*tiempoTranscurrido)/instanteActual;
+        String tiempo = String.format("%02d", Math.round(tiempoRestante % 60));
+        tiempoRestante = tiempoRestante / 60;
+        tiempo = String.format("%02d:", Math.round(tiempoRestante % 60)) + tiempo;
+        tiempoRestante = tiempoRestante / 60;
+        tiempo = String.format("%02d:", Math.round(tiempoRestante)) + tiempo;
+        return tiempo;
+    }
 }
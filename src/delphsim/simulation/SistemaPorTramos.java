@@ -0,0 +1,220 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation;
+
+import delphsim.model.Epidemia;
+import delphsim.model.TramoContinua;
+import delphsim.simulation.compilador.Sistema;
+
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Sistema de ecuaciones del modelo que se integra de tramo en tramo. Los
+ * procesos cambian de definición en los tiempos de inicio de sus tramos, y un
+ * paso que atraviesa uno de esos cambios es impreciso (en los métodos de paso
+ * fijo) o se rechaza una y otra vez (en los de paso variable). Por eso los
+ * métodos terminan un paso justo en el siguiente cambio, su
+ * <CODE>limite()</CODE>, y hasta que no lo dan por cruzado con
+ * <CODE>cruzar()</CODE>, este sistema evalúa el modelo en ese instante con
+ * los tramos de antes del cambio. El resto de evaluaciones pasan sin más al
+ * sistema compilado.
+ * @author Víctor E. Tamames Gómez
+ */
+final class SistemaPorTramos implements Sistema {
+    
+    /**
+     * El sistema compilado del modelo.
+     */
+    private Sistema sistema;
+    
+    /**
+     * Los instantes, en orden y sin repetir, en que algún proceso cambia de
+     * tramo durante la simulación.
+     */
+    private double[] cambios;
+    
+    /**
+     * Índice del siguiente cambio que aún no se ha cruzado.
+     */
+    private int siguiente;
+    
+    /**
+     * El siguiente cambio, o infinito si ya no quedan.
+     */
+    private double limite;
+    
+    /**
+     * Un instante inmediatamente anterior al siguiente cambio, en el que se
+     * evalúa el modelo en lugar del propio cambio.
+     */
+    private double antes;
+    
+    /**
+     * Crea el sistema por tramos de un modelo, recogiendo todos los cambios
+     * de tramo de sus procesos entre el principio y el final de la simulación.
+     * @param sistema El sistema compilado del modelo.
+     * @param epidemia El modelo.
+     * @param tmax El tiempo de simulación.
+     */
+    SistemaPorTramos(Sistema sistema, Epidemia epidemia, double tmax) {
+        this.sistema = sistema;
+        TreeSet instantes = new TreeSet();
+        for (int i = 0; i < epidemia.getProcesos().length; i++) {
+            TramoContinua[] tramos = epidemia.getProceso(i).getTramosContinua();
+            if (tramos != null && tramos.length > 1) {
+                for (int j = 0; j < tramos.length; j++) {
+                    double inicio = tramos[j].getTiempoInicio();
+                    if (inicio > 0 && inicio < tmax) {
+                        instantes.add(Double.valueOf(inicio));
+                    }
+                }
+            }
+        }
+        this.cambios = new double[instantes.size()];
+        int j = 0;
+        for (Iterator i = instantes.iterator(); i.hasNext();) {
+            this.cambios[j++] = ((Double) i.next()).doubleValue();
+        }
+        this.siguiente = 0;
+        this.fijarLimite();
+    }
+    
+    /**
+     * Crea un sistema por tramos con los cambios de otro.
+     * @param sistema El sistema compilado del modelo.
+     * @param cambios Los instantes de los cambios.
+     * @param siguiente Índice del siguiente cambio que aún no se ha cruzado.
+     */
+    private SistemaPorTramos(Sistema sistema, double[] cambios, int siguiente) {
+        this.sistema = sistema;
+        this.cambios = cambios;
+        this.siguiente = siguiente;
+        this.fijarLimite();
+    }
+    
+    /**
+     * Devuelve el siguiente cambio de tramo, en el que tiene que terminar el
+     * paso que lo alcance.
+     * @return El instante del cambio, o infinito si ya no quedan.
+     */
+    double limite() {
+        return this.limite;
+    }
+    
+    /**
+     * Da por cruzado el siguiente cambio, una vez que la solución ha llegado
+     * a él: a partir de ahora, en ese instante se usan los tramos nuevos.
+     */
+    void cruzar() {
+        this.siguiente++;
+        this.fijarLimite();
+    }
+    
+    /**
+     * Da por cruzados todos los cambios hasta un instante, incluido, para
+     * empezar a integrar desde él.
+     * @param t El instante.
+     */
+    void situar(double t) {
+        this.siguiente = 0;
+        while (this.siguiente < this.cambios.length && this.cambios[this.siguiente] <= t) {
+            this.siguiente++;
+        }
+        this.fijarLimite();
+    }
+    
+    /**
+     * Calcula el límite y el instante anterior a él para el siguiente cambio.
+     */
+    private void fijarLimite() {
+        if (this.siguiente < this.cambios.length) {
+            this.limite = this.cambios[this.siguiente];
+            this.antes = this.limite - Math.ulp(this.limite);
+        } else {
+            this.limite = Double.POSITIVE_INFINITY;
+            this.antes = Double.POSITIVE_INFINITY;
+        }
+    }
+    
+    /**
+     * Evalúa los atajos, los procesos y las derivadas de los compartimentos,
+     * sin pasar del siguiente cambio de tramo.
+     * @param t El instante de tiempo.
+     * @param m La memoria.
+     * @param x El valor de los compartimentos.
+     * @param dx Donde se dejan las derivadas.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    public void calcular(double t, double[] m, double[] x, double[] dx) throws ParseException {
+        this.sistema.calcular(t < this.limite ? t : this.antes, m, x, dx);
+    }
+    
+    /**
+     * Evalúa los atajos y los procesos, sin pasar del siguiente cambio de
+     * tramo.
+     * @param t El instante de tiempo.
+     * @param m La memoria.
+     * @param x El valor de los compartimentos.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    public void auxiliares(double t, double[] m, double[] x) throws ParseException {
+        this.sistema.auxiliares(t < this.limite ? t : this.antes, m, x);
+    }
+    
+    /**
+     * Evalúa las derivadas de los compartimentos con los atajos y procesos
+     * que ya hay en la memoria.
+     * @param m La memoria.
+     * @param dx Donde se dejan las derivadas.
+     * @throws org.nfunk.jep.ParseException Si falla la evaluación de alguna
+     *                                      definición.
+     */
+    public void derivadas(double[] m, double[] dx) throws ParseException {
+        this.sistema.derivadas(m, dx);
+    }
+    
+    /**
+     * Devuelve la estructura del jacobiano del sistema compilado, que no
+     * cambia de un tramo a otro.
+     * @return Los índices de los compartimentos de los que depende cada
+     *         derivada.
+     */
+    public int[][] estructura() {
+        return this.sistema.estructura();
+    }
+    
+    /**
+     * Devuelve otro sistema por tramos, en el mismo cambio que éste, sobre
+     * una copia del sistema compilado.
+     * @return La copia del sistema.
+     */
+    public Sistema copiar() {
+        return new SistemaPorTramos(this.sistema.copiar(), this.cambios, this.siguiente);
+    }
+}
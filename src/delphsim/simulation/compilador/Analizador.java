@@ -0,0 +1,545 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import java.util.Vector;
+
+import org.nfunk.jep.FunctionTable;
+import org.nfunk.jep.ParseException;
+import org.nfunk.jep.function.PostfixMathCommandI;
+
+/**
+ * Analizador sintáctico propio del lenguaje de las definiciones de DelphSim,
+ * que traduce cada definición a una <CODE>Expresion</CODE> compacta en
+ * notación postfija, sin construir el árbol de nodos de JEP. Reconoce la
+ * misma gramática que JEP (con las mismas precedencias y asociatividades, y
+ * sin multiplicación implícita ni asignaciones) y las mismas funciones de
+ * <CODE>Epidemia.CrearDelphSimJEP()</CODE>, así que el programa que se compila
+ * a partir de ella es idéntico al que se obtendría del árbol de JEP.
+ * <p>Cada carácter de la definición se lee una sola vez, y las sucesiones de
+ * operadores del mismo nivel (como las largas sumas que generan los
+ * asistentes de población) se recorren con un bucle, de manera que la
+ * profundidad de la recursión sólo depende del anidamiento de paréntesis y
+ * funciones, no de la longitud de la definición.</p>
+ * <p>El analizador no usa el estado del compilador, de manera que varios
+ * analizadores pueden trabajar a la vez en distintos hilos.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+final class Analizador {
+
+    /**
+     * Las funciones que se pueden usar en las definiciones.
+     */
+    private FunctionTable funciones;
+
+    /**
+     * La definición que se está analizando.
+     */
+    private String texto;
+
+    /**
+     * Posición del siguiente carácter de la definición por leer.
+     */
+    private int pos;
+
+    /**
+     * Elementos de la expresión en construcción.
+     */
+    private int[] codigo = new int[64];
+
+    /**
+     * Número de enteros usados de <CODE>codigo</CODE>.
+     */
+    private int longitud;
+
+    /**
+     * Constantes de la expresión en construcción.
+     */
+    private double[] constantes = new double[16];
+
+    /**
+     * Número de constantes de la expresión en construcción.
+     */
+    private int numConstantes;
+
+    /**
+     * Nombres de la expresión en construcción.
+     */
+    private Vector nombres = new Vector();
+
+    /**
+     * Funciones de JEP de la expresión en construcción.
+     */
+    private Vector delegadas = new Vector();
+
+    /**
+     * Valores en la pila en el punto actual de la expresión, y el máximo
+     * alcanzado.
+     */
+    private int pila, profundidad;
+
+    /**
+     * Constructor de la clase.
+     * @param funcs Las funciones de JEP que se pueden usar.
+     */
+    Analizador(FunctionTable funcs) {
+        this.funciones = funcs;
+    }
+
+    /**
+     * Analiza una definición completa.
+     * @param definicion La definición a analizar.
+     * @return La expresión equivalente.
+     * @throws org.nfunk.jep.ParseException Si la definición es incorrecta;
+     *                                      el mensaje indica la posición
+     *                                      (contando desde 1) del error.
+     */
+    Expresion analizar(String definicion) throws ParseException {
+        this.texto = definicion;
+        this.pos = 0;
+        this.longitud = 0;
+        this.numConstantes = 0;
+        this.nombres.clear();
+        this.delegadas.clear();
+        this.pila = 0;
+        this.profundidad = 0;
+        this.saltarBlancos();
+        if (this.pos == this.texto.length()) {
+            throw new ParseException("Definición vacía");
+        }
+        this.disyuncion();
+        if (this.pos < this.texto.length()) {
+            throw this.error("se esperaba un operador");
+        }
+        int[] cod = new int[this.longitud];
+        System.arraycopy(this.codigo, 0, cod, 0, this.longitud);
+        double[] consts = new double[this.numConstantes];
+        System.arraycopy(this.constantes, 0, consts, 0, this.numConstantes);
+        String[] noms = new String[this.nombres.size()];
+        this.nombres.toArray(noms);
+        PostfixMathCommandI[] funcs = new PostfixMathCommandI[this.delegadas.size()];
+        this.delegadas.toArray(funcs);
+        return new Expresion(cod, consts, noms, funcs, this.profundidad,
+                this.esSuma() ? this.sumandos(definicion) : null);
+    }
+
+    /**
+     * Indica si la expresión en construcción no tiene más que nombres y
+     * sumas de dos operandos.
+     * @return Si es así.
+     */
+    private boolean esSuma() {
+        for (int i = 0; i < this.longitud; i += 4) {
+            if (this.codigo[i] == Expresion.CONSTANTE
+                    || (this.codigo[i] == Expresion.OPERACION && this.codigo[i+1] != Programa.SUMA)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Separa los términos de una definición que no es más que una suma de
+     * nombres, como las de los atajos.
+     * @param definicion La definición.
+     * @return Los nombres sumados, o null si la definición tiene algo más
+     *         que nombres y signos '+'.
+     */
+    private String[] sumandos(String definicion) {
+        String[] sumandos = definicion.split("\\+", -1);
+        for (int i = 0; i < sumandos.length; i++) {
+            sumandos[i] = sumandos[i].trim();
+            if (sumandos[i].length() == 0 || !Character.isJavaIdentifierStart(sumandos[i].charAt(0))) {
+                return null;
+            }
+            for (int j = 1; j < sumandos[i].length(); j++) {
+                char c = sumandos[i].charAt(j);
+                if (!Character.isJavaIdentifierPart(c) && c != '.') {
+                    return null;
+                }
+            }
+        }
+        return sumandos;
+    }
+
+    /**
+     * Reconoce una sucesión de operandos unidos por <CODE>||</CODE>.
+     * @throws org.nfunk.jep.ParseException Si la expresión es incorrecta.
+     */
+    private void disyuncion() throws ParseException {
+        this.conjuncion();
+        while (this.aceptar("||")) {
+            this.conjuncion();
+            this.operacion(Programa.O, 2, -1);
+        }
+    }
+
+    /**
+     * Reconoce una sucesión de operandos unidos por <CODE>&amp;&amp;</CODE>.
+     * @throws org.nfunk.jep.ParseException Si la expresión es incorrecta.
+     */
+    private void conjuncion() throws ParseException {
+        this.igualdad();
+        while (this.aceptar("&&")) {
+            this.igualdad();
+            this.operacion(Programa.Y, 2, -1);
+        }
+    }
+
+    /**
+     * Reconoce una sucesión de operandos unidos por <CODE>==</CODE> o
+     * <CODE>!=</CODE>.
+     * @throws org.nfunk.jep.ParseException Si la expresión es incorrecta.
+     */
+    private void igualdad() throws ParseException {
+        this.relacion();
+        while (true) {
+            if (this.aceptar("==")) {
+                this.relacion();
+                this.operacion(Programa.IGUAL, 2, -1);
+            } else if (this.aceptar("!=")) {
+                this.relacion();
+                this.operacion(Programa.DISTINTO, 2, -1);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reconoce una sucesión de operandos unidos por operadores de
+     * comparación.
+     * @throws org.nfunk.jep.ParseException Si la expresión es incorrecta.
+     */
+    private void relacion() throws ParseException {
+        this.suma();
+        while (true) {
+            int codigo;
+            if (this.aceptar("<=")) {
+                codigo = Programa.MENOR_IGUAL;
+            } else if (this.aceptar(">=")) {
+                codigo = Programa.MAYOR_IGUAL;
+            } else if (this.aceptar("<")) {
+                codigo = Programa.MENOR;
+            } else if (this.aceptar(">")) {
+                codigo = Programa.MAYOR;
+            } else {
+                return;
+            }
+            this.suma();
+            this.operacion(codigo, 2, -1);
+        }
+    }
+
+    /**
+     * Reconoce una sucesión de términos unidos por <CODE>+</CODE> o
+     * <CODE>-</CODE>, asociados por la izquierda igual que en JEP.
+     * @throws org.nfunk.jep.ParseException Si la expresión es incorrecta.
+     */
+    private void suma() throws ParseException {
+        this.producto();
+        while (true) {
+            int codigo;
+            if (this.aceptar("+")) {
+                codigo = Programa.SUMA;
+            } else if (this.aceptar("-")) {
+                codigo = Programa.RESTA;
+            } else {
+                return;
+            }
+            this.producto();
+            this.operacion(codigo, 2, -1);
+        }
+    }
+
+    /**
+     * Reconoce una sucesión de factores unidos por <CODE>*</CODE>,
+     * <CODE>/</CODE> o <CODE>%</CODE>, asociados por la izquierda.
+     * @throws org.nfunk.jep.ParseException Si la expresión es incorrecta.
+     */
+    private void producto() throws ParseException {
+        this.unaria();
+        while (true) {
+            int codigo;
+            if (this.aceptar("*")) {
+                codigo = Programa.PRODUCTO;
+            } else if (this.aceptar("/")) {
+                codigo = Programa.DIVISION;
+            } else if (this.aceptar("%")) {
+                codigo = Programa.MODULO;
+            } else {
+                return;
+            }
+            this.unaria();
+            this.operacion(codigo, 2, -1);
+        }
+    }
+
+    /**
+     * Reconoce un factor precedido de operadores unarios. Como en JEP, el
+     * menos unario tiene menos precedencia que la potencia: -2^2 es -(2^2).
+     * @throws org.nfunk.jep.ParseException Si el factor es incorrecto.
+     */
+    private void unaria() throws ParseException {
+        if (this.aceptar("+")) {
+            this.unaria();
+        } else if (this.aceptar("-")) {
+            this.unaria();
+            this.operacion(Programa.NEGACION, 1, -1);
+        } else if (this.aceptar("!")) {
+            this.unaria();
+            this.operacion(Programa.NO, 1, -1);
+        } else {
+            this.primaria();
+            if (this.aceptar("^")) {
+                // El exponente puede llevar signo y asocia por la derecha
+                this.unaria();
+                this.operacion(Programa.POTENCIA, 2, -1);
+            }
+        }
+    }
+
+    /**
+     * Reconoce un número, un nombre, una llamada a función o una expresión
+     * entre paréntesis.
+     * @throws org.nfunk.jep.ParseException Si no hay ninguno de ellos.
+     */
+    private void primaria() throws ParseException {
+        if (this.pos == this.texto.length()) {
+            throw this.error("la definición está incompleta");
+        }
+        char c = this.texto.charAt(this.pos);
+        if (this.aceptar("(")) {
+            this.disyuncion();
+            this.esperar(")");
+        } else if (Character.isDigit(c) || c == '.') {
+            this.numero();
+        } else if (Character.isJavaIdentifierStart(c)) {
+            int inicio = this.pos;
+            String nombre = this.nombre();
+            if (this.aceptar("(")) {
+                this.funcion(nombre, inicio);
+            } else {
+                // La posición en el texto sirve para informar si el nombre
+                // no está declarado
+                this.nombres.add(nombre);
+                this.emitir(Expresion.NOMBRE, this.nombres.size() - 1, inicio + 1, -1);
+                this.apilar(1);
+            }
+        } else {
+            throw this.error("carácter inesperado '" + c + "'");
+        }
+    }
+
+    /**
+     * Reconoce los argumentos de una llamada a función, ya leído el nombre y
+     * el paréntesis de apertura.
+     * @param nombre El nombre de la función.
+     * @param inicio Posición de la definición donde empieza el nombre.
+     * @throws org.nfunk.jep.ParseException Si la función no existe, no admite
+     *                                      ese número de argumentos o alguno
+     *                                      es incorrecto.
+     */
+    private void funcion(String nombre, int inicio) throws ParseException {
+        PostfixMathCommandI funcion = this.funciones.get(nombre);
+        if (funcion == null) {
+            throw new ParseException("Función desconocida \"" + nombre + "\" en la posición " + (inicio + 1));
+        }
+        int n = 0;
+        if (!this.aceptar(")")) {
+            do {
+                this.disyuncion();
+                n++;
+            } while (this.aceptar(","));
+            this.esperar(")");
+        }
+        if (!funcion.checkNumberOfParameters(n)) {
+            throw new ParseException("La función \"" + nombre + "\" de la posición " + (inicio + 1)
+                    + " no admite " + n + " parámetros");
+        }
+        int codigo = Compilador.codigoFuncion(nombre, n);
+        int delegada = -1;
+        if (codigo == Programa.FUNCION) {
+            this.delegadas.add(funcion);
+            delegada = this.delegadas.size() - 1;
+        }
+        this.operacion(codigo, n, delegada);
+    }
+
+    /**
+     * Reconoce una constante numérica: dígitos con un punto decimal opcional
+     * y un exponente opcional, como "3", "2.5", ".5", "5." o "1.5E-3".
+     * @throws org.nfunk.jep.ParseException Si no es un número válido.
+     */
+    private void numero() throws ParseException {
+        int inicio = this.pos;
+        int digitos = this.digitos();
+        if (this.pos < this.texto.length() && this.texto.charAt(this.pos) == '.') {
+            this.pos++;
+            digitos += this.digitos();
+        }
+        if (digitos == 0) {
+            this.pos = inicio;
+            throw this.error("carácter inesperado '.'");
+        }
+        if (this.pos < this.texto.length() && Character.toLowerCase(this.texto.charAt(this.pos)) == 'e') {
+            // Sólo es un exponente si le siguen dígitos, con o sin signo
+            int marca = this.pos++;
+            if (this.pos < this.texto.length()
+                    && (this.texto.charAt(this.pos) == '+' || this.texto.charAt(this.pos) == '-')) {
+                this.pos++;
+            }
+            if (this.digitos() == 0) {
+                this.pos = marca;
+            }
+        }
+        if (this.numConstantes == this.constantes.length) {
+            double[] mayor = new double[2*this.numConstantes];
+            System.arraycopy(this.constantes, 0, mayor, 0, this.numConstantes);
+            this.constantes = mayor;
+        }
+        this.constantes[this.numConstantes] = Double.parseDouble(this.texto.substring(inicio, this.pos));
+        this.emitir(Expresion.CONSTANTE, this.numConstantes++, 0, -1);
+        this.apilar(1);
+        this.saltarBlancos();
+    }
+
+    /**
+     * Avanza sobre una sucesión de dígitos.
+     * @return El número de dígitos leídos.
+     */
+    private int digitos() {
+        int inicio = this.pos;
+        while (this.pos < this.texto.length() && Character.isDigit(this.texto.charAt(this.pos))) {
+            this.pos++;
+        }
+        return this.pos - inicio;
+    }
+
+    /**
+     * Lee un nombre: una letra, '_' o '$' seguida de letras, dígitos, '_',
+     * '$' o puntos.
+     * @return El nombre leído.
+     */
+    private String nombre() {
+        int inicio = this.pos++;
+        while (this.pos < this.texto.length()
+                && (Character.isJavaIdentifierPart(this.texto.charAt(this.pos))
+                    || this.texto.charAt(this.pos) == '.')) {
+            this.pos++;
+        }
+        String nombre = this.texto.substring(inicio, this.pos);
+        this.saltarBlancos();
+        return nombre;
+    }
+
+    /**
+     * Añade una operación, cuyos operandos son los últimos valores de la
+     * pila.
+     * @param codigo El código de operación.
+     * @param n El número de operandos.
+     * @param delegada El índice de la función de JEP en la que se delega, o -1.
+     */
+    private void operacion(int codigo, int n, int delegada) {
+        this.emitir(Expresion.OPERACION, codigo, n, delegada);
+        this.apilar(1 - n);
+    }
+
+    /**
+     * Añade un elemento a la expresión en construcción.
+     * @param tipo El tipo de elemento.
+     * @param a El primer dato del elemento.
+     * @param b El segundo dato del elemento.
+     * @param c El tercer dato del elemento.
+     */
+    private void emitir(int tipo, int a, int b, int c) {
+        if (this.longitud + 4 > this.codigo.length) {
+            int[] mayor = new int[2*this.codigo.length];
+            System.arraycopy(this.codigo, 0, mayor, 0, this.longitud);
+            this.codigo = mayor;
+        }
+        this.codigo[this.longitud++] = tipo;
+        this.codigo[this.longitud++] = a;
+        this.codigo[this.longitud++] = b;
+        this.codigo[this.longitud++] = c;
+    }
+
+    /**
+     * Actualiza el número de valores en la pila y su máximo.
+     * @param cambio Valores que entran (o salen, si es negativo).
+     */
+    private void apilar(int cambio) {
+        this.pila += cambio;
+        if (this.pila > this.profundidad) {
+            this.profundidad = this.pila;
+        }
+    }
+
+    /**
+     * Si la definición continúa con el símbolo indicado, lo consume junto con
+     * los blancos que le sigan.
+     * @param simbolo El símbolo esperado.
+     * @return Si estaba.
+     */
+    private boolean aceptar(String simbolo) {
+        if (!this.texto.startsWith(simbolo, this.pos)) {
+            return false;
+        }
+        this.pos += simbolo.length();
+        this.saltarBlancos();
+        return true;
+    }
+
+    /**
+     * Consume el símbolo indicado, que debe ser el siguiente de la definición.
+     * @param simbolo El símbolo esperado.
+     * @throws org.nfunk.jep.ParseException Si no es el siguiente.
+     */
+    private void esperar(String simbolo) throws ParseException {
+        if (!this.aceptar(simbolo)) {
+            throw this.error("se esperaba \"" + simbolo + "\"");
+        }
+    }
+
+    /**
+     * Avanza sobre los espacios, tabuladores y saltos de línea.
+     */
+    private void saltarBlancos() {
+        while (this.pos < this.texto.length() && Character.isWhitespace(this.texto.charAt(this.pos))) {
+            this.pos++;
+        }
+    }
+
+    /**
+     * Crea la excepción de un error de sintaxis en la posición actual.
+     * @param motivo Descripción del error.
+     * @return La excepción, con la posición (contando desde 1) en el mensaje.
+     */
+    private ParseException error(String motivo) {
+        String encontrado = this.pos < this.texto.length()
+                ? "\"" + this.texto.charAt(this.pos) + "\"" : "el final";
+        return new ParseException("Error de sintaxis en la posición " + (this.pos + 1)
+                + " (encontrado " + encontrado + "): " + motivo);
+    }
+}
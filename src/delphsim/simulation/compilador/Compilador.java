@@ -0,0 +1,1040 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import delphsim.model.Atajo;
+import delphsim.model.Compartimento;
+import delphsim.model.Epidemia;
+import delphsim.model.Proceso;
+import delphsim.model.TramoContinua;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.nfunk.jep.ASTConstant;
+import org.nfunk.jep.ASTFunNode;
+import org.nfunk.jep.ASTVarNode;
+import org.nfunk.jep.JEP;
+import org.nfunk.jep.Node;
+import org.nfunk.jep.Operator;
+import org.nfunk.jep.OperatorSet;
+import org.nfunk.jep.ParseException;
+import org.nfunk.jep.function.PostfixMathCommandI;
+
+/**
+ * Traduce las definiciones del modelo a objetos <CODE>Programa</CODE>. Las
+ * definiciones se analizan con un analizador propio que genera directamente
+ * las instrucciones; los árboles ya analizados por JEP también se aceptan. Cada nombre del modelo se resuelve una sola vez a una
+ * posición de la memoria de la simulación, y lo mismo ocurre con cada
+ * constante y cada resultado intermedio, de manera que la evaluación posterior
+ * trabaja únicamente con índices sobre un <CODE>double[]</CODE>.
+ * <p>Los nombres deben declararse antes de compilar las definiciones que los
+ * usan, igual que había que añadir las variables a JEP antes de analizar una
+ * expresión: así se conserva el orden de definición de parámetros y procesos.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+public class Compilador {
+
+    /**
+     * Número mínimo de definiciones por hilo para que merezca la pena
+     * analizarlas en paralelo.
+     */
+    private static final int DEFINICIONES_POR_HILO = 64;
+
+    /**
+     * El analizador de JEP de DelphSim, cuya tabla de funciones y cuyos
+     * operadores se usan para compilar las definiciones.
+     */
+    private JEP jep;
+
+    /**
+     * El analizador de las definiciones, que las traduce a expresiones sin
+     * pasar por los árboles de JEP.
+     */
+    private Analizador analizador;
+
+    /**
+     * Definiciones analizadas por adelantado con <CODE>preparar()</CODE> que
+     * aún no se han compilado, y su expresión (o la excepción con el error
+     * que se encontró al analizarlas).
+     */
+    private HashMap preparadas = new HashMap();
+
+    /**
+     * Nombres declarados y la posición de la memoria que ocupa cada uno.
+     */
+    private HashMap posiciones = new HashMap();
+
+    /**
+     * Constantes encontradas en las definiciones y la posición de la memoria
+     * que ocupa cada una. Una misma constante sólo ocupa una posición.
+     */
+    private HashMap constantes = new HashMap();
+
+    /**
+     * El valor de cada constante, por su posición de la memoria.
+     */
+    private HashMap valoresConstantes = new HashMap();
+
+    /**
+     * Parámetros deterministas ya evaluados, por su posición de la memoria, y
+     * su valor. Las definiciones que se compilen después los usan como una
+     * constante más.
+     */
+    private HashMap fijos = new HashMap();
+
+    /**
+     * Constantes que todavía no se han colocado en la memoria.
+     */
+    private Vector constantesPendientes = new Vector();
+
+    /**
+     * Programas ya compilados, por el texto de su definición. Así una misma
+     * definición (por ejemplo, un tramo de un proceso que se consulta en cada
+     * paso) sólo se analiza y compila una vez.
+     */
+    private HashMap programas = new HashMap();
+
+    /**
+     * Número de posiciones de memoria reservadas hasta el momento.
+     */
+    private int numPosiciones = 0;
+
+    /**
+     * Instrucciones del programa que se está compilando.
+     */
+    private Vector instrucciones = new Vector();
+
+    /**
+     * Funciones de JEP que usa el programa que se está compilando.
+     */
+    private Vector funciones = new Vector();
+
+    /**
+     * Posiciones de los nombres que lee el programa que se está compilando.
+     */
+    private Vector entradas = new Vector();
+
+    /**
+     * Si el programa que se está compilando usa números aleatorios.
+     */
+    private boolean volatil;
+
+    /**
+     * Registro en que se avisa de los sistemas que no se han podido generar.
+     */
+    private static final Logger LOGGER = Logger.getLogger(Compilador.class.getName());
+
+    /**
+     * El último sistema creado sin medir sus evaluaciones, para devolverlo
+     * de nuevo si se vuelve a simular el mismo modelo con este compilador.
+     */
+    private Sistema sistema;
+
+    /**
+     * Si se pidió generar código para el último sistema creado.
+     */
+    private boolean sistemaGenerado;
+
+    /**
+     * Constructor de la clase. Crea el analizador de JEP con las funciones de
+     * DelphSim y el analizador propio con esas mismas funciones; la
+     * comprobación de los nombres usados la hace el compilador.
+     */
+    public Compilador() {
+        this.jep = Epidemia.CrearDelphSimJEP();
+        this.jep.setAllowUndeclared(true);
+        this.analizador = new Analizador(this.jep.getFunctionTable());
+    }
+
+    /**
+     * Reserva una posición de la memoria para un nombre del modelo, a partir
+     * de la cual las definiciones compiladas pueden hacer referencia a él.
+     * @param nombre El nombre del parámetro, compartimento, atajo o proceso.
+     * @return La posición de la memoria asignada.
+     */
+    public int declarar(String nombre) {
+        Integer posicion = (Integer) this.posiciones.get(nombre);
+        if (posicion == null) {
+            posicion = Integer.valueOf(this.numPosiciones++);
+            this.posiciones.put(nombre, posicion);
+        }
+        return posicion.intValue();
+    }
+
+    /**
+     * Método para obtener el número de posiciones de memoria que necesitan
+     * los programas compilados hasta el momento.
+     * @return El tamaño de la memoria.
+     */
+    public int getNumPosiciones() {
+        return this.numPosiciones;
+    }
+
+    /**
+     * Método para obtener la posición de la memoria de un nombre ya declarado.
+     * @param nombre El nombre del parámetro, compartimento, atajo o proceso.
+     * @return La posición de la memoria, o -1 si no se ha declarado.
+     */
+    public int getPosicion(String nombre) {
+        Integer posicion = (Integer) this.posiciones.get(nombre);
+        return posicion == null ? -1 : posicion.intValue();
+    }
+
+    /**
+     * Fija el valor de un parámetro si su definición no depende más que de
+     * constantes (incluidos otros parámetros ya fijados) ni usa números
+     * aleatorios o distribuciones de probabilidad. A partir de entonces las
+     * definiciones que se compilen usan ese valor como una constante, y las
+     * operaciones entre constantes se resuelven al compilar.
+     * @param posicion La posición del parámetro en la memoria.
+     * @param programa El programa de su definición.
+     * @param valor El valor que ha dado el programa.
+     * @return Si el parámetro es determinista y se ha fijado su valor, con lo
+     *         que no hace falta volver a evaluarlo.
+     */
+    public boolean fijar(int posicion, Programa programa, double valor) {
+        if (programa.volatil || programa.entradas.length > 0) {
+            return false;
+        }
+        this.fijos.put(Integer.valueOf(posicion), Double.valueOf(valor));
+        return true;
+    }
+
+    /**
+     * Prepara el compilador para volver a simular el mismo modelo, con el que
+     * ya se ha usado. Las definiciones, ya compiladas, no vuelven a
+     * analizarse ni compilarse, y todas las constantes se colocarán de nuevo
+     * en la siguiente memoria que se ajuste, que será una nueva.
+     */
+    public void reutilizar() {
+        this.constantesPendientes.clear();
+        this.constantesPendientes.addAll(this.constantes.keySet());
+    }
+
+    /**
+     * Devuelve una memoria con sitio para todo lo compilado hasta el momento,
+     * conservando los valores de la memoria anterior y colocando en su
+     * posición las constantes que aparecieron desde la última llamada. Debe
+     * llamarse tras cada compilación y antes de evaluar el programa.
+     * @param memoria La memoria usada hasta ahora.
+     * @return La misma memoria si tiene sitio suficiente, o una nueva mayor.
+     */
+    public double[] ajustarMemoria(double[] memoria) {
+        if (memoria.length < this.numPosiciones) {
+            double[] nueva = new double[Math.max(this.numPosiciones, 2*memoria.length)];
+            System.arraycopy(memoria, 0, nueva, 0, memoria.length);
+            memoria = nueva;
+        }
+        for (int i = 0; i < this.constantesPendientes.size(); i++) {
+            Double constante = (Double) this.constantesPendientes.get(i);
+            memoria[((Integer) this.constantes.get(constante)).intValue()] = constante.doubleValue();
+        }
+        this.constantesPendientes.clear();
+        return memoria;
+    }
+
+    /**
+     * Analiza por adelantado, repartidas entre varios hilos, las definiciones
+     * que se van a compilar. El análisis no depende de los nombres declarados
+     * ni de las posiciones de la memoria, así que puede hacerse a la vez para
+     * todas; lo que queda para <CODE>compilar()</CODE>, que se llama en el
+     * orden de la simulación, es sólo la asignación de posiciones y la
+     * generación de instrucciones, por lo que los programas son los mismos
+     * que si no se hubiesen preparado. Los errores encontrados se guardan y
+     * se lanzan al compilar la definición correspondiente. Si hay pocas
+     * definiciones no se hace nada: se analizarán al compilarlas.
+     * @param definiciones Las definiciones, que pueden estar repetidas o ser
+     *                     null.
+     */
+    public void preparar(String[] definiciones) {
+        // Las que no estén ya compiladas o preparadas, sin repetir
+        final Vector pendientes = new Vector();
+        HashMap vistas = new HashMap();
+        for (int i = 0; i < definiciones.length; i++) {
+            if (definiciones[i] != null && !this.programas.containsKey(definiciones[i])
+                    && !this.preparadas.containsKey(definiciones[i])
+                    && vistas.put(definiciones[i], definiciones[i]) == null) {
+                pendientes.add(definiciones[i]);
+            }
+        }
+        final int hilos = Math.min(Runtime.getRuntime().availableProcessors(),
+                pendientes.size() / DEFINICIONES_POR_HILO);
+        if (hilos < 2) {
+            return;
+        }
+        // Cada hilo analiza una de cada tantas definiciones, para que las
+        // más largas (que suelen ir juntas) se repartan entre todos
+        Vector tareas = new Vector();
+        for (int h = 0; h < hilos; h++) {
+            final int primera = h;
+            tareas.add(new Callable() {
+                public Object call() {
+                    Analizador analizadorHilo = new Analizador(jep.getFunctionTable());
+                    Object[] expresiones = new Object[(pendientes.size() - primera + hilos - 1) / hilos];
+                    for (int i = primera, j = 0; i < pendientes.size(); i += hilos, j++) {
+                        try {
+                            expresiones[j] = analizadorHilo.analizar((String) pendientes.get(i));
+                        } catch (ParseException ex) {
+                            expresiones[j] = ex;
+                        }
+                    }
+                    return expresiones;
+                }
+            });
+        }
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        try {
+            List resultados = ejecutor.invokeAll(tareas);
+            for (int h = 0; h < hilos; h++) {
+                try {
+                    Object[] expresiones = (Object[]) ((Future) resultados.get(h)).get();
+                    for (int i = h, j = 0; i < pendientes.size(); i += hilos, j++) {
+                        this.preparadas.put(pendientes.get(i), expresiones[j]);
+                    }
+                } catch (ExecutionException ex) {
+                    // Las definiciones de ese hilo se analizarán al compilarlas
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Se ha cancelado la simulación: se deja constancia para que la
+            // tarea lo vea, y lo que falte se analizará al compilarlo
+            Thread.currentThread().interrupt();
+        } finally {
+            ejecutor.shutdown();
+        }
+    }
+
+    /**
+     * Analiza y compila una definición del modelo. Si ya se había compilado
+     * la misma definición se devuelve el programa anterior, y si se había
+     * preparado se aprovecha su análisis. Las sumas de nombres (como las
+     * definiciones de los atajos, "A + B + C") se compilan directamente a un
+     * sumatorio sobre sus posiciones.
+     * @param definicion La definición, tal y como la ha escrito el usuario.
+     * @return El programa equivalente.
+     * @throws org.nfunk.jep.ParseException Si la definición es incorrecta o
+     *                                      usa nombres no declarados. El
+     *                                      mensaje indica dónde está el error.
+     */
+    public Programa compilar(String definicion) throws ParseException {
+        if (definicion == null) {
+            throw new NullPointerException();
+        }
+        Programa programa = (Programa) this.programas.get(definicion);
+        if (programa == null) {
+            Object preparada = this.preparadas.remove(definicion);
+            if (preparada instanceof ParseException) {
+                throw (ParseException) preparada;
+            }
+            Expresion expresion = preparada != null
+                    ? (Expresion) preparada : this.analizador.analizar(definicion);
+            programa = this.compilarSuma(expresion.sumandos);
+            if (programa == null) {
+                this.iniciarPrograma();
+                programa = this.terminarPrograma(this.compilarExpresion(expresion));
+            }
+            this.programas.put(definicion, programa);
+        }
+        return programa;
+    }
+
+    /**
+     * Compila una definición que no es más que una suma de nombres ya
+     * declarados a un único sumatorio, en lugar de a la cadena de sumas de dos
+     * en dos que resultaría de analizarla.
+     * @param sumandos Los nombres sumados, o null si la definición no es una
+     *                 suma de nombres.
+     * @return El programa equivalente, o null si la definición no es una
+     *         suma de nombres declarados.
+     * @throws org.nfunk.jep.ParseException Si la suma de constantes no se
+     *                                      puede evaluar.
+     */
+    private Programa compilarSuma(String[] sumandos) throws ParseException {
+        if (sumandos == null) {
+            return null;
+        }
+        for (int i = 0; i < sumandos.length; i++) {
+            if (!this.posiciones.containsKey(sumandos[i])) {
+                return null;
+            }
+        }
+        this.iniciarPrograma();
+        int[] operandos = new int[sumandos.length];
+        for (int i = 0; i < sumandos.length; i++) {
+            operandos[i] = this.posicionNombre(sumandos[i]);
+        }
+        int salida = operandos.length == 1
+                ? operandos[0] : this.compilarOperacion(Programa.SUMATORIO, operandos);
+        return this.terminarPrograma(salida);
+    }
+
+    /**
+     * Genera las instrucciones de una expresión ya analizada, recorriéndola
+     * con una pila de posiciones de la memoria.
+     * @param expresion La expresión.
+     * @return La posición de la memoria donde queda su valor.
+     * @throws org.nfunk.jep.ParseException Si usa nombres no declarados o
+     *                                      una operación entre constantes no
+     *                                      se puede evaluar.
+     */
+    private int compilarExpresion(Expresion expresion) throws ParseException {
+        int[] c = expresion.codigo;
+        int[] pila = new int[expresion.profundidad];
+        int cima = 0;
+        for (int i = 0; i < c.length; i += 4) {
+            switch (c[i]) {
+                case Expresion.CONSTANTE:
+                    pila[cima++] = this.posicionConstante(expresion.constantes[c[i+1]]);
+                    break;
+                case Expresion.NOMBRE:
+                    try {
+                        pila[cima++] = this.posicionNombre(expresion.nombres[c[i+1]]);
+                    } catch (ParseException ex) {
+                        throw new ParseException(ex.getMessage() + " en la posición " + c[i+2]);
+                    }
+                    break;
+                default: {
+                    int[] operandos = new int[c[i+2]];
+                    cima -= operandos.length;
+                    System.arraycopy(pila, cima, operandos, 0, operandos.length);
+                    pila[cima++] = this.compilarLlamada(c[i+1],
+                            c[i+3] < 0 ? null : expresion.funciones[c[i+3]], operandos);
+                }
+            }
+        }
+        return pila[0];
+    }
+
+    /**
+     * Compila un árbol ya analizado por JEP. Las subexpresiones repetidas
+     * dentro de la definición se calculan una sola vez.
+     * @param arbol El árbol de la definición.
+     * @return El programa equivalente.
+     * @throws org.nfunk.jep.ParseException Si el árbol usa nombres no
+     *                                      declarados u operadores no
+     *                                      soportados.
+     */
+    public Programa compilar(Node arbol) throws ParseException {
+        this.iniciarPrograma();
+        return this.terminarPrograma(this.compilarNodo(arbol));
+    }
+
+    /**
+     * Prepara el compilador para empezar un programa nuevo.
+     */
+    private void iniciarPrograma() {
+        this.instrucciones.clear();
+        this.funciones.clear();
+        this.entradas.clear();
+        this.volatil = false;
+    }
+
+    /**
+     * Construye el programa con las instrucciones generadas desde la última
+     * llamada a <CODE>iniciarPrograma()</CODE>.
+     * @param salida La posición donde queda el valor de la definición.
+     * @return El programa.
+     */
+    private Programa terminarPrograma(int salida) {
+        PostfixMathCommandI[] funcs = new PostfixMathCommandI[this.funciones.size()];
+        this.funciones.toArray(funcs);
+        Programa programa = new Programa(enteros(this.instrucciones), funcs, salida,
+                enteros(this.entradas), this.volatil);
+        return fusionar(new Programa[] {programa}, new int[1]);
+    }
+
+    /**
+     * Une varios programas en uno solo que calcula una única vez cada
+     * subexpresión común a varios de ellos (o repetida dentro de uno): cada
+     * instrucción igual a otra anterior, con los mismos operandos, se quita y
+     * quien use su resultado pasa a leer el de la anterior. Las sumas y
+     * productos de dos operandos se comparan sin tener en cuenta el orden,
+     * lo que no cambia su resultado. Las instrucciones con números aleatorios
+     * o delegadas en JEP no se comparten nunca.
+     * <p>Como cada instrucción del compilador escribe en una posición propia,
+     * el programa resultante deja el valor de cada programa original en una
+     * posición de la memoria, que puede ser la de otro.</p>
+     * @param programas Los programas a unir, en orden de evaluación. Si hay
+     *                  alguno volátil no debe aparecer más de una vez.
+     * @param salidas Donde dejar la posición con el valor de cada programa.
+     * @return El programa unido, con la salida del último programa.
+     */
+    static Programa fusionar(Programa[] programas, int[] salidas) {
+        Vector codigo = new Vector();
+        Vector funcs = new Vector();
+        Vector ents = new Vector();
+        boolean vol = false;
+        // Posición original de cada instrucción quitada -> la que la sustituye
+        HashMap sustitutas = new HashMap();
+        // Instrucción (código y operandos) -> posición con su resultado
+        HashMap vistas = new HashMap();
+        for (int k = 0; k < programas.length; k++) {
+            Programa programa = programas[k];
+            vol = vol || programa.volatil;
+            for (int i = 0; i < programa.entradas.length; i++) {
+                Integer entrada = Integer.valueOf(programa.entradas[i]);
+                if (!ents.contains(entrada)) {
+                    ents.add(entrada);
+                }
+            }
+            int[] c = programa.codigo;
+            int pc = 0;
+            while (pc < c.length) {
+                int cod = c[pc];
+                int destino = c[pc+1];
+                int inicio, n;
+                if (cod == Programa.SUMATORIO) {
+                    inicio = pc + 3;
+                    n = c[pc+2];
+                } else if (cod == Programa.FUNCION) {
+                    inicio = pc + 4;
+                    n = c[pc+3];
+                } else {
+                    inicio = pc + 2;
+                    n = 2;
+                }
+                int[] operandos = new int[n];
+                for (int i = 0; i < n; i++) {
+                    operandos[i] = sustituir(sustitutas, c[inicio+i]);
+                }
+                if (cod != Programa.ALEATORIO && cod != Programa.FUNCION) {
+                    String clave = clave(cod, destino, operandos);
+                    Integer anterior = (Integer) vistas.get(clave);
+                    if (anterior != null) {
+                        sustitutas.put(Integer.valueOf(destino), anterior);
+                        pc = inicio + n;
+                        continue;
+                    }
+                    vistas.put(clave, Integer.valueOf(destino));
+                }
+                codigo.add(Integer.valueOf(cod));
+                codigo.add(Integer.valueOf(destino));
+                if (cod == Programa.FUNCION) {
+                    codigo.add(Integer.valueOf(funcs.size()));
+                    funcs.add(programa.funciones[c[pc+2]]);
+                }
+                if (cod == Programa.SUMATORIO || cod == Programa.FUNCION) {
+                    codigo.add(Integer.valueOf(n));
+                }
+                for (int i = 0; i < n; i++) {
+                    codigo.add(Integer.valueOf(operandos[i]));
+                }
+                pc = inicio + n;
+            }
+            salidas[k] = sustituir(sustitutas, programa.salida);
+        }
+        PostfixMathCommandI[] funciones = new PostfixMathCommandI[funcs.size()];
+        funcs.toArray(funciones);
+        return new Programa(enteros(codigo), funciones,
+                programas.length > 0 ? salidas[programas.length-1] : 0, enteros(ents), vol);
+    }
+
+    /**
+     * Devuelve la posición que sustituye a otra al unir programas.
+     * @param sustitutas Las posiciones sustituidas y sus sustitutas.
+     * @param posicion La posición original.
+     * @return Su sustituta, o la misma posición si no se ha sustituido.
+     */
+    private static int sustituir(HashMap sustitutas, int posicion) {
+        Integer sustituta = (Integer) sustitutas.get(Integer.valueOf(posicion));
+        return sustituta == null ? posicion : sustituta.intValue();
+    }
+
+    /**
+     * Construye la clave con la que se reconocen dos instrucciones iguales.
+     * @param codigo El código de operación.
+     * @param destino La posición de destino, que en las operaciones unarias
+     *                se repite como operando sin usarse.
+     * @param operandos Las posiciones de los operandos, ya sustituidas.
+     * @return La clave de la instrucción.
+     */
+    private static String clave(int codigo, int destino, int[] operandos) {
+        int[] ops = operandos.clone();
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] == destino) {
+                ops[i] = -1;
+            }
+        }
+        if ((codigo == Programa.SUMA || codigo == Programa.PRODUCTO) && ops[0] > ops[1]) {
+            int temp = ops[0];
+            ops[0] = ops[1];
+            ops[1] = temp;
+        }
+        StringBuffer clave = new StringBuffer();
+        clave.append(codigo);
+        for (int i = 0; i < ops.length; i++) {
+            clave.append(',').append(ops[i]);
+        }
+        return clave.toString();
+    }
+
+    /**
+     * Construye el sistema de ecuaciones de una epidemia a partir de los
+     * programas ya compilados de sus atajos, procesos (todos sus tramos) y
+     * compartimentos. Si se pide, genera además su código específico; si eso
+     * no es posible se devuelve la versión interpretada, que da los mismos
+     * resultados. Si se pide medir las definiciones, el sistema es siempre el
+     * interpretado y evalúa cada una por separado. Si no, el sistema se
+     * guarda, y las siguientes simulaciones de la misma epidemia con este
+     * compilador (véase <CODE>reutilizar()</CODE>) lo usan sin construirlo
+     * de nuevo.
+     * @param epidemia La epidemia, con todas sus definiciones ya compiladas.
+     * @param generar Si se debe generar el código del sistema.
+     * @param perfil Donde medir las evaluaciones de cada definición, o null
+     *               si no se quieren medir.
+     * @return El sistema de ecuaciones.
+     */
+    public Sistema crearSistema(Epidemia epidemia, boolean generar, Perfil perfil) {
+        if (perfil == null && this.sistema != null && this.sistemaGenerado == generar) {
+            return this.sistema;
+        }
+        Compartimento[] comps = epidemia.getCompartimentos();
+        Atajo[] atjs = epidemia.getAtajos();
+        Proceso[] procs = epidemia.getProcesos();
+        int[] posComps = new int[comps.length];
+        Programa[] programasComps = new Programa[comps.length];
+        int[] posAtajos = new int[atjs.length];
+        Programa[] programasAtajos = new Programa[atjs.length];
+        int[] posProcs = new int[procs.length];
+        Programa[][] tramos = new Programa[procs.length][];
+        int[][] inicios = new int[procs.length][];
+        try {
+            for (int i = 0; i < comps.length; i++) {
+                posComps[i] = this.getPosicion(comps[i].getNombre());
+                programasComps[i] = this.compilar(comps[i].getDefinicionContinua());
+                if (perfil != null) {
+                    programasComps[i] = perfil.medir(programasComps[i], "Compartimento", comps[i].getNombre());
+                }
+            }
+            for (int i = 0; i < atjs.length; i++) {
+                posAtajos[i] = this.getPosicion(atjs[i].getNombre());
+                programasAtajos[i] = this.compilar(atjs[i].getDefinicionContinua());
+                if (perfil != null) {
+                    programasAtajos[i] = perfil.medir(programasAtajos[i], "Atajo", atjs[i].getNombre());
+                }
+            }
+            for (int i = 0; i < procs.length; i++) {
+                posProcs[i] = this.getPosicion(procs[i].getNombre());
+                TramoContinua[] trams = procs[i].getTramosContinua();
+                tramos[i] = new Programa[trams.length];
+                inicios[i] = new int[trams.length];
+                for (int j = 0; j < trams.length; j++) {
+                    tramos[i][j] = this.compilar(trams[j].getDefinicionContinua());
+                    if (perfil != null) {
+                        tramos[i][j] = perfil.medir(tramos[i][j], "Proceso",
+                                procs[i].getNombre() + " (tramo " + (j+1) + ")");
+                    }
+                    inicios[i][j] = trams[j].getTiempoInicio();
+                }
+            }
+        } catch (ParseException ex) {
+            throw new IllegalStateException(ex.getMessage());
+        }
+        SistemaInterpretado interpretado = new SistemaInterpretado(posComps, programasComps,
+                posAtajos, programasAtajos, posProcs, tramos, inicios, perfil == null);
+        if (perfil != null) {
+            return interpretado;
+        }
+        this.sistema = interpretado;
+        this.sistemaGenerado = generar;
+        if (generar) {
+            try {
+                this.sistema = new GeneradorSistema(this.valoresConstantes).generar(interpretado);
+            } catch (IllegalStateException ex) {
+                // El modelo supera algún límite del formato de clase
+                avisarInterpretado(Level.FINE, ex);
+            } catch (LinkageError ex) {
+                // La clase generada no es válida (ClassFormatError, VerifyError...)
+                avisarInterpretado(Level.WARNING, ex);
+            } catch (SecurityException ex) {
+                avisarInterpretado(Level.WARNING, ex);
+            } catch (InstantiationException ex) {
+                avisarInterpretado(Level.WARNING, ex);
+            } catch (IllegalAccessException ex) {
+                avisarInterpretado(Level.WARNING, ex);
+            } catch (NoSuchMethodException ex) {
+                avisarInterpretado(Level.WARNING, ex);
+            } catch (InvocationTargetException ex) {
+                avisarInterpretado(Level.WARNING, ex);
+            }
+        }
+        return this.sistema;
+    }
+
+    /**
+     * Avisa en el registro de que no se ha podido generar el código del
+     * sistema y se sigue con el interpretado, que da los mismos resultados.
+     * @param nivel El nivel del aviso: FINE si el modelo supera un límite
+     *              previsto, WARNING si la clase generada es errónea.
+     * @param causa El error con el que ha fallado la generación.
+     */
+    private static void avisarInterpretado(Level nivel, Throwable causa) {
+        LOGGER.log(nivel, "No se ha podido generar el código del sistema; se usa el interpretado", causa);
+    }
+
+    /**
+     * Método recursivo que genera las instrucciones de un nodo del árbol,
+     * después de las de sus hijos.
+     * @param nodo El nodo a compilar.
+     * @return La posición de la memoria donde queda el valor del nodo.
+     * @throws org.nfunk.jep.ParseException Si el nodo no se puede compilar.
+     */
+    private int compilarNodo(Node nodo) throws ParseException {
+        if (nodo instanceof ASTConstant) {
+            Object valor = ((ASTConstant) nodo).getValue();
+            if (!(valor instanceof Number)) {
+                throw new ParseException("Constante no numérica: " + valor);
+            }
+            return this.posicionConstante(((Number) valor).doubleValue());
+        }
+        if (nodo instanceof ASTVarNode) {
+            return this.posicionNombre(((ASTVarNode) nodo).getName());
+        }
+        if (!(nodo instanceof ASTFunNode)) {
+            throw new ParseException("Nodo no soportado: " + nodo);
+        }
+        ASTFunNode funcion = (ASTFunNode) nodo;
+        int[] operandos = new int[funcion.jjtGetNumChildren()];
+        for (int i = 0; i < operandos.length; i++) {
+            operandos[i] = this.compilarNodo(funcion.jjtGetChild(i));
+        }
+        int codigo = funcion.isOperator()
+                ? this.codigoOperador(funcion.getOperator(), operandos.length)
+                : codigoFuncion(funcion.getName(), operandos.length);
+        return this.compilarLlamada(codigo, funcion.getPFMC(), operandos);
+    }
+
+    /**
+     * Genera las instrucciones de un operador o una función, una vez
+     * generadas las de sus operandos.
+     * @param codigo El código de operación.
+     * @param funcion La función de JEP en la que se delega si el código es
+     *                <CODE>FUNCION</CODE>; en otro caso no se usa.
+     * @param operandos Las posiciones de los operandos.
+     * @return La posición de la memoria donde queda el valor.
+     * @throws org.nfunk.jep.ParseException Si la operación entre constantes
+     *                                      no se puede evaluar.
+     */
+    private int compilarLlamada(int codigo, PostfixMathCommandI funcion, int[] operandos) throws ParseException {
+        if (codigo == Programa.FUNCION) {
+            this.volatil = true;
+            int destino = this.numPosiciones++;
+            this.emitir(codigo, destino);
+            this.instrucciones.add(Integer.valueOf(this.funciones.size()));
+            this.instrucciones.add(Integer.valueOf(operandos.length));
+            for (int i = 0; i < operandos.length; i++) {
+                this.instrucciones.add(Integer.valueOf(operandos[i]));
+            }
+            this.funciones.add(funcion);
+            return destino;
+        }
+        if (codigo == Programa.PRODUCTO && operandos.length > 2) {
+            // Producto de más de dos factores: se encadena de dos en dos,
+            // cada resultado parcial en su propia posición
+            int parcial = operandos[0];
+            for (int i = 1; i < operandos.length; i++) {
+                parcial = this.compilarOperacion(codigo, new int[] {parcial, operandos[i]});
+            }
+            return parcial;
+        }
+        return this.compilarOperacion(codigo, operandos);
+    }
+
+    /**
+     * Devuelve la posición de la que lee el programa en compilación el valor
+     * de un nombre: la suya, o la de su valor si es un parámetro fijado.
+     * @param nombre El nombre usado en la definición.
+     * @return La posición de la memoria.
+     * @throws org.nfunk.jep.ParseException Si el nombre no se ha declarado.
+     */
+    private int posicionNombre(String nombre) throws ParseException {
+        Integer posicion = (Integer) this.posiciones.get(nombre);
+        if (posicion == null) {
+            throw new ParseException("Unrecognized symbol \"" + nombre + "\"");
+        }
+        Double fijo = (Double) this.fijos.get(posicion);
+        if (fijo != null) {
+            return this.posicionConstante(fijo.doubleValue());
+        }
+        if (!this.entradas.contains(posicion)) {
+            this.entradas.add(posicion);
+        }
+        return posicion.intValue();
+    }
+
+    /**
+     * Genera las instrucciones de una operación con instrucción propia, o la
+     * resuelve ya si todos sus operandos son constantes.
+     * @param codigo El código de operación.
+     * @param operandos Las posiciones de los operandos.
+     * @return La posición de la memoria donde queda el valor de la operación.
+     * @throws org.nfunk.jep.ParseException Si la operación entre constantes
+     *                                      no se puede evaluar.
+     */
+    private int compilarOperacion(int codigo, int[] operandos) throws ParseException {
+        if (codigo == Programa.ALEATORIO) {
+            this.volatil = true;
+        } else if (this.sonConstantes(operandos)) {
+            // Operación entre constantes: se resuelve ya
+            return this.posicionConstante(this.plegar(codigo, operandos));
+        }
+        int destino = this.numPosiciones++;
+        this.emitirOperacion(codigo, destino, operandos);
+        return destino;
+    }
+
+    /**
+     * Añade al programa en compilación las instrucciones de una operación
+     * con instrucción propia.
+     * @param codigo El código de operación.
+     * @param destino La posición de destino.
+     * @param operandos Las posiciones de los operandos.
+     */
+    private void emitirOperacion(int codigo, int destino, int[] operandos) {
+        if (codigo == Programa.SUMATORIO) {
+            this.emitir(codigo, destino);
+            this.instrucciones.add(Integer.valueOf(operandos.length));
+            for (int i = 0; i < operandos.length; i++) {
+                this.instrucciones.add(Integer.valueOf(operandos[i]));
+            }
+        } else {
+            this.emitir(codigo, destino,
+                    operandos.length > 0 ? operandos[0] : destino,
+                    operandos.length > 1 ? operandos[1] : destino);
+        }
+    }
+
+    /**
+     * Indica si todos los operandos de una operación son constantes.
+     * @param operandos Las posiciones de los operandos.
+     * @return Si todos son constantes.
+     */
+    private boolean sonConstantes(int[] operandos) {
+        for (int i = 0; i < operandos.length; i++) {
+            if (!this.valoresConstantes.containsKey(Integer.valueOf(operandos[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calcula al compilar el valor de una operación entre constantes. Se
+     * ejecutan las mismas instrucciones que en la simulación, sobre una
+     * memoria aparte, para obtener exactamente el mismo resultado.
+     * @param codigo El código de operación.
+     * @param operandos Las posiciones de los operandos, todos constantes.
+     * @return El valor de la operación.
+     * @throws org.nfunk.jep.ParseException Si la operación no se puede
+     *                                      evaluar.
+     */
+    private double plegar(int codigo, int[] operandos) throws ParseException {
+        // En la memoria aparte el destino es la posición 0 y los operandos
+        // van a continuación
+        double[] m = new double[operandos.length + 1];
+        int[] locales = new int[operandos.length];
+        for (int i = 0; i < operandos.length; i++) {
+            locales[i] = i + 1;
+            m[i+1] = ((Double) this.valoresConstantes.get(Integer.valueOf(operandos[i]))).doubleValue();
+        }
+        Vector programa = this.instrucciones;
+        this.instrucciones = new Vector();
+        this.emitirOperacion(codigo, 0, locales);
+        int[] cod = enteros(this.instrucciones);
+        this.instrucciones = programa;
+        return new Programa(cod, new PostfixMathCommandI[0], 0, new int[0], false).evaluar(m);
+    }
+
+    /**
+     * Traduce un operador de JEP a su código de operación.
+     * @param operador El operador del nodo.
+     * @param numOperandos El número de operandos del nodo.
+     * @return El código de operación.
+     * @throws org.nfunk.jep.ParseException Si el operador no está soportado.
+     */
+    private int codigoOperador(Operator operador, int numOperandos) throws ParseException {
+        OperatorSet ops = this.jep.getOperatorSet();
+        if (operador == ops.getAdd()) {
+            return numOperandos == 2 ? Programa.SUMA : Programa.SUMATORIO;
+        } else if (operador == ops.getSubtract()) {
+            return Programa.RESTA;
+        } else if (operador == ops.getMultiply()) {
+            return Programa.PRODUCTO;
+        } else if (operador == ops.getDivide()) {
+            return Programa.DIVISION;
+        } else if (operador == ops.getMod()) {
+            return Programa.MODULO;
+        } else if (operador == ops.getPower()) {
+            return Programa.POTENCIA;
+        } else if (operador == ops.getUMinus()) {
+            return Programa.NEGACION;
+        } else if (operador == ops.getGT()) {
+            return Programa.MAYOR;
+        } else if (operador == ops.getLT()) {
+            return Programa.MENOR;
+        } else if (operador == ops.getGE()) {
+            return Programa.MAYOR_IGUAL;
+        } else if (operador == ops.getLE()) {
+            return Programa.MENOR_IGUAL;
+        } else if (operador == ops.getEQ()) {
+            return Programa.IGUAL;
+        } else if (operador == ops.getNE()) {
+            return Programa.DISTINTO;
+        } else if (operador == ops.getAnd()) {
+            return Programa.Y;
+        } else if (operador == ops.getOr()) {
+            return Programa.O;
+        } else if (operador == ops.getNot()) {
+            return Programa.NO;
+        }
+        throw new ParseException("Operador no soportado: " + operador.getSymbol());
+    }
+
+    /**
+     * Traduce una función de las añadidas en <CODE>Epidemia.CrearDelphSimJEP()</CODE>
+     * a su código de operación. Las que no tienen instrucción propia (las
+     * distribuciones de probabilidad) se delegan en JEP.
+     * @param nombre El nombre de la función.
+     * @param numOperandos El número de operandos con que se usa.
+     * @return El código de operación.
+     */
+    static int codigoFuncion(String nombre, int numOperandos) {
+        if (nombre.equals("sin")) {
+            return Programa.SIN;
+        } else if (nombre.equals("cos")) {
+            return Programa.COS;
+        } else if (nombre.equals("tan")) {
+            return Programa.TAN;
+        } else if (nombre.equals("asin")) {
+            return Programa.ASIN;
+        } else if (nombre.equals("acos")) {
+            return Programa.ACOS;
+        } else if (nombre.equals("atan")) {
+            return Programa.ATAN;
+        } else if (nombre.equals("atan2")) {
+            return Programa.ATAN2;
+        } else if (nombre.equals("sinh")) {
+            return Programa.SINH;
+        } else if (nombre.equals("cosh")) {
+            return Programa.COSH;
+        } else if (nombre.equals("tanh")) {
+            return Programa.TANH;
+        } else if (nombre.equals("asinh")) {
+            return Programa.ASINH;
+        } else if (nombre.equals("acosh")) {
+            return Programa.ACOSH;
+        } else if (nombre.equals("atanh")) {
+            return Programa.ATANH;
+        } else if (nombre.equals("log")) {
+            return Programa.LOG;
+        } else if (nombre.equals("ln")) {
+            return Programa.LN;
+        } else if (nombre.equals("exp")) {
+            return Programa.EXP;
+        } else if (nombre.equals("pow")) {
+            return Programa.POTENCIA;
+        } else if (nombre.equals("sqrt")) {
+            return Programa.SQRT;
+        } else if (nombre.equals("abs")) {
+            return Programa.ABS;
+        } else if (nombre.equals("mod")) {
+            return Programa.MODULO;
+        } else if (nombre.equals("sum")) {
+            return Programa.SUMATORIO;
+        } else if (nombre.equals("rand")) {
+            return Programa.ALEATORIO;
+        } else if (nombre.equals("round")) {
+            return numOperandos == 1 ? Programa.REDONDEO : Programa.REDONDEO_DECIMALES;
+        } else if (nombre.equals("floor")) {
+            return Programa.SUELO;
+        } else if (nombre.equals("ceil")) {
+            return Programa.TECHO;
+        }
+        return Programa.FUNCION;
+    }
+
+    /**
+     * Devuelve la posición de la memoria de una constante, reservándola si es
+     * la primera vez que aparece.
+     * @param valor El valor de la constante.
+     * @return Su posición en la memoria.
+     */
+    private int posicionConstante(double valor) {
+        Double clave = Double.valueOf(valor);
+        Integer posicion = (Integer) this.constantes.get(clave);
+        if (posicion == null) {
+            posicion = Integer.valueOf(this.numPosiciones++);
+            this.constantes.put(clave, posicion);
+            this.valoresConstantes.put(posicion, clave);
+            this.constantesPendientes.add(clave);
+        }
+        return posicion.intValue();
+    }
+
+    /**
+     * Añade una instrucción de formato fijo al programa en compilación.
+     * @param codigo El código de operación.
+     * @param destino La posición de destino.
+     * @param a La posición del primer operando.
+     * @param b La posición del segundo operando.
+     */
+    private void emitir(int codigo, int destino, int a, int b) {
+        this.emitir(codigo, destino);
+        this.instrucciones.add(Integer.valueOf(a));
+        this.instrucciones.add(Integer.valueOf(b));
+    }
+
+    /**
+     * Añade el comienzo de una instrucción al programa en compilación.
+     * @param codigo El código de operación.
+     * @param destino La posición de destino.
+     */
+    private void emitir(int codigo, int destino) {
+        this.instrucciones.add(Integer.valueOf(codigo));
+        this.instrucciones.add(Integer.valueOf(destino));
+    }
+
+    /**
+     * Convierte un vector de enteros en un array.
+     * @param v El vector.
+     * @return El array con los mismos enteros.
+     */
+    private static int[] enteros(Vector v) {
+        int[] array = new int[v.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ((Integer) v.get(i)).intValue();
+        }
+        return array;
+    }
+}
@@ -0,0 +1,118 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+/**
+ * Lleva la cuenta de los valores de los que depende cada atajo o proceso que
+ * no depende (ni directa ni indirectamente) de los compartimentos, para no
+ * volver a evaluarlo mientras esos valores no cambien. Suele ser el caso de
+ * los procesos constantes por tramos o que sólo dependen de parámetros, que
+ * así se evalúan una vez en lugar de en cada etapa de cada paso.
+ * @author Víctor E. Tamames Gómez
+ */
+final class Dependencias {
+
+    /**
+     * Posiciones de la memoria de las que depende cada nodo.
+     */
+    private int[][] entradas;
+
+    /**
+     * Valores de esas posiciones en la última evaluación de cada nodo.
+     */
+    private double[][] valores;
+
+    /**
+     * Tramo usado en la última evaluación de cada nodo, o -1 si no se ha
+     * evaluado todavía.
+     */
+    private int[] tramos;
+
+    /**
+     * Memoria sobre la que se hizo la última evaluación. Los valores
+     * guardados sólo sirven para ella.
+     */
+    private double[] memoria;
+
+    /**
+     * Constructor de la clase.
+     * @param ents Posiciones de la memoria de las que depende cada nodo.
+     */
+    Dependencias(int[][] ents) {
+        this.entradas = ents;
+        this.valores = new double[ents.length][];
+        this.tramos = new int[ents.length];
+        for (int i = 0; i < ents.length; i++) {
+            this.valores[i] = new double[ents[i].length];
+            this.tramos[i] = -1;
+        }
+    }
+
+    /**
+     * Devuelve unas dependencias de los mismos nodos que no recuerdan
+     * ninguna evaluación, para otro sistema.
+     * @return Las nuevas dependencias.
+     */
+    Dependencias copiar() {
+        return new Dependencias(this.entradas);
+    }
+
+    /**
+     * Método para obtener el número de nodos.
+     * @return El número de nodos.
+     */
+    int getNumNodos() {
+        return this.entradas.length;
+    }
+
+    /**
+     * Indica si hay que volver a evaluar un nodo porque ha cambiado el tramo
+     * o alguno de los valores de los que depende, y en ese caso guarda los
+     * nuevos para la siguiente comprobación.
+     * @param nodo El índice del nodo.
+     * @param tramo El tramo que corresponde evaluar (0 en los atajos).
+     * @param m La memoria de la simulación.
+     * @return Si hay que evaluar el nodo.
+     */
+    boolean pendiente(int nodo, int tramo, double[] m) {
+        if (m != this.memoria) {
+            this.memoria = m;
+            for (int i = 0; i < this.tramos.length; i++) {
+                this.tramos[i] = -1;
+            }
+        }
+        boolean pendiente = this.tramos[nodo] != tramo;
+        this.tramos[nodo] = tramo;
+        int[] ents = this.entradas[nodo];
+        double[] vals = this.valores[nodo];
+        for (int i = 0; i < ents.length; i++) {
+            double valor = m[ents[i]];
+            if (Double.doubleToLongBits(valor) != Double.doubleToLongBits(vals[i])) {
+                vals[i] = valor;
+                pendiente = true;
+            }
+        }
+        return pendiente;
+    }
+}
@@ -0,0 +1,97 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import org.nfunk.jep.function.PostfixMathCommandI;
+
+/**
+ * Una definición ya analizada, en notación postfija, a falta de asignar
+ * posiciones de la memoria a sus nombres, constantes y resultados
+ * intermedios. Como no depende del estado del compilador, el análisis de
+ * muchas definiciones se puede hacer a la vez en varios hilos; después el
+ * compilador recorre cada expresión, en el orden de la simulación, para
+ * generar su programa.
+ * <p>El código está formado por elementos de cuatro enteros: el tipo
+ * (<CODE>CONSTANTE</CODE>, <CODE>NOMBRE</CODE> u <CODE>OPERACION</CODE>) y, según
+ * el tipo, el índice de la constante o del nombre y la posición del nombre en
+ * el texto, o bien el código de operación de <CODE>Programa</CODE>, el número
+ * de operandos (que se toman de la pila) y el índice de la función de JEP en
+ * la que se delega, o -1.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+final class Expresion {
+
+    static final int CONSTANTE = 0;
+    static final int NOMBRE = 1;
+    static final int OPERACION = 2;
+
+    /**
+     * Los elementos de la expresión en notación postfija.
+     */
+    int[] codigo;
+
+    /**
+     * Las constantes de la expresión.
+     */
+    double[] constantes;
+
+    /**
+     * Los nombres usados en la expresión.
+     */
+    String[] nombres;
+
+    /**
+     * Las funciones de JEP en las que se delega.
+     */
+    PostfixMathCommandI[] funciones;
+
+    /**
+     * Número máximo de valores en la pila al recorrer la expresión.
+     */
+    int profundidad;
+
+    /**
+     * Los nombres sumados, si la definición no es más que una suma de
+     * nombres ("A + B + C"), o null en otro caso.
+     */
+    String[] sumandos;
+
+    /**
+     * Constructor de la clase.
+     * @param cod Los elementos en notación postfija.
+     * @param consts Las constantes.
+     * @param noms Los nombres.
+     * @param funcs Las funciones de JEP.
+     * @param prof La profundidad máxima de la pila.
+     * @param sums Los nombres sumados, o null.
+     */
+    Expresion(int[] cod, double[] consts, String[] noms, PostfixMathCommandI[] funcs, int prof, String[] sums) {
+        this.codigo = cod;
+        this.constantes = consts;
+        this.nombres = noms;
+        this.funciones = funcs;
+        this.profundidad = prof;
+        this.sumandos = sums;
+    }
+}
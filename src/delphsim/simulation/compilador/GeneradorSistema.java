@@ -0,0 +1,832 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Vector;
+
+import org.nfunk.jep.function.PostfixMathCommandI;
+
+/**
+ * Genera para un modelo concreto una subclase de <CODE>SistemaGenerado</CODE>
+ * cuyo código, escrito directamente en instrucciones de la máquina virtual,
+ * contiene todas las definiciones de atajos, procesos (con la elección de
+ * tramo incluida) y compartimentos. Así el compilador JIT puede optimizar el
+ * sistema completo igual que si se hubiera escrito a mano.
+ * <p>El código se reparte en métodos pequeños, por debajo del tamaño a partir
+ * del cual la máquina virtual deja de compilar un método (8000 bytes), y las
+ * constantes se escriben en el propio código en lugar de leerse de la
+ * memoria. Cada clase se carga con su propio <CODE>ClassLoader</CODE>, de
+ * forma que se descarga cuando deja de usarse.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+class GeneradorSistema {
+
+    /**
+     * Tamaño máximo, en bytes, del código de cada método generado.
+     */
+    private static final int LIMITE_BLOQUE = 3000;
+
+    /**
+     * Número máximo de llamadas a otros métodos desde un mismo método.
+     */
+    private static final int LIMITE_LLAMADAS = 1000;
+
+    /**
+     * Número máximo de términos de un sumatorio por instrucción generada.
+     */
+    private static final int LIMITE_SUMANDOS = 500;
+
+    /**
+     * Nombre interno de la clase base.
+     */
+    private static final String BASE = "delphsim/simulation/compilador/SistemaGenerado";
+
+    /**
+     * Signatura de todos los métodos generados: (double t, double[] m).
+     */
+    private static final String FIRMA = "(D[D)V";
+
+    /**
+     * Nombres de los métodos de <CODE>java.lang.Math</CODE> o de la clase base
+     * que implementan cada código de operación, o null si no corresponde.
+     */
+    private static final String[] FUNCIONES = new String[Programa.FUNCION + 1];
+
+    static {
+        FUNCIONES[Programa.POTENCIA] = "java/lang/Math.pow(DD)D";
+        FUNCIONES[Programa.MAYOR] = BASE + ".mayor(DD)D";
+        FUNCIONES[Programa.MENOR] = BASE + ".menor(DD)D";
+        FUNCIONES[Programa.MAYOR_IGUAL] = BASE + ".mayorIgual(DD)D";
+        FUNCIONES[Programa.MENOR_IGUAL] = BASE + ".menorIgual(DD)D";
+        FUNCIONES[Programa.IGUAL] = BASE + ".igual(DD)D";
+        FUNCIONES[Programa.DISTINTO] = BASE + ".distinto(DD)D";
+        FUNCIONES[Programa.Y] = BASE + ".y(DD)D";
+        FUNCIONES[Programa.O] = BASE + ".o(DD)D";
+        FUNCIONES[Programa.NO] = BASE + ".no(D)D";
+        FUNCIONES[Programa.SIN] = "java/lang/Math.sin(D)D";
+        FUNCIONES[Programa.COS] = "java/lang/Math.cos(D)D";
+        FUNCIONES[Programa.TAN] = "java/lang/Math.tan(D)D";
+        FUNCIONES[Programa.ASIN] = "java/lang/Math.asin(D)D";
+        FUNCIONES[Programa.ACOS] = "java/lang/Math.acos(D)D";
+        FUNCIONES[Programa.ATAN] = "java/lang/Math.atan(D)D";
+        FUNCIONES[Programa.ATAN2] = "java/lang/Math.atan2(DD)D";
+        FUNCIONES[Programa.SINH] = "java/lang/Math.sinh(D)D";
+        FUNCIONES[Programa.COSH] = "java/lang/Math.cosh(D)D";
+        FUNCIONES[Programa.TANH] = "java/lang/Math.tanh(D)D";
+        FUNCIONES[Programa.ASINH] = BASE + ".asinh(D)D";
+        FUNCIONES[Programa.ACOSH] = BASE + ".acosh(D)D";
+        FUNCIONES[Programa.ATANH] = BASE + ".atanh(D)D";
+        FUNCIONES[Programa.LOG] = BASE + ".log(D)D";
+        FUNCIONES[Programa.LN] = "java/lang/Math.log(D)D";
+        FUNCIONES[Programa.EXP] = "java/lang/Math.exp(D)D";
+        FUNCIONES[Programa.SQRT] = "java/lang/Math.sqrt(D)D";
+        FUNCIONES[Programa.ABS] = "java/lang/Math.abs(D)D";
+        FUNCIONES[Programa.REDONDEO] = "java/lang/Math.rint(D)D";
+        FUNCIONES[Programa.REDONDEO_DECIMALES] = BASE + ".redondear(DD)D";
+        FUNCIONES[Programa.SUELO] = "java/lang/Math.floor(D)D";
+        FUNCIONES[Programa.TECHO] = "java/lang/Math.ceil(D)D";
+        FUNCIONES[Programa.ALEATORIO] = "java/lang/Math.random()D";
+    }
+
+    /**
+     * Número de clases generadas, para dar a cada una un nombre distinto.
+     */
+    private static int numClases = 0;
+
+    /**
+     * Nombre interno de la clase que se está generando.
+     */
+    private String nombre;
+
+    /**
+     * Valor de las constantes, por su posición en la memoria.
+     */
+    private HashMap constantes;
+
+    /**
+     * Entradas de la tabla de constantes de la clase ya escritas.
+     */
+    private Codigo tabla = new Codigo();
+
+    /**
+     * Número de entradas de la tabla de constantes más uno, como lo cuenta
+     * el formato de clase.
+     */
+    private int numEntradas = 1;
+
+    /**
+     * Índice de cada entrada de la tabla de constantes, para no repetirlas.
+     */
+    private HashMap entradas = new HashMap();
+
+    /**
+     * Métodos de la clase ya escritos.
+     */
+    private Codigo metodos = new Codigo();
+
+    /**
+     * Número de métodos de la clase.
+     */
+    private int numMetodos = 0;
+
+    /**
+     * Número de métodos auxiliares generados, para darles nombres distintos.
+     */
+    private int numAuxiliares = 0;
+
+    /**
+     * Métodos que hay que llamar, en orden, desde el método en construcción.
+     */
+    private Vector llamadas;
+
+    /**
+     * Código del bloque de instrucciones abierto, o null si no hay ninguno.
+     */
+    private Codigo bloque;
+
+    /**
+     * Funciones de JEP delegadas desde el código generado.
+     */
+    private Vector funciones = new Vector();
+
+    /**
+     * Posiciones de los operandos de cada función delegada.
+     */
+    private Vector argumentos = new Vector();
+
+    /**
+     * Constructor de la clase.
+     * @param consts Valor de las constantes, por su posición en la memoria.
+     */
+    GeneradorSistema(HashMap consts) {
+        this.constantes = consts;
+        synchronized (GeneradorSistema.class) {
+            this.nombre = "delphsim/simulation/compilador/generado/Sistema" + numClases++;
+        }
+    }
+
+    /**
+     * Genera, carga e instancia la clase del sistema descrito.
+     * @param sistema La descripción del sistema.
+     * @return Una instancia de la nueva clase, lista para usar.
+     * @throws java.lang.IllegalStateException Si el modelo supera algún
+     *                                          límite del formato de clase.
+     * @throws java.lang.InstantiationException Si no se ha podido instanciar
+     *                                          la clase generada.
+     * @throws java.lang.IllegalAccessException Si no se ha podido acceder a
+     *                                          su constructor.
+     * @throws java.lang.NoSuchMethodException Si la clase generada no tiene
+     *                                         el constructor sin argumentos.
+     * @throws java.lang.reflect.InvocationTargetException Si su constructor
+     *                                                     ha fallado.
+     */
+    Sistema generar(SistemaInterpretado sistema) throws InstantiationException,
+            IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        // Atajos y procesos
+        this.llamadas = new Vector();
+        if (sistema.sumas != null) {
+            this.emitirPrograma(sistema.sumas);
+        }
+        for (int i = 0; i < sistema.atajos.length; i++) {
+            if (sistema.salidasSumas[i] >= 0) {
+                this.emitirCopia(sistema.posAtajos[i], sistema.salidasSumas[i]);
+            } else if (sistema.nodosAtajos[i] < 0) {
+                this.emitirPrograma(sistema.atajos[i]);
+                this.emitirCopia(sistema.posAtajos[i], sistema.atajos[i].salida);
+            } else {
+                // Como un proceso de un solo tramo, para poder saltárselo
+                this.cerrarBloque();
+                this.emitirProceso(sistema.posAtajos[i], sistema.nodosAtajos[i],
+                        new Programa[] {sistema.atajos[i]}, new int[] {0});
+            }
+        }
+        for (int i = 0; i < sistema.tramos.length; i++) {
+            this.cerrarBloque();
+            this.emitirProceso(sistema.posProcesos[i], sistema.nodosProcesos[i],
+                    sistema.tramos[i], sistema.iniciosTramos[i]);
+        }
+        this.cerrarBloque();
+        this.anadirMetodo(0x0004, "evaluarAuxiliares", FIRMA, this.llamarTodos(this.llamadas));
+        // Compartimentos
+        this.llamadas = new Vector();
+        int[] salidas = new int[sistema.compartimentos.length];
+        this.emitirPrograma(sistema.derivadas);
+        for (int i = 0; i < sistema.compartimentos.length; i++) {
+            salidas[i] = sistema.salidasDerivadas[i];
+            if (salidas[i] < 0) {
+                this.emitirPrograma(sistema.compartimentos[i]);
+                salidas[i] = sistema.compartimentos[i].salida;
+            }
+        }
+        this.cerrarBloque();
+        this.anadirMetodo(0x0004, "evaluarDerivadas", FIRMA, this.llamarTodos(this.llamadas));
+        // Constructor: super();
+        Codigo c = new Codigo();
+        c.u1(0x2a);
+        c.u1(0xb7);
+        c.u2(this.metodo(BASE, "<init>", "()V"));
+        c.u1(0xb1);
+        this.anadirMetodo(0x0001, "<init>", "()V", c);
+
+        // Cargar e instanciar la clase
+        byte[] clase = this.ensamblar();
+        Class generada = new Cargador(SistemaGenerado.class.getClassLoader())
+                .definir(this.nombre.replace('/', '.'), clase);
+        SistemaGenerado instancia = (SistemaGenerado) generada.getDeclaredConstructor().newInstance();
+        PostfixMathCommandI[] funcs = new PostfixMathCommandI[this.funciones.size()];
+        this.funciones.toArray(funcs);
+        int[][] args = new int[this.argumentos.size()][];
+        this.argumentos.toArray(args);
+        instancia.iniciar(sistema.posCompartimentos, salidas, funcs, args, sistema.dependencias,
+                sistema.estructura());
+        return instancia;
+    }
+
+    /**
+     * Escribe las instrucciones de un programa en el bloque abierto.
+     * @param programa El programa.
+     */
+    private void emitirPrograma(Programa programa) {
+        int[] cod = programa.codigo;
+        int pc = 0;
+        while (pc < cod.length) {
+            int d = cod[pc+1];
+            if (cod[pc] == Programa.SUMATORIO) {
+                // Los sumatorios muy largos se parten en varias instrucciones
+                int n = cod[pc+2];
+                for (int desde = 0; desde < n || desde == 0; desde += LIMITE_SUMANDOS) {
+                    Codigo c = new Codigo();
+                    c.u1(0x2d);
+                    this.entero(c, d);
+                    if (desde == 0) {
+                        c.u1(0x0e);
+                    } else {
+                        this.cargar(c, d);
+                    }
+                    for (int i = desde; i < n && i < desde + LIMITE_SUMANDOS; i++) {
+                        this.cargar(c, cod[pc+3+i]);
+                        c.u1(0x63);
+                    }
+                    c.u1(0x52);
+                    this.anadirABloque(c);
+                }
+                pc += 3 + n;
+            } else if (cod[pc] == Programa.FUNCION) {
+                int n = cod[pc+3];
+                int[] args = new int[n];
+                System.arraycopy(cod, pc+4, args, 0, n);
+                Codigo c = new Codigo();
+                c.u1(0x2d);
+                this.entero(c, d);
+                c.u1(0x2a);
+                this.entero(c, this.funciones.size());
+                c.u1(0x2d);
+                c.u1(0xb6);
+                c.u2(this.metodo(BASE, "delegar", "(I[D)D"));
+                c.u1(0x52);
+                this.anadirABloque(c);
+                this.funciones.add(programa.funciones[cod[pc+2]]);
+                this.argumentos.add(args);
+                pc += 4 + n;
+            } else {
+                Codigo c = new Codigo();
+                c.u1(0x2d);
+                this.entero(c, d);
+                this.operacion(c, cod[pc], cod[pc+2], cod[pc+3]);
+                c.u1(0x52);
+                this.anadirABloque(c);
+                pc += 4;
+            }
+        }
+    }
+
+    /**
+     * Escribe el cálculo de una operación de formato fijo, dejando el
+     * resultado en la pila.
+     * @param c El código donde escribir.
+     * @param op El código de operación.
+     * @param a La posición del primer operando.
+     * @param b La posición del segundo operando.
+     */
+    private void operacion(Codigo c, int op, int a, int b) {
+        switch (op) {
+            case Programa.SUMA:
+            case Programa.RESTA:
+            case Programa.PRODUCTO:
+            case Programa.DIVISION:
+            case Programa.MODULO:
+                // dadd, dsub, dmul, ddiv y drem son consecutivas de 4 en 4
+                this.cargar(c, a);
+                this.cargar(c, b);
+                c.u1(0x63 + 4*(op - Programa.SUMA));
+                return;
+            case Programa.NEGACION:
+                this.cargar(c, a);
+                c.u1(0x77);
+                return;
+            case Programa.ALEATORIO:
+                break;
+            default:
+                if (op >= FUNCIONES.length || FUNCIONES[op] == null) {
+                    throw new IllegalStateException("Instrucción desconocida: " + op);
+                }
+                this.cargar(c, a);
+                if (FUNCIONES[op].indexOf("(DD)") > 0) {
+                    this.cargar(c, b);
+                }
+        }
+        String funcion = FUNCIONES[op];
+        int punto = funcion.indexOf('.');
+        int parentesis = funcion.indexOf('(');
+        c.u1(0xb8);
+        c.u2(this.metodo(funcion.substring(0, punto), funcion.substring(punto+1, parentesis),
+                funcion.substring(parentesis)));
+    }
+
+    /**
+     * Escribe en el bloque abierto la copia de una posición de la memoria en
+     * otra: <CODE>m[destino] = m[origen]</CODE>.
+     * @param destino La posición de destino.
+     * @param origen La posición de origen.
+     */
+    private void emitirCopia(int destino, int origen) {
+        Codigo c = new Codigo();
+        this.copiar(c, destino, origen);
+        this.anadirABloque(c);
+    }
+
+    /**
+     * Genera el método de un proceso, que elige el tramo según el instante
+     * con el mismo criterio que <CODE>Proceso.getDefinicionContinua(double)</CODE>
+     * (por bisección si los tramos están en orden), lo evalúa y deja el valor en la posición del proceso. Se añade a las
+     * llamadas del método en construcción.
+     * @param posicion La posición del proceso en la memoria.
+     * @param nodo Su índice en las dependencias, o -1 si hay que evaluarlo
+     *             siempre.
+     * @param tramos El programa de cada tramo.
+     * @param inicios El tiempo de inicio de cada tramo.
+     */
+    private void emitirProceso(int posicion, int nodo, Programa[] tramos, int[] inicios) {
+        // Primero el código de cada tramo, en sus propios bloques
+        Vector exteriores = this.llamadas;
+        Vector[] llamadasTramos = new Vector[tramos.length];
+        for (int j = 0; j < tramos.length; j++) {
+            this.llamadas = new Vector();
+            this.emitirPrograma(tramos[j]);
+            this.cerrarBloque();
+            llamadasTramos[j] = this.llamadas;
+        }
+        this.llamadas = exteriores;
+        // Y después la elección del tramo
+        Codigo c = new Codigo();
+        int ultimo = tramos.length-1;
+        if (ultimo > 0 && SistemaInterpretado.ordenados(inicios)) {
+            // Por bisección: if (!(t >= inicios[0])) se usa el último tramo
+            c.u1(0x27);
+            c.u1(0x14);
+            c.u2(this.doble(inicios[0]));
+            c.u1(0x97);
+            int salto = c.tam;
+            c.u1(0x9b);
+            c.u2(0);
+            this.emitirBiseccion(c, 0, ultimo, posicion, nodo, tramos, inicios, llamadasTramos);
+            c.saltar(salto, c.tam);
+        } else {
+            for (int j = 0; j < ultimo; j++) {
+                // if (t >= inicios[j] && t < inicios[j+1])
+                c.u1(0x27);
+                c.u1(0x14);
+                c.u2(this.doble(inicios[j]));
+                c.u1(0x97);
+                int salto1 = c.tam;
+                c.u1(0x9b);
+                c.u2(0);
+                c.u1(0x27);
+                c.u1(0x14);
+                c.u2(this.doble(inicios[j+1]));
+                c.u1(0x98);
+                int salto2 = c.tam;
+                c.u1(0x9c);
+                c.u2(0);
+                this.emitirTramo(c, posicion, nodo, j, tramos[j], llamadasTramos[j]);
+                c.saltar(salto1, c.tam);
+                c.saltar(salto2, c.tam);
+            }
+        }
+        this.emitirTramo(c, posicion, nodo, ultimo, tramos[ultimo], llamadasTramos[ultimo]);
+        String metodo = "p" + this.numAuxiliares++;
+        this.anadirMetodo(0x0002, metodo, FIRMA, c);
+        this.llamadas.add(metodo);
+    }
+
+    /**
+     * Método recursivo que escribe la elección por bisección entre los tramos
+     * ordenados <CODE>desde</CODE> a <CODE>hasta</CODE>: el último que empieza
+     * antes del instante.
+     * @param c El código donde escribir.
+     * @param desde El primer tramo candidato.
+     * @param hasta El último tramo candidato.
+     * @param posicion La posición del proceso en la memoria.
+     * @param nodo Su índice en las dependencias, o -1.
+     * @param tramos El programa de cada tramo.
+     * @param inicios El tiempo de inicio de cada tramo.
+     * @param llamadasTramos Los métodos que evalúan cada tramo.
+     */
+    private void emitirBiseccion(Codigo c, int desde, int hasta, int posicion, int nodo,
+                                 Programa[] tramos, int[] inicios, Vector[] llamadasTramos) {
+        if (desde == hasta) {
+            this.emitirTramo(c, posicion, nodo, desde, tramos[desde], llamadasTramos[desde]);
+            return;
+        }
+        // if (t < inicios[medio]) entre desde y medio-1, si no entre medio y hasta
+        int medio = (desde + hasta + 1) >>> 1;
+        c.u1(0x27);
+        c.u1(0x14);
+        c.u2(this.doble(inicios[medio]));
+        c.u1(0x98);
+        int salto = c.tam;
+        c.u1(0x9c);
+        c.u2(0);
+        this.emitirBiseccion(c, desde, medio-1, posicion, nodo, tramos, inicios, llamadasTramos);
+        c.saltar(salto, c.tam);
+        this.emitirBiseccion(c, medio, hasta, posicion, nodo, tramos, inicios, llamadasTramos);
+    }
+
+    /**
+     * Escribe la evaluación de un tramo, la copia de su valor en la posición
+     * del proceso y la vuelta del método. Si el proceso no hay que evaluarlo
+     * siempre, antes se comprueba si han cambiado sus entradas o su tramo.
+     * @param c El código donde escribir.
+     * @param posicion La posición del proceso en la memoria.
+     * @param nodo Su índice en las dependencias, o -1.
+     * @param indice El índice del tramo.
+     * @param tramo El programa del tramo.
+     * @param llamadasTramo Los métodos que evalúan el tramo.
+     */
+    private void emitirTramo(Codigo c, int posicion, int nodo, int indice, Programa tramo, Vector llamadasTramo) {
+        if (nodo >= 0) {
+            // if (!this.pendiente(nodo, indice, m)) return;
+            c.u1(0x2a);
+            this.entero(c, nodo);
+            this.entero(c, indice);
+            c.u1(0x2d);
+            c.u1(0xb6);
+            c.u2(this.metodo(BASE, "pendiente", "(II[D)Z"));
+            c.u1(0x9a);
+            c.u2(4);
+            c.u1(0xb1);
+        }
+        this.llamar(c, llamadasTramo);
+        this.copiar(c, posicion, tramo.salida);
+        c.u1(0xb1);
+    }
+
+    /**
+     * Añade unas instrucciones al bloque abierto, cerrándolo antes si con
+     * ellas superaría el tamaño máximo.
+     * @param c Las instrucciones.
+     */
+    private void anadirABloque(Codigo c) {
+        if (this.bloque != null && this.bloque.tam + c.tam > LIMITE_BLOQUE) {
+            this.cerrarBloque();
+        }
+        if (this.bloque == null) {
+            this.bloque = new Codigo();
+        }
+        this.bloque.anadir(c);
+    }
+
+    /**
+     * Convierte el bloque abierto, si lo hay, en un método, y lo añade a las
+     * llamadas del método en construcción.
+     */
+    private void cerrarBloque() {
+        if (this.bloque != null) {
+            this.bloque.u1(0xb1);
+            String metodo = "b" + this.numAuxiliares++;
+            this.anadirMetodo(0x0002, metodo, FIRMA, this.bloque);
+            this.llamadas.add(metodo);
+            this.bloque = null;
+        }
+    }
+
+    /**
+     * Construye el código que llama en orden a todos los métodos indicados,
+     * agrupándolos en métodos intermedios si son demasiados.
+     * @param metodos Los nombres de los métodos.
+     * @return El código.
+     */
+    private Codigo llamarTodos(Vector metodos) {
+        while (metodos.size() > LIMITE_LLAMADAS) {
+            Vector grupos = new Vector();
+            for (int i = 0; i < metodos.size(); i += LIMITE_LLAMADAS) {
+                Codigo c = new Codigo();
+                this.llamar(c, new Vector(metodos.subList(i, Math.min(i + LIMITE_LLAMADAS, metodos.size()))));
+                c.u1(0xb1);
+                String metodo = "g" + this.numAuxiliares++;
+                this.anadirMetodo(0x0002, metodo, FIRMA, c);
+                grupos.add(metodo);
+            }
+            metodos = grupos;
+        }
+        Codigo c = new Codigo();
+        this.llamar(c, metodos);
+        c.u1(0xb1);
+        return c;
+    }
+
+    /**
+     * Escribe las llamadas a los métodos indicados: <CODE>this.metodo(t, m)</CODE>.
+     * @param c El código donde escribir.
+     * @param metodos Los nombres de los métodos.
+     */
+    private void llamar(Codigo c, Vector metodos) {
+        for (int i = 0; i < metodos.size(); i++) {
+            c.u1(0x2a);
+            c.u1(0x27);
+            c.u1(0x2d);
+            c.u1(0xb7);
+            c.u2(this.metodo(this.nombre, (String) metodos.get(i), FIRMA));
+        }
+    }
+
+    /**
+     * Escribe <CODE>m[destino] = m[origen]</CODE>.
+     * @param c El código donde escribir.
+     * @param destino La posición de destino.
+     * @param origen La posición de origen.
+     */
+    private void copiar(Codigo c, int destino, int origen) {
+        c.u1(0x2d);
+        this.entero(c, destino);
+        this.cargar(c, origen);
+        c.u1(0x52);
+    }
+
+    /**
+     * Escribe la carga del valor de una posición de la memoria, o del valor
+     * de la constante directamente si es una constante.
+     * @param c El código donde escribir.
+     * @param posicion La posición de la memoria.
+     */
+    private void cargar(Codigo c, int posicion) {
+        Double constante = (Double) this.constantes.get(Integer.valueOf(posicion));
+        if (constante != null) {
+            c.u1(0x14);
+            c.u2(this.doble(constante.doubleValue()));
+        } else {
+            c.u1(0x2d);
+            this.entero(c, posicion);
+            c.u1(0x31);
+        }
+    }
+
+    /**
+     * Escribe la carga de un entero en la pila con la instrucción más corta.
+     * @param c El código donde escribir.
+     * @param valor El entero.
+     */
+    private void entero(Codigo c, int valor) {
+        if (valor >= -1 && valor <= 5) {
+            c.u1(0x03 + valor);
+        } else if (valor >= Byte.MIN_VALUE && valor <= Byte.MAX_VALUE) {
+            c.u1(0x10);
+            c.u1(valor);
+        } else if (valor >= Short.MIN_VALUE && valor <= Short.MAX_VALUE) {
+            c.u1(0x11);
+            c.u2(valor);
+        } else {
+            Integer clave = Integer.valueOf(valor);
+            c.u1(0x13);
+            c.u2(this.entrada("I" + valor, 3, clave, 1));
+        }
+    }
+
+    /**
+     * Añade un método a la clase.
+     * @param acceso Los modificadores de acceso.
+     * @param nombreMetodo El nombre del método.
+     * @param firma La signatura del método.
+     * @param codigo Su código.
+     */
+    private void anadirMetodo(int acceso, String nombreMetodo, String firma, Codigo codigo) {
+        if (codigo.tam > 65535) {
+            throw new IllegalStateException("Método demasiado grande: " + nombreMetodo);
+        }
+        this.metodos.u2(acceso);
+        this.metodos.u2(this.utf8(nombreMetodo));
+        this.metodos.u2(this.utf8(firma));
+        this.metodos.u2(1);
+        this.metodos.u2(this.utf8("Code"));
+        this.metodos.u4(12 + codigo.tam);
+        this.metodos.u2(12);
+        this.metodos.u2(4);
+        this.metodos.u4(codigo.tam);
+        this.metodos.anadir(codigo);
+        this.metodos.u2(0);
+        this.metodos.u2(0);
+        this.numMetodos++;
+    }
+
+    /**
+     * Junta todas las partes de la clase en el formato de los archivos .class
+     * (versión 49, la de Java 5, que no necesita tablas de marcos de pila).
+     * @return Los bytes de la clase.
+     */
+    private byte[] ensamblar() {
+        int esta = this.clase(this.nombre);
+        int base = this.clase(BASE);
+        if (this.numEntradas > 65535) {
+            throw new IllegalStateException("Demasiadas constantes");
+        }
+        Codigo c = new Codigo();
+        c.u4(0xCAFEBABE);
+        c.u2(0);
+        c.u2(49);
+        c.u2(this.numEntradas);
+        c.anadir(this.tabla);
+        c.u2(0x0031);
+        c.u2(esta);
+        c.u2(base);
+        c.u2(0);
+        c.u2(0);
+        c.u2(this.numMetodos);
+        c.anadir(this.metodos);
+        c.u2(0);
+        return c.toByteArray();
+    }
+
+    // Entradas de la tabla de constantes
+
+    private int utf8(String texto) {
+        return this.entrada("U" + texto, 1, texto, 1);
+    }
+
+    private int clase(String nombreInterno) {
+        Integer indice = (Integer) this.entradas.get("C" + nombreInterno);
+        if (indice != null) {
+            return indice.intValue();
+        }
+        return this.entrada("C" + nombreInterno, 7, Integer.valueOf(this.utf8(nombreInterno)), 1);
+    }
+
+    private int metodo(String nombreClase, String nombreMetodo, String firma) {
+        String clave = "M" + nombreClase + "." + nombreMetodo + firma;
+        Integer indice = (Integer) this.entradas.get(clave);
+        if (indice != null) {
+            return indice.intValue();
+        }
+        int cls = this.clase(nombreClase);
+        int nyt = this.entrada("N" + nombreMetodo + firma, 12,
+                new int[] {this.utf8(nombreMetodo), this.utf8(firma)}, 1);
+        return this.entrada(clave, 10, new int[] {cls, nyt}, 1);
+    }
+
+    private int doble(double valor) {
+        long bits = Double.doubleToRawLongBits(valor);
+        return this.entrada("D" + bits, 6, Long.valueOf(bits), 2);
+    }
+
+    /**
+     * Devuelve el índice de una entrada de la tabla de constantes, añadiéndola
+     * si no estaba.
+     * @param clave Clave única de la entrada.
+     * @param tipo La etiqueta del tipo de entrada en el formato de clase.
+     * @param valor El contenido de la entrada.
+     * @param huecos Los índices que ocupa (2 para los double).
+     * @return El índice de la entrada.
+     */
+    private int entrada(String clave, int tipo, Object valor, int huecos) {
+        Integer indice = (Integer) this.entradas.get(clave);
+        if (indice != null) {
+            return indice.intValue();
+        }
+        this.tabla.u1(tipo);
+        if (tipo == 1) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                new DataOutputStream(bytes).writeUTF((String) valor);
+                this.tabla.anadir(bytes.toByteArray());
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex.getMessage());
+            }
+        } else if (tipo == 3) {
+            this.tabla.u4(((Integer) valor).intValue());
+        } else if (tipo == 6) {
+            long bits = ((Long) valor).longValue();
+            this.tabla.u4((int) (bits >>> 32));
+            this.tabla.u4((int) bits);
+        } else if (tipo == 7) {
+            this.tabla.u2(((Integer) valor).intValue());
+        } else {
+            int[] refs = (int[]) valor;
+            this.tabla.u2(refs[0]);
+            this.tabla.u2(refs[1]);
+        }
+        indice = Integer.valueOf(this.numEntradas);
+        this.numEntradas += huecos;
+        this.entradas.put(clave, indice);
+        return indice.intValue();
+    }
+
+    /**
+     * Secuencia de bytes que crece según se escribe en ella, con acceso a lo
+     * ya escrito para poder completar los saltos.
+     */
+    private static class Codigo {
+
+        byte[] datos = new byte[256];
+
+        int tam = 0;
+
+        void u1(int valor) {
+            if (this.tam == this.datos.length) {
+                byte[] nuevos = new byte[2*this.datos.length];
+                System.arraycopy(this.datos, 0, nuevos, 0, this.tam);
+                this.datos = nuevos;
+            }
+            this.datos[this.tam++] = (byte) valor;
+        }
+
+        void u2(int valor) {
+            this.u1(valor >>> 8);
+            this.u1(valor);
+        }
+
+        void u4(int valor) {
+            this.u2(valor >>> 16);
+            this.u2(valor);
+        }
+
+        void anadir(byte[] bytes) {
+            for (int i = 0; i < bytes.length; i++) {
+                this.u1(bytes[i]);
+            }
+        }
+
+        void anadir(Codigo otro) {
+            for (int i = 0; i < otro.tam; i++) {
+                this.u1(otro.datos[i]);
+            }
+        }
+
+        /**
+         * Completa el desplazamiento de la instrucción de salto que empieza
+         * en <CODE>origen</CODE> para que salte a <CODE>destino</CODE>.
+         */
+        void saltar(int origen, int destino) {
+            int desplazamiento = destino - origen;
+            if (desplazamiento > Short.MAX_VALUE) {
+                throw new IllegalStateException("Salto demasiado largo");
+            }
+            this.datos[origen+1] = (byte) (desplazamiento >>> 8);
+            this.datos[origen+2] = (byte) desplazamiento;
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[this.tam];
+            System.arraycopy(this.datos, 0, bytes, 0, this.tam);
+            return bytes;
+        }
+    }
+
+    /**
+     * Cargador de una única clase generada.
+     */
+    private static class Cargador extends ClassLoader {
+
+        Cargador(ClassLoader padre) {
+            super(padre);
+        }
+
+        Class definir(String nombreClase, byte[] bytes) {
+            return this.defineClass(nombreClase, bytes, 0, bytes.length);
+        }
+    }
+}
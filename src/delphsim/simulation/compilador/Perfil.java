@@ -0,0 +1,200 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * Mide, durante una simulación, cuántas veces se evalúa cada definición del
+ * modelo (parámetros, atajos, tramos de procesos, compartimentos y funciones
+ * de los resultados) y el tiempo acumulado que se ha empleado en ello, para
+ * poder localizar las definiciones más costosas.
+ * <p>Las definiciones a medir se envuelven con <CODE>medir</CODE> en un
+ * programa equivalente que cronometra cada evaluación. Para que el tiempo de
+ * cada una sea el suyo, al medir se usa el sistema interpretado y sin unir
+ * los compartimentos ni los atajos que son sumas.</p>
+ * @author Víctor E. Tamames Gómez
+ */
+public class Perfil {
+
+    /**
+     * Los títulos de las columnas del informe.
+     */
+    public static final String[] COLUMNAS = {"Tipo", "Definición", "Evaluaciones",
+                                             "Tiempo total (ms)", "Tiempo medio (µs)", "% del total"};
+
+    /**
+     * Las mediciones de cada definición, en el orden en que se han añadido.
+     */
+    private Vector mediciones = new Vector();
+
+    /**
+     * Envuelve el programa de una definición en otro que mide sus
+     * evaluaciones bajo el tipo y nombre indicados.
+     * @param programa El programa de la definición.
+     * @param tipo El tipo de definición (parámetro, proceso, etc.).
+     * @param nombre El nombre con que aparecerá en el informe.
+     * @return El programa que se debe evaluar en su lugar.
+     */
+    public Programa medir(Programa programa, String tipo, String nombre) {
+        Medicion medicion = new Medicion(tipo, nombre);
+        this.mediciones.add(medicion);
+        return new ProgramaMedido(programa, medicion);
+    }
+
+    /**
+     * Método para obtener el informe, ordenado de mayor a menor tiempo total.
+     * @return Una fila por definición, con las columnas de <CODE>COLUMNAS</CODE>.
+     */
+    public Object[][] getFilas() {
+        Medicion[] ordenadas = new Medicion[this.mediciones.size()];
+        this.mediciones.toArray(ordenadas);
+        Arrays.sort(ordenadas, new Comparator() {
+            public int compare(Object a, Object b) {
+                long na = ((Medicion) a).nanos;
+                long nb = ((Medicion) b).nanos;
+                return na < nb ? 1 : (na > nb ? -1 : 0);
+            }
+        });
+        long total = 0;
+        for (int i = 0; i < ordenadas.length; i++) {
+            total += ordenadas[i].nanos;
+        }
+        Object[][] filas = new Object[ordenadas.length][];
+        for (int i = 0; i < ordenadas.length; i++) {
+            Medicion m = ordenadas[i];
+            filas[i] = new Object[] {m.tipo, m.nombre, Long.valueOf(m.llamadas),
+                                     Double.valueOf(m.nanos / 1.0e6d),
+                                     Double.valueOf(m.llamadas == 0 ? 0.0d : m.nanos / 1.0e3d / m.llamadas),
+                                     Double.valueOf(total == 0 ? 0.0d : 100.0d * m.nanos / total)};
+        }
+        return filas;
+    }
+
+    /**
+     * Guarda el informe en un archivo CSV, con una fila por definición.
+     * @param destino El archivo donde guardarlo.
+     * @throws java.io.IOException Si hay algún problema al escribir en disco.
+     */
+    public void exportarCSV(File destino) throws IOException {
+        PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(destino)));
+        try {
+            for (int i = 0; i < COLUMNAS.length; i++) {
+                pw.print((i > 0 ? ";" : "") + COLUMNAS[i]); // NOI18N
+            }
+            pw.println();
+            Object[][] filas = this.getFilas();
+            for (int i = 0; i < filas.length; i++) {
+                pw.println(filas[i][0] + ";\"" + filas[i][1].toString().replace("\"", "\"\"") + "\";" // NOI18N
+                        + filas[i][2] + ";" + filas[i][3] + ";" + filas[i][4] + ";" + filas[i][5]); // NOI18N
+            }
+        } finally {
+            pw.close();
+        }
+    }
+
+    /**
+     * Las evaluaciones y el tiempo acumulado de una definición.
+     */
+    private static class Medicion {
+
+        /**
+         * El tipo de definición.
+         */
+        private String tipo;
+
+        /**
+         * El nombre de la definición en el informe.
+         */
+        private String nombre;
+
+        /**
+         * Número de evaluaciones.
+         */
+        private long llamadas;
+
+        /**
+         * Tiempo acumulado de las evaluaciones, en nanosegundos.
+         */
+        private long nanos;
+
+        /**
+         * Constructor de la clase.
+         * @param t El tipo de definición.
+         * @param n El nombre de la definición en el informe.
+         */
+        private Medicion(String t, String n) {
+            this.tipo = t;
+            this.nombre = n;
+        }
+    }
+
+    /**
+     * Un programa que acumula en su medición el tiempo de cada evaluación.
+     */
+    private static class ProgramaMedido extends Programa {
+
+        /**
+         * Donde se acumulan las evaluaciones.
+         */
+        private Medicion medicion;
+
+        /**
+         * Constructor de la clase.
+         * @param programa El programa a medir, del que se toman las
+         *                 instrucciones.
+         * @param m Donde acumular sus evaluaciones.
+         */
+        private ProgramaMedido(Programa programa, Medicion m) {
+            super(programa.codigo, programa.funciones, programa.salida, programa.entradas, programa.volatil);
+            this.medicion = m;
+        }
+
+        /**
+         * Evalúa el programa, acumulando el tiempo empleado.
+         * @param m La memoria de la simulación.
+         * @return El valor de la definición.
+         * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la
+         *                                      que se delega recibe
+         *                                      parámetros incorrectos.
+         */
+        @Override
+        public double evaluar(double[] m) throws ParseException {
+            long inicio = System.nanoTime();
+            double valor = super.evaluar(m);
+            this.medicion.nanos += System.nanoTime() - inicio;
+            this.medicion.llamadas++;
+            return valor;
+        }
+    }
+}
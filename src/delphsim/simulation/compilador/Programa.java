@@ -0,0 +1,369 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import java.util.Stack;
+
+import org.nfunk.jep.ParseException;
+import org.nfunk.jep.function.PostfixMathCommandI;
+
+/**
+ * Representa una definición del modelo (parámetro, atajo, tramo de proceso,
+ * compartimento o función de un resultado) ya compilada: una secuencia plana
+ * de instrucciones que operan directamente sobre las posiciones de un vector
+ * <CODE>double[]</CODE>, la memoria de la simulación. Evaluarla no recorre
+ * ningún árbol ni crea objetos, salvo en las funciones que no tienen una
+ * instrucción propia (las distribuciones de probabilidad), que se delegan en
+ * la función correspondiente de JEP.
+ * <p>Cada instrucción ocupa cuatro enteros: código de operación, posición de
+ * destino y las posiciones de los dos operandos (el segundo se ignora en las
+ * operaciones unarias). Las únicas excepciones son <CODE>SUMATORIO</CODE>
+ * (código, destino, n, n operandos) y <CODE>FUNCION</CODE> (código, destino,
+ * índice de la función, n, n operandos).</p>
+ * @author Víctor E. Tamames Gómez
+ */
+public class Programa {
+
+    // Operadores aritméticos
+    static final int SUMA = 0;
+    static final int RESTA = 1;
+    static final int PRODUCTO = 2;
+    static final int DIVISION = 3;
+    static final int MODULO = 4;
+    static final int POTENCIA = 5;
+    static final int NEGACION = 6;
+    // Operadores de comparación y lógicos, que devuelven 1 ó 0
+    static final int MAYOR = 7;
+    static final int MENOR = 8;
+    static final int MAYOR_IGUAL = 9;
+    static final int MENOR_IGUAL = 10;
+    static final int IGUAL = 11;
+    static final int DISTINTO = 12;
+    static final int Y = 13;
+    static final int O = 14;
+    static final int NO = 15;
+    // Funciones predefinidas de JEP solicitadas en Epidemia.CrearDelphSimJEP()
+    static final int SIN = 16;
+    static final int COS = 17;
+    static final int TAN = 18;
+    static final int ASIN = 19;
+    static final int ACOS = 20;
+    static final int ATAN = 21;
+    static final int ATAN2 = 22;
+    static final int SINH = 23;
+    static final int COSH = 24;
+    static final int TANH = 25;
+    static final int ASINH = 26;
+    static final int ACOSH = 27;
+    static final int ATANH = 28;
+    static final int LOG = 29;
+    static final int LN = 30;
+    static final int EXP = 31;
+    static final int SQRT = 32;
+    static final int ABS = 33;
+    static final int REDONDEO = 34;
+    static final int REDONDEO_DECIMALES = 35;
+    static final int SUELO = 36;
+    static final int TECHO = 37;
+    static final int ALEATORIO = 38;
+    // Instrucciones de longitud variable
+    static final int SUMATORIO = 39;
+    static final int FUNCION = 40;
+
+    /**
+     * Las instrucciones del programa, codificadas como se indica en la
+     * descripción de la clase.
+     */
+    int[] codigo;
+
+    /**
+     * Funciones de JEP a las que se delega la evaluación de las instrucciones
+     * <CODE>FUNCION</CODE>.
+     */
+    PostfixMathCommandI[] funciones;
+
+    /**
+     * Posición de la memoria donde queda el valor de la definición tras
+     * evaluar el programa.
+     */
+    int salida;
+
+    /**
+     * Posiciones de la memoria de los nombres del modelo (parámetros,
+     * compartimentos, atajos y procesos) que lee el programa, sin repetir.
+     */
+    int[] entradas;
+
+    /**
+     * Si el programa puede dar un valor distinto con las mismas entradas, por
+     * usar números aleatorios o funciones delegadas en JEP.
+     */
+    boolean volatil;
+
+    /**
+     * Constructor de la clase, sólo accesible desde el compilador.
+     * @param cod Las instrucciones del programa.
+     * @param funcs Las funciones de JEP que usa el programa.
+     * @param sal La posición de la memoria con el resultado.
+     * @param ents Las posiciones de los nombres que lee el programa.
+     * @param vol Si el programa puede dar valores distintos con las mismas
+     *            entradas.
+     */
+    Programa(int[] cod, PostfixMathCommandI[] funcs, int sal, int[] ents, boolean vol) {
+        this.codigo = cod;
+        this.funciones = funcs;
+        this.salida = sal;
+        this.entradas = ents;
+        this.volatil = vol;
+    }
+
+    /**
+     * Método para obtener la posición de la memoria donde queda el valor de
+     * la definición tras evaluar el programa.
+     * @return La posición de la memoria.
+     */
+    public int getSalida() {
+        return this.salida;
+    }
+
+    /**
+     * Ejecuta las instrucciones del programa sobre la memoria indicada y
+     * devuelve el valor de la definición.
+     * @param m La memoria de la simulación.
+     * @return El valor de la definición.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public double evaluar(double[] m) throws ParseException {
+        int[] c = this.codigo;
+        int pc = 0;
+        while (pc < c.length) {
+            int d = c[pc+1];
+            switch (c[pc]) {
+                case SUMA:
+                    m[d] = m[c[pc+2]] + m[c[pc+3]];
+                    break;
+                case RESTA:
+                    m[d] = m[c[pc+2]] - m[c[pc+3]];
+                    break;
+                case PRODUCTO:
+                    m[d] = m[c[pc+2]] * m[c[pc+3]];
+                    break;
+                case DIVISION:
+                    m[d] = m[c[pc+2]] / m[c[pc+3]];
+                    break;
+                case MODULO:
+                    m[d] = m[c[pc+2]] % m[c[pc+3]];
+                    break;
+                case POTENCIA:
+                    m[d] = Math.pow(m[c[pc+2]], m[c[pc+3]]);
+                    break;
+                case NEGACION:
+                    m[d] = -m[c[pc+2]];
+                    break;
+                case MAYOR:
+                    m[d] = m[c[pc+2]] > m[c[pc+3]] ? 1.0d : 0.0d;
+                    break;
+                case MENOR:
+                    m[d] = m[c[pc+2]] < m[c[pc+3]] ? 1.0d : 0.0d;
+                    break;
+                case MAYOR_IGUAL:
+                    m[d] = m[c[pc+2]] >= m[c[pc+3]] ? 1.0d : 0.0d;
+                    break;
+                case MENOR_IGUAL:
+                    m[d] = m[c[pc+2]] <= m[c[pc+3]] ? 1.0d : 0.0d;
+                    break;
+                case IGUAL:
+                    m[d] = m[c[pc+2]] == m[c[pc+3]] ? 1.0d : 0.0d;
+                    break;
+                case DISTINTO:
+                    m[d] = m[c[pc+2]] != m[c[pc+3]] ? 1.0d : 0.0d;
+                    break;
+                case Y:
+                    m[d] = (m[c[pc+2]] != 0.0d && m[c[pc+3]] != 0.0d) ? 1.0d : 0.0d;
+                    break;
+                case O:
+                    m[d] = (m[c[pc+2]] != 0.0d || m[c[pc+3]] != 0.0d) ? 1.0d : 0.0d;
+                    break;
+                case NO:
+                    m[d] = m[c[pc+2]] == 0.0d ? 1.0d : 0.0d;
+                    break;
+                case SIN:
+                    m[d] = Math.sin(m[c[pc+2]]);
+                    break;
+                case COS:
+                    m[d] = Math.cos(m[c[pc+2]]);
+                    break;
+                case TAN:
+                    m[d] = Math.tan(m[c[pc+2]]);
+                    break;
+                case ASIN:
+                    m[d] = Math.asin(m[c[pc+2]]);
+                    break;
+                case ACOS:
+                    m[d] = Math.acos(m[c[pc+2]]);
+                    break;
+                case ATAN:
+                    m[d] = Math.atan(m[c[pc+2]]);
+                    break;
+                case ATAN2:
+                    m[d] = Math.atan2(m[c[pc+2]], m[c[pc+3]]);
+                    break;
+                case SINH:
+                    m[d] = Math.sinh(m[c[pc+2]]);
+                    break;
+                case COSH:
+                    m[d] = Math.cosh(m[c[pc+2]]);
+                    break;
+                case TANH:
+                    m[d] = Math.tanh(m[c[pc+2]]);
+                    break;
+                case ASINH:
+                    m[d] = asinh(m[c[pc+2]]);
+                    break;
+                case ACOSH:
+                    m[d] = acosh(m[c[pc+2]]);
+                    break;
+                case ATANH:
+                    m[d] = atanh(m[c[pc+2]]);
+                    break;
+                case LOG:
+                    m[d] = Math.log(m[c[pc+2]]) / Math.log(10.0d);
+                    break;
+                case LN:
+                    m[d] = Math.log(m[c[pc+2]]);
+                    break;
+                case EXP:
+                    m[d] = Math.exp(m[c[pc+2]]);
+                    break;
+                case SQRT:
+                    m[d] = Math.sqrt(m[c[pc+2]]);
+                    break;
+                case ABS:
+                    m[d] = Math.abs(m[c[pc+2]]);
+                    break;
+                case REDONDEO:
+                    m[d] = Math.rint(m[c[pc+2]]);
+                    break;
+                case REDONDEO_DECIMALES:
+                    m[d] = redondear(m[c[pc+2]], m[c[pc+3]]);
+                    break;
+                case SUELO:
+                    m[d] = Math.floor(m[c[pc+2]]);
+                    break;
+                case TECHO:
+                    m[d] = Math.ceil(m[c[pc+2]]);
+                    break;
+                case ALEATORIO:
+                    m[d] = Math.random();
+                    break;
+                case SUMATORIO: {
+                    int n = c[pc+2];
+                    double suma = 0.0d;
+                    for (int i = 0; i < n; i++) {
+                        suma += m[c[pc+3+i]];
+                    }
+                    m[d] = suma;
+                    pc += 3 + n;
+                    continue;
+                }
+                case FUNCION: {
+                    int n = c[pc+3];
+                    m[d] = this.delegar(this.funciones[c[pc+2]], m, pc+4, n);
+                    pc += 4 + n;
+                    continue;
+                }
+                default:
+                    throw new ParseException("Instrucción desconocida: " + c[pc]);
+            }
+            pc += 4;
+        }
+        return m[this.salida];
+    }
+
+    /**
+     * Evalúa una función de JEP sin instrucción propia a la manera de JEP:
+     * apila los operandos, la ejecuta y recoge el resultado de la pila.
+     * @param funcion La función de JEP.
+     * @param m La memoria de la simulación.
+     * @param desde Posición del código donde comienzan los operandos.
+     * @param n Número de operandos.
+     * @return El resultado de la función.
+     * @throws org.nfunk.jep.ParseException Si la función recibe parámetros
+     *                                      incorrectos.
+     */
+    private double delegar(PostfixMathCommandI funcion, double[] m, int desde, int n) throws ParseException {
+        Stack pila = new Stack();
+        for (int i = 0; i < n; i++) {
+            pila.push(Double.valueOf(m[this.codigo[desde+i]]));
+        }
+        // La función de JEP es la misma en todas las copias del sistema, que
+        // pueden estar evaluándose a la vez en otros hilos
+        synchronized (funcion) {
+            funcion.setCurNumberOfParameters(n);
+            funcion.run(pila);
+        }
+        return ((Number) pila.pop()).doubleValue();
+    }
+
+    /**
+     * Arcoseno hiperbólico, con la misma definición que usa JEP.
+     * @param x El argumento.
+     * @return El arcoseno hiperbólico de x.
+     */
+    static double asinh(double x) {
+        return Math.log(x + Math.sqrt(x*x + 1.0d));
+    }
+
+    /**
+     * Arcocoseno hiperbólico, con la misma definición que usa JEP.
+     * @param x El argumento.
+     * @return El arcocoseno hiperbólico de x.
+     */
+    static double acosh(double x) {
+        return Math.log(x + Math.sqrt(x*x - 1.0d));
+    }
+
+    /**
+     * Arcotangente hiperbólica, con la misma definición que usa JEP.
+     * @param x El argumento.
+     * @return La arcotangente hiperbólica de x.
+     */
+    static double atanh(double x) {
+        return 0.5d * Math.log((1.0d + x) / (1.0d - x));
+    }
+
+    /**
+     * Redondeo a un número dado de decimales, como hace JEP en
+     * <CODE>round(x, n)</CODE>.
+     * @param x El valor a redondear.
+     * @param decimales El número de decimales.
+     * @return El valor redondeado.
+     */
+    static double redondear(double x, double decimales) {
+        double multiplicador = Math.pow(10, (int) decimales);
+        return Math.rint(x * multiplicador) / multiplicador;
+    }
+}
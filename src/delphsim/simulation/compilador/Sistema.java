@@ -0,0 +1,93 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import org.nfunk.jep.ParseException;
+
+/**
+ * El sistema de ecuaciones diferenciales de un modelo ya compilado: a partir
+ * del valor de los compartimentos calcula los atajos, los procesos y las
+ * derivadas de todos los compartimentos. Es lo único que necesitan evaluar
+ * los métodos de simulación en cada etapa.
+ * @author Víctor E. Tamames Gómez
+ */
+public interface Sistema {
+
+    /**
+     * Calcula las derivadas de los compartimentos en un instante dado. Coloca
+     * el valor de los compartimentos en la memoria, actualiza en ella atajos
+     * y procesos (eligiendo el tramo correspondiente al instante) y evalúa la
+     * definición de cada compartimento.
+     * @param t El instante de tiempo.
+     * @param m La memoria de la simulación.
+     * @param x El valor de cada compartimento, en el orden de la epidemia.
+     * @param dx Donde se dejan las derivadas, en el mismo orden.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public void calcular(double t, double[] m, double[] x, double[] dx) throws ParseException;
+
+    /**
+     * Coloca el valor de los compartimentos en la memoria y actualiza en ella
+     * atajos y procesos, sin calcular las derivadas.
+     * @param t El instante de tiempo.
+     * @param m La memoria de la simulación.
+     * @param x El valor de cada compartimento, en el orden de la epidemia.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public void auxiliares(double t, double[] m, double[] x) throws ParseException;
+
+    /**
+     * Evalúa sólo la definición de cada compartimento, con los valores de
+     * compartimentos, atajos y procesos que ya haya en la memoria.
+     * @param m La memoria de la simulación.
+     * @param dx Donde se dejan las derivadas, en el orden de la epidemia.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public void derivadas(double[] m, double[] dx) throws ParseException;
+
+    /**
+     * Devuelve, para la derivada de cada compartimento, los compartimentos de
+     * los que depende, directamente o a través de atajos y procesos (con
+     * cualquiera de sus tramos). Es la estructura de ceros del jacobiano del
+     * sistema, con la que los métodos que lo necesitan lo calculan con pocas
+     * evaluaciones y lo guardan sin sus ceros.
+     * @return Los índices de los compartimentos de los que depende cada
+     *         derivada, en orden creciente.
+     */
+    public int[][] estructura();
+
+    /**
+     * Devuelve otro sistema con las mismas ecuaciones pero con su propio
+     * estado interno (lo que recuerda de las últimas evaluaciones), para
+     * evaluarlo desde otro hilo, con otra memoria, a la vez que éste.
+     * @return La copia del sistema.
+     */
+    public Sistema copiar();
+}
@@ -0,0 +1,283 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import java.util.Stack;
+
+import org.nfunk.jep.ParseException;
+import org.nfunk.jep.function.PostfixMathCommandI;
+
+/**
+ * Clase base de las clases que genera <CODE>GeneradorSistema</CODE> para cada
+ * modelo. La clase generada sólo implementa los dos métodos abstractos, con
+ * todas las definiciones del modelo escritas directamente en código de la
+ * máquina virtual; el resto (copiar los compartimentos a la memoria, recoger
+ * las derivadas y las operaciones que no tienen una instrucción propia) está
+ * aquí.
+ * @author Víctor E. Tamames Gómez
+ */
+public abstract class SistemaGenerado implements Sistema, Cloneable {
+
+    /**
+     * Posición de la memoria de cada compartimento.
+     */
+    private int[] posCompartimentos;
+
+    /**
+     * Posición de la memoria donde queda la derivada de cada compartimento.
+     */
+    private int[] salidas;
+
+    /**
+     * Funciones de JEP a las que se delegan las instrucciones
+     * <CODE>FUNCION</CODE>.
+     */
+    private PostfixMathCommandI[] funciones;
+
+    /**
+     * Posiciones de la memoria de los operandos de cada función delegada.
+     */
+    private int[][] argumentos;
+
+    /**
+     * Los valores de los que dependen los atajos y procesos que no hay que
+     * evaluar siempre.
+     */
+    private Dependencias dependencias;
+
+    /**
+     * Los compartimentos de los que depende la derivada de cada uno.
+     */
+    private int[][] estructura;
+
+    /**
+     * Constructor de la clase, que sólo usan las clases generadas.
+     */
+    protected SistemaGenerado() {
+    }
+
+    /**
+     * Completa la instancia recién creada de la clase generada.
+     * @param posComps Posición de la memoria de cada compartimento.
+     * @param sals Posición de la derivada de cada compartimento.
+     * @param funcs Funciones de JEP delegadas.
+     * @param args Operandos de cada función delegada.
+     * @param deps Dependencias de los atajos y procesos que no hay que evaluar
+     *             siempre.
+     * @param estr Los compartimentos de los que depende cada derivada.
+     */
+    void iniciar(int[] posComps, int[] sals, PostfixMathCommandI[] funcs, int[][] args,
+                 Dependencias deps, int[][] estr) {
+        this.posCompartimentos = posComps;
+        this.salidas = sals;
+        this.funciones = funcs;
+        this.argumentos = args;
+        this.dependencias = deps;
+        this.estructura = estr;
+    }
+
+    /**
+     * Calcula las derivadas de los compartimentos en un instante dado.
+     * @param t El instante de tiempo.
+     * @param m La memoria de la simulación.
+     * @param x El valor de cada compartimento, en el orden de la epidemia.
+     * @param dx Donde se dejan las derivadas, en el mismo orden.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public final void calcular(double t, double[] m, double[] x, double[] dx) throws ParseException {
+        this.auxiliares(t, m, x);
+        this.derivadas(m, dx);
+    }
+
+    /**
+     * Coloca el valor de los compartimentos en la memoria y actualiza en ella
+     * atajos y procesos, sin calcular las derivadas.
+     * @param t El instante de tiempo.
+     * @param m La memoria de la simulación.
+     * @param x El valor de cada compartimento, en el orden de la epidemia.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public final void auxiliares(double t, double[] m, double[] x) throws ParseException {
+        for (int i = 0; i < this.posCompartimentos.length; i++) {
+            m[this.posCompartimentos[i]] = x[i];
+        }
+        this.evaluarAuxiliares(t, m);
+    }
+
+    /**
+     * Evalúa sólo la definición de cada compartimento.
+     * @param m La memoria de la simulación.
+     * @param dx Donde se dejan las derivadas, en el orden de la epidemia.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public final void derivadas(double[] m, double[] dx) throws ParseException {
+        this.evaluarDerivadas(0.0d, m);
+        for (int i = 0; i < this.salidas.length; i++) {
+            dx[i] = m[this.salidas[i]];
+        }
+    }
+
+    /**
+     * Devuelve los compartimentos de los que depende la derivada de cada uno,
+     * los mismos que en el sistema interpretado del que se generó.
+     * @return Los índices de los compartimentos de los que depende cada
+     *         derivada, en orden creciente.
+     */
+    public final int[][] estructura() {
+        return this.estructura;
+    }
+
+    /**
+     * Devuelve otra instancia de la clase generada con sus propias
+     * dependencias. Las clases generadas no tienen más estado.
+     * @return La copia del sistema.
+     */
+    public final Sistema copiar() {
+        try {
+            SistemaGenerado copia = (SistemaGenerado) super.clone();
+            copia.dependencias = this.dependencias.copiar();
+            return copia;
+        } catch (CloneNotSupportedException ex) {
+            throw new InternalError(ex.toString());
+        }
+    }
+
+    /**
+     * Código generado que actualiza en la memoria atajos y procesos.
+     * @param t El instante de tiempo, para elegir el tramo de cada proceso.
+     * @param m La memoria de la simulación.
+     * @throws org.nfunk.jep.ParseException Si falla una función delegada.
+     */
+    protected abstract void evaluarAuxiliares(double t, double[] m) throws ParseException;
+
+    /**
+     * Código generado que evalúa la definición de cada compartimento.
+     * @param t No se usa; está para que todos los métodos generados tengan
+     *          la misma signatura.
+     * @param m La memoria de la simulación.
+     * @throws org.nfunk.jep.ParseException Si falla una función delegada.
+     */
+    protected abstract void evaluarDerivadas(double t, double[] m) throws ParseException;
+
+    /**
+     * Evalúa una función de JEP sin instrucción propia, igual que
+     * <CODE>Programa</CODE>.
+     * @param indice El índice de la función delegada.
+     * @param m La memoria de la simulación.
+     * @return El resultado de la función.
+     * @throws org.nfunk.jep.ParseException Si la función recibe parámetros
+     *                                      incorrectos.
+     */
+    protected final double delegar(int indice, double[] m) throws ParseException {
+        int[] args = this.argumentos[indice];
+        Stack pila = new Stack();
+        for (int i = 0; i < args.length; i++) {
+            pila.push(Double.valueOf(m[args[i]]));
+        }
+        // La función de JEP es la misma en todas las copias del sistema, que
+        // pueden estar evaluándose a la vez en otros hilos
+        synchronized (this.funciones[indice]) {
+            this.funciones[indice].setCurNumberOfParameters(args.length);
+            this.funciones[indice].run(pila);
+        }
+        return ((Number) pila.pop()).doubleValue();
+    }
+
+    /**
+     * Indica si hay que volver a evaluar un atajo o proceso que no depende de
+     * los compartimentos, como <CODE>Dependencias.pendiente</CODE>.
+     * @param nodo El índice del nodo en las dependencias.
+     * @param tramo El tramo que corresponde evaluar (0 en los atajos).
+     * @param m La memoria de la simulación.
+     * @return Si hay que evaluar el nodo.
+     */
+    protected final boolean pendiente(int nodo, int tramo, double[] m) {
+        return this.dependencias.pendiente(nodo, tramo, m);
+    }
+
+    // Operaciones sin instrucción propia en la máquina virtual, con la misma
+    // definición que en Programa
+
+    protected static double mayor(double a, double b) {
+        return a > b ? 1.0d : 0.0d;
+    }
+
+    protected static double menor(double a, double b) {
+        return a < b ? 1.0d : 0.0d;
+    }
+
+    protected static double mayorIgual(double a, double b) {
+        return a >= b ? 1.0d : 0.0d;
+    }
+
+    protected static double menorIgual(double a, double b) {
+        return a <= b ? 1.0d : 0.0d;
+    }
+
+    protected static double igual(double a, double b) {
+        return a == b ? 1.0d : 0.0d;
+    }
+
+    protected static double distinto(double a, double b) {
+        return a != b ? 1.0d : 0.0d;
+    }
+
+    protected static double y(double a, double b) {
+        return (a != 0.0d && b != 0.0d) ? 1.0d : 0.0d;
+    }
+
+    protected static double o(double a, double b) {
+        return (a != 0.0d || b != 0.0d) ? 1.0d : 0.0d;
+    }
+
+    protected static double no(double a) {
+        return a == 0.0d ? 1.0d : 0.0d;
+    }
+
+    protected static double asinh(double x) {
+        return Programa.asinh(x);
+    }
+
+    protected static double acosh(double x) {
+        return Programa.acosh(x);
+    }
+
+    protected static double atanh(double x) {
+        return Programa.atanh(x);
+    }
+
+    protected static double log(double x) {
+        return Math.log(x) / Math.log(10.0d);
+    }
+
+    protected static double redondear(double x, double decimales) {
+        return Programa.redondear(x, decimales);
+    }
+}
@@ -0,0 +1,622 @@
+/** 
+ * Copyright 2008 Víctor Enrique Tamames,
+ * Universidad de Valladolid, España.
+ * 
+ * This file is part of DelphSim.
+ *
+ * DelphSim is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or any later version.
+ *
+ * DelphSim is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * DelphSim. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * DelphSim (Delphos Simulator), simulador de epidemias desarrollado como
+ * Proyecto Fin de Carrera de Ingeniería Informática para la Escuela Técnica
+ * Superior de Ingeniería Informática de la Universidad de Valladolid.
+ */
+package delphsim.simulation.compilador;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+
+import org.nfunk.jep.ParseException;
+import org.nfunk.jep.function.PostfixMathCommandI;
+
+/**
+ * Implementación del sistema que ejecuta uno detrás de otro los programas de
+ * atajos, procesos y compartimentos. Es la que se usa cuando no se quiere o
+ * no se puede generar una clase propia para el modelo, y además sirve de
+ * descripción del sistema al generador.
+ * @author Víctor E. Tamames Gómez
+ */
+public class SistemaInterpretado implements Sistema, Cloneable {
+
+    /**
+     * Posición de la memoria de cada compartimento.
+     */
+    int[] posCompartimentos;
+
+    /**
+     * Programa de la definición de cada compartimento.
+     */
+    Programa[] compartimentos;
+
+    /**
+     * Los programas de los compartimentos que no son volátiles, unidos en uno
+     * solo que calcula una vez cada subexpresión común a varios de ellos. Es
+     * null si no se unen.
+     */
+    Programa derivadas;
+
+    /**
+     * Posición de la memoria donde deja <CODE>derivadas</CODE> la derivada de
+     * cada compartimento, o -1 si su programa es volátil y se evalúa aparte.
+     */
+    int[] salidasDerivadas;
+
+    /**
+     * Posición de la memoria de cada atajo.
+     */
+    int[] posAtajos;
+
+    /**
+     * Programa de la definición de cada atajo.
+     */
+    Programa[] atajos;
+
+    /**
+     * Los atajos que no son más que una suma de compartimentos, calculados
+     * todos juntos. Cada suma aprovecha las de los atajos más pequeños que
+     * contiene, en lugar de volver a sumar sus compartimentos. Es null si no
+     * hay ninguno o no se unen.
+     */
+    Programa sumas;
+
+    /**
+     * Posición de la memoria donde deja <CODE>sumas</CODE> el valor de cada
+     * atajo, o -1 si el atajo no es una suma de compartimentos.
+     */
+    int[] salidasSumas;
+
+    /**
+     * Posición de la memoria de cada proceso.
+     */
+    int[] posProcesos;
+
+    /**
+     * Programa de cada tramo de cada proceso.
+     */
+    Programa[][] tramos;
+
+    /**
+     * Tiempo de inicio de cada tramo de cada proceso.
+     */
+    int[][] iniciosTramos;
+
+    /**
+     * Índice en <CODE>dependencias</CODE> de cada atajo que no depende de los
+     * compartimentos, o -1 si hay que evaluarlo siempre.
+     */
+    int[] nodosAtajos;
+
+    /**
+     * Índice en <CODE>dependencias</CODE> de cada proceso que no depende de
+     * los compartimentos, o -1 si hay que evaluarlo siempre.
+     */
+    int[] nodosProcesos;
+
+    /**
+     * Los valores de los que dependen los atajos y procesos que no hay que
+     * evaluar siempre.
+     */
+    Dependencias dependencias;
+
+    /**
+     * Si los tiempos de inicio de los tramos de cada proceso están en orden,
+     * con lo que se puede buscar en ellos por bisección.
+     */
+    private boolean[] ordenados;
+
+    /**
+     * Último tramo usado de cada proceso, que es el primero que se comprueba
+     * en la siguiente búsqueda.
+     */
+    private int[] actuales;
+
+    /**
+     * Los compartimentos de los que depende la derivada de cada uno, o null
+     * si aún no se han buscado. Es la misma en todas las copias.
+     */
+    private int[][] estructura;
+
+    /**
+     * Constructor de la clase, sólo accesible desde el compilador.
+     * @param posComps Posición de la memoria de cada compartimento.
+     * @param comps Programa de la definición de cada compartimento.
+     * @param posAtajs Posición de la memoria de cada atajo.
+     * @param atajs Programa de la definición de cada atajo.
+     * @param posProcs Posición de la memoria de cada proceso.
+     * @param trams Programa de cada tramo de cada proceso.
+     * @param inicios Tiempo de inicio de cada tramo de cada proceso.
+     * @param unir Si se unen los compartimentos y los atajos que son sumas en
+     *             un solo programa cada uno; si no, se evalúa cada definición
+     *             por separado.
+     */
+    SistemaInterpretado(int[] posComps, Programa[] comps, int[] posAtajs, Programa[] atajs,
+                        int[] posProcs, Programa[][] trams, int[][] inicios, boolean unir) {
+        this.posCompartimentos = posComps;
+        this.compartimentos = comps;
+        this.posAtajos = posAtajs;
+        this.atajos = atajs;
+        this.posProcesos = posProcs;
+        this.tramos = trams;
+        this.iniciosTramos = inicios;
+        this.salidasDerivadas = new int[comps.length];
+        Arrays.fill(this.salidasDerivadas, -1);
+        this.salidasSumas = new int[atajs.length];
+        Arrays.fill(this.salidasSumas, -1);
+        if (unir) {
+            this.unirCompartimentos();
+            this.unirSumas();
+        }
+        this.ordenados = new boolean[inicios.length];
+        this.actuales = new int[inicios.length];
+        for (int i = 0; i < inicios.length; i++) {
+            this.ordenados[i] = ordenados(inicios[i]);
+        }
+        this.analizarDependencias();
+    }
+
+    /**
+     * Une los programas de los compartimentos que no son volátiles en
+     * <CODE>derivadas</CODE>. Los volátiles se dejan aparte, para que cada
+     * uno siga obteniendo sus propios números aleatorios.
+     */
+    private void unirCompartimentos() {
+        Vector fusionables = new Vector();
+        for (int i = 0; i < this.compartimentos.length; i++) {
+            if (!this.compartimentos[i].volatil) {
+                fusionables.add(this.compartimentos[i]);
+            }
+        }
+        Programa[] programas = new Programa[fusionables.size()];
+        fusionables.toArray(programas);
+        int[] salidas = new int[programas.length];
+        this.derivadas = Compilador.fusionar(programas, salidas);
+        for (int i = 0, k = 0; i < this.compartimentos.length; i++) {
+            this.salidasDerivadas[i] = this.compartimentos[i].volatil ? -1 : salidas[k++];
+        }
+    }
+
+    /**
+     * Construye <CODE>sumas</CODE> con los atajos que son sumas de
+     * compartimentos distintos. Se recorren de menor a mayor número de
+     * sumandos, y cada uno se forma con las sumas anteriores que caben en él
+     * (de mayor a menor y sin solaparse) más los compartimentos que queden.
+     * Así, con varias divisiones, los atajos de una sola categoría se forman
+     * con unas pocas sumas parciales en lugar de con todos sus compartimentos.
+     */
+    private void unirSumas() {
+        HashSet comps = new HashSet();
+        for (int i = 0; i < this.posCompartimentos.length; i++) {
+            comps.add(Integer.valueOf(this.posCompartimentos[i]));
+        }
+        Vector indices = new Vector();
+        for (int i = 0; i < this.atajos.length; i++) {
+            if (esSuma(this.atajos[i], comps)) {
+                indices.add(Integer.valueOf(i));
+            }
+        }
+        if (indices.isEmpty()) {
+            return;
+        }
+        Collections.sort(indices, new Comparator() {
+            public int compare(Object a, Object b) {
+                int na = SistemaInterpretado.this.atajos[((Integer) a).intValue()].codigo[2];
+                int nb = SistemaInterpretado.this.atajos[((Integer) b).intValue()].codigo[2];
+                return na - nb;
+            }
+        });
+        Vector codigo = new Vector();
+        Vector conjuntos = new Vector();
+        Vector posiciones = new Vector();
+        for (int k = 0; k < indices.size(); k++) {
+            int i = ((Integer) indices.get(k)).intValue();
+            Programa atajo = this.atajos[i];
+            int n = atajo.codigo[2];
+            HashSet conjunto = new HashSet();
+            for (int j = 0; j < n; j++) {
+                conjunto.add(Integer.valueOf(atajo.codigo[3+j]));
+            }
+            HashSet restantes = (HashSet) conjunto.clone();
+            Vector sumandos = new Vector();
+            for (int j = conjuntos.size() - 1; j >= 0 && !restantes.isEmpty(); j--) {
+                HashSet anterior = (HashSet) conjuntos.get(j);
+                if (anterior.size() <= restantes.size() && restantes.containsAll(anterior)) {
+                    sumandos.add(posiciones.get(j));
+                    restantes.removeAll(anterior);
+                }
+            }
+            if (sumandos.size() == 1 && restantes.isEmpty()) {
+                // Otro atajo con los mismos compartimentos
+                this.salidasSumas[i] = ((Integer) sumandos.get(0)).intValue();
+                continue;
+            }
+            for (int j = 0; j < n; j++) {
+                Integer comp = Integer.valueOf(atajo.codigo[3+j]);
+                if (restantes.contains(comp)) {
+                    sumandos.add(comp);
+                }
+            }
+            codigo.add(Integer.valueOf(Programa.SUMATORIO));
+            codigo.add(Integer.valueOf(atajo.salida));
+            codigo.add(Integer.valueOf(sumandos.size()));
+            codigo.addAll(sumandos);
+            conjuntos.add(conjunto);
+            posiciones.add(Integer.valueOf(atajo.salida));
+            this.salidasSumas[i] = atajo.salida;
+        }
+        int[] cod = new int[codigo.size()];
+        for (int i = 0; i < cod.length; i++) {
+            cod[i] = ((Integer) codigo.get(i)).intValue();
+        }
+        this.sumas = new Programa(cod, new PostfixMathCommandI[0],
+                ((Integer) posiciones.get(0)).intValue(), new int[0], false);
+    }
+
+    /**
+     * Indica si un programa no es más que la suma de varios compartimentos
+     * distintos.
+     * @param programa El programa.
+     * @param comps Las posiciones de los compartimentos.
+     * @return Si es una suma de compartimentos.
+     */
+    static boolean esSuma(Programa programa, HashSet comps) {
+        int[] c = programa.codigo;
+        if (c.length < 3 || c[0] != Programa.SUMATORIO || c.length != 3 + c[2]
+                || c[1] != programa.salida) {
+            return false;
+        }
+        HashSet sumandos = new HashSet();
+        for (int j = 0; j < c[2]; j++) {
+            Integer posicion = Integer.valueOf(c[3+j]);
+            if (!comps.contains(posicion) || !sumandos.add(posicion)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Separa los atajos y procesos que dependen de los compartimentos (o de
+     * números aleatorios), directamente o a través de otros atajos y procesos,
+     * de los que no, que sólo hay que volver a evaluar cuando cambian sus
+     * entradas o su tramo. Como un proceso puede leer otro posterior, se
+     * repite hasta que no cambia nada.
+     */
+    private void analizarDependencias() {
+        HashSet variables = new HashSet();
+        for (int i = 0; i < this.posCompartimentos.length; i++) {
+            variables.add(Integer.valueOf(this.posCompartimentos[i]));
+        }
+        boolean[] variablesAtajos = new boolean[this.atajos.length];
+        boolean[] variablesProcesos = new boolean[this.tramos.length];
+        boolean cambio = true;
+        while (cambio) {
+            cambio = false;
+            for (int i = 0; i < this.atajos.length; i++) {
+                if (!variablesAtajos[i] && variable(this.atajos[i], variables)) {
+                    variablesAtajos[i] = true;
+                    variables.add(Integer.valueOf(this.posAtajos[i]));
+                    cambio = true;
+                }
+            }
+            for (int i = 0; i < this.tramos.length; i++) {
+                for (int j = 0; j < this.tramos[i].length && !variablesProcesos[i]; j++) {
+                    if (variable(this.tramos[i][j], variables)) {
+                        variablesProcesos[i] = true;
+                        variables.add(Integer.valueOf(this.posProcesos[i]));
+                        cambio = true;
+                    }
+                }
+            }
+        }
+        // Los demás son los nodos de las dependencias
+        Vector entradas = new Vector();
+        this.nodosAtajos = new int[this.atajos.length];
+        for (int i = 0; i < this.atajos.length; i++) {
+            this.nodosAtajos[i] = variablesAtajos[i] ? -1 : entradas.size();
+            if (!variablesAtajos[i]) {
+                entradas.add(this.atajos[i].entradas);
+            }
+        }
+        this.nodosProcesos = new int[this.tramos.length];
+        for (int i = 0; i < this.tramos.length; i++) {
+            this.nodosProcesos[i] = variablesProcesos[i] ? -1 : entradas.size();
+            if (!variablesProcesos[i]) {
+                Vector ents = new Vector();
+                for (int j = 0; j < this.tramos[i].length; j++) {
+                    for (int k = 0; k < this.tramos[i][j].entradas.length; k++) {
+                        Integer posicion = Integer.valueOf(this.tramos[i][j].entradas[k]);
+                        if (!ents.contains(posicion)) {
+                            ents.add(posicion);
+                        }
+                    }
+                }
+                int[] posiciones = new int[ents.size()];
+                for (int k = 0; k < posiciones.length; k++) {
+                    posiciones[k] = ((Integer) ents.get(k)).intValue();
+                }
+                entradas.add(posiciones);
+            }
+        }
+        int[][] ents = new int[entradas.size()][];
+        entradas.toArray(ents);
+        this.dependencias = new Dependencias(ents);
+    }
+
+    /**
+     * Indica si un programa es aleatorio o lee alguna de las posiciones dadas.
+     * @param programa El programa.
+     * @param variables Las posiciones que cambian en cada etapa.
+     * @return Si hay que evaluarlo siempre.
+     */
+    private static boolean variable(Programa programa, HashSet variables) {
+        if (programa.volatil) {
+            return true;
+        }
+        for (int i = 0; i < programa.entradas.length; i++) {
+            if (variables.contains(Integer.valueOf(programa.entradas[i]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calcula las derivadas de los compartimentos en un instante dado.
+     * @param t El instante de tiempo.
+     * @param m La memoria de la simulación.
+     * @param x El valor de cada compartimento, en el orden de la epidemia.
+     * @param dx Donde se dejan las derivadas, en el mismo orden.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public void calcular(double t, double[] m, double[] x, double[] dx) throws ParseException {
+        this.auxiliares(t, m, x);
+        this.derivadas(m, dx);
+    }
+
+    /**
+     * Coloca el valor de los compartimentos en la memoria y actualiza en ella
+     * atajos y procesos, sin calcular las derivadas.
+     * @param t El instante de tiempo.
+     * @param m La memoria de la simulación.
+     * @param x El valor de cada compartimento, en el orden de la epidemia.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public void auxiliares(double t, double[] m, double[] x) throws ParseException {
+        for (int i = 0; i < this.posCompartimentos.length; i++) {
+            m[this.posCompartimentos[i]] = x[i];
+        }
+        if (this.sumas != null) {
+            this.sumas.evaluar(m);
+        }
+        for (int i = 0; i < this.atajos.length; i++) {
+            if (this.salidasSumas[i] >= 0) {
+                m[this.posAtajos[i]] = m[this.salidasSumas[i]];
+            } else if (this.nodosAtajos[i] < 0 || this.dependencias.pendiente(this.nodosAtajos[i], 0, m)) {
+                m[this.posAtajos[i]] = this.atajos[i].evaluar(m);
+            }
+        }
+        for (int i = 0; i < this.tramos.length; i++) {
+            int tramo = this.tramo(i, t);
+            if (this.nodosProcesos[i] < 0 || this.dependencias.pendiente(this.nodosProcesos[i], tramo, m)) {
+                m[this.posProcesos[i]] = this.tramos[i][tramo].evaluar(m);
+            }
+        }
+    }
+
+    /**
+     * Evalúa sólo la definición de cada compartimento.
+     * @param m La memoria de la simulación.
+     * @param dx Donde se dejan las derivadas, en el orden de la epidemia.
+     * @throws org.nfunk.jep.ParseException Si alguna función de JEP a la que
+     *                                      se delega recibe parámetros
+     *                                      incorrectos.
+     */
+    public void derivadas(double[] m, double[] dx) throws ParseException {
+        if (this.derivadas != null) {
+            this.derivadas.evaluar(m);
+        }
+        for (int i = 0; i < this.compartimentos.length; i++) {
+            dx[i] = this.salidasDerivadas[i] >= 0
+                    ? m[this.salidasDerivadas[i]] : this.compartimentos[i].evaluar(m);
+        }
+    }
+
+    /**
+     * Devuelve, para la derivada de cada compartimento, los compartimentos de
+     * los que depende. Se siguen las entradas de los programas: cada atajo y
+     * cada proceso (con todos sus tramos) depende de los compartimentos de
+     * los que dependen los nombres que lee, y como un proceso puede leer otro
+     * posterior, se repite hasta que no cambia nada.
+     * @return Los índices de los compartimentos de los que depende cada
+     *         derivada, en orden creciente.
+     */
+    public int[][] estructura() {
+        if (this.estructura == null) {
+            HashMap dependencias = new HashMap();
+            for (int i = 0; i < this.posCompartimentos.length; i++) {
+                BitSet propio = new BitSet();
+                propio.set(i);
+                dependencias.put(Integer.valueOf(this.posCompartimentos[i]), propio);
+            }
+            boolean cambio = true;
+            while (cambio) {
+                cambio = false;
+                for (int i = 0; i < this.atajos.length; i++) {
+                    cambio |= acumular(dependencias, this.posAtajos[i], this.atajos[i].entradas);
+                }
+                for (int i = 0; i < this.tramos.length; i++) {
+                    for (int j = 0; j < this.tramos[i].length; j++) {
+                        cambio |= acumular(dependencias, this.posProcesos[i], this.tramos[i][j].entradas);
+                    }
+                }
+            }
+            int[][] estr = new int[this.compartimentos.length][];
+            for (int i = 0; i < estr.length; i++) {
+                BitSet columnas = new BitSet();
+                int[] ents = this.compartimentos[i].entradas;
+                for (int k = 0; k < ents.length; k++) {
+                    BitSet comps = (BitSet) dependencias.get(Integer.valueOf(ents[k]));
+                    if (comps != null) {
+                        columnas.or(comps);
+                    }
+                }
+                estr[i] = new int[columnas.cardinality()];
+                for (int j = columnas.nextSetBit(0), k = 0; j >= 0; j = columnas.nextSetBit(j+1), k++) {
+                    estr[i][k] = j;
+                }
+            }
+            this.estructura = estr;
+        }
+        return this.estructura;
+    }
+
+    /**
+     * Añade a los compartimentos de los que depende un atajo o proceso los de
+     * los nombres que lee uno de sus programas.
+     * @param dependencias Los compartimentos de los que depende cada posición
+     *                     de la memoria, si depende de alguno.
+     * @param posicion La posición del atajo o proceso.
+     * @param entradas Las posiciones que lee el programa.
+     * @return Si han cambiado sus compartimentos.
+     */
+    private static boolean acumular(HashMap dependencias, int posicion, int[] entradas) {
+        Integer clave = Integer.valueOf(posicion);
+        BitSet actuales = (BitSet) dependencias.get(clave);
+        BitSet nuevos = actuales == null ? new BitSet() : (BitSet) actuales.clone();
+        for (int k = 0; k < entradas.length; k++) {
+            BitSet comps = (BitSet) dependencias.get(Integer.valueOf(entradas[k]));
+            if (comps != null) {
+                nuevos.or(comps);
+            }
+        }
+        if (nuevos.isEmpty() || nuevos.equals(actuales)) {
+            return false;
+        }
+        dependencias.put(clave, nuevos);
+        return true;
+    }
+
+    /**
+     * Devuelve otro sistema con los mismos programas, pero con sus propias
+     * dependencias y su propio último tramo de cada proceso.
+     * @return La copia del sistema.
+     */
+    public Sistema copiar() {
+        try {
+            SistemaInterpretado copia = (SistemaInterpretado) super.clone();
+            copia.dependencias = this.dependencias.copiar();
+            copia.actuales = new int[this.actuales.length];
+            return copia;
+        } catch (CloneNotSupportedException ex) {
+            throw new InternalError(ex.toString());
+        }
+    }
+
+    /**
+     * Busca el tramo de un proceso que corresponde a un instante. Como los
+     * métodos avanzan poco a poco en el tiempo, casi siempre es el mismo de
+     * la vez anterior; si no, se busca por bisección (o recorriendo todos los
+     * tramos si sus tiempos de inicio no están en orden).
+     * @param proceso El índice del proceso.
+     * @param t El instante de tiempo.
+     * @return El índice del tramo.
+     */
+    private int tramo(int proceso, double t) {
+        int[] inicios = this.iniciosTramos[proceso];
+        int actual = this.actuales[proceso];
+        if (this.ordenados[proceso] && t >= inicios[actual]
+                && (actual == inicios.length-1 || t < inicios[actual+1])) {
+            return actual;
+        }
+        actual = this.ordenados[proceso] ? biseccion(inicios, t) : tramo(inicios, t);
+        this.actuales[proceso] = actual;
+        return actual;
+    }
+
+    /**
+     * Indica si los tiempos de inicio de unos tramos están en orden (se
+     * admiten repetidos), de manera que el tramo de un instante es el último
+     * que empieza antes que él.
+     * @param inicios Tiempo de inicio de cada tramo del proceso.
+     * @return Si están en orden.
+     */
+    static boolean ordenados(int[] inicios) {
+        for (int i = 0; i < inicios.length-1; i++) {
+            if (inicios[i] > inicios[i+1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Busca por bisección el tramo que corresponde a un instante en unos
+     * tramos ordenados, con el mismo resultado que <CODE>tramo(int[], double)</CODE>:
+     * el último que empieza antes del instante o, si el instante es anterior
+     * a todos, el último tramo.
+     * @param inicios Tiempo de inicio de cada tramo, en orden.
+     * @param t El instante de tiempo.
+     * @return El índice del tramo.
+     */
+    static int biseccion(int[] inicios, double t) {
+        if (!(t >= inicios[0])) {
+            return inicios.length-1;
+        }
+        int desde = 0;
+        int hasta = inicios.length-1;
+        while (desde < hasta) {
+            int medio = (desde + hasta + 1) >>> 1;
+            if (t < inicios[medio]) {
+                hasta = medio - 1;
+            } else {
+                desde = medio;
+            }
+        }
+        return desde;
+    }
+
+    /**
+     * Busca el tramo de un proceso que corresponde a un instante, con el
+     * mismo criterio que <CODE>Proceso.getDefinicionContinua(double)</CODE>.
+     * @param inicios Tiempo de inicio de cada tramo del proceso.
+     * @param t El instante de tiempo.
+     * @return El índice del tramo.
+     */
+    static int tramo(int[] inicios, double t) {
+        for (int i = 0; i < inicios.length-1; i++) {
+            if (t >= inicios[i] && t < inicios[i+1]) {
+                return i;
+            }
+        }
+        return inicios.length-1;
+    }
+}